@@ -0,0 +1,232 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Streaming sensor-fault detection, a fixed handful of numbers per bin:
+//
+//   STUCK            the same level repeated while the bin's own fill rate says it should have
+//                    risen, or a logged collection the sensor never saw (jammed at full)
+//   UNEXPLAINED_DROP the level fell sharply with no collection logged in between
+//   IMPOSSIBLE_RATE  a level outside 0-100, a fill jump far outside the bin's usual rate
+//                    (EWMA mean/variance), or a sustained rise caught by a one-sided CUSUM
+//
+// Bins are split into shards by index, each with its own worker thread and state arrays, so
+// detection runs in parallel and never touches shared state. Producers only append to a
+// bounded buffer under the shard lock; when a shard falls behind its readings are dropped
+// (and counted) rather than blocking ingestion.
+public class AnomalyDetector {
+    static final int STUCK = 1, UNEXPLAINED_DROP = 2, IMPOSSIBLE_RATE = 4;
+
+    // Tuning: identical readings before "stuck", points of drop/jump that matter, z-scores
+    private static final int STUCK_READINGS = 12;
+    private static final int DROP_POINTS = 30;
+    private static final int NOISE_POINTS = 5;
+    private static final int WARMUP_SAMPLES = 8;
+    private static final double ALPHA = 0.1, SD_FLOOR = 0.5, JUMP_Z = 6, CUSUM_K = 0.5, CUSUM_H = 8;
+
+    // bin index -> flags, only bins with at least one flag; changes are rare, reads are lock-free
+    private final Map<Integer, Integer> suspects = new ConcurrentHashMap<>();
+    private final Shard[] shards;
+    private final Thread[] workers;
+
+    AnomalyDetector(int threads, int bufferPerShard) {
+        shards = new Shard[threads];
+        workers = new Thread[threads];
+        for (int s = 0; s < threads; s++) {
+            shards[s] = new Shard(bufferPerShard);
+            workers[s] = new Thread(shards[s]::run, "anomaly-" + s);
+            workers[s].setDaemon(true);
+            workers[s].start();
+        }
+    }
+
+    // Stops the workers; later readings are buffered until full and then dropped
+    void close() {
+        for (Thread t : workers) t.interrupt();
+    }
+
+    // Any level, including impossible ones: those are what IMPOSSIBLE_RATE is for
+    void reading(int bin, long timeMillis, int level) {
+        shards[bin % shards.length].push(bin, timeMillis, level);
+    }
+
+    // A logged pickup: the next reading should be near empty and a drop is expected. Queued as
+    // ~bin, so no level value is reserved for it.
+    void collected(int bin, long timeMillis) {
+        shards[bin % shards.length].push(~bin, timeMillis, 0);
+    }
+
+    int flags(int bin) { return suspects.getOrDefault(bin, 0); }
+    boolean isSuspect(int bin) { return suspects.containsKey(bin); }
+    Map<Integer, Integer> suspects() { return suspects; }
+
+    long dropped() {
+        long total = 0;
+        for (Shard s : shards) total += s.dropped;
+        return total;
+    }
+
+    long processed() {
+        long total = 0;
+        for (Shard s : shards) total += s.processed;
+        return total;
+    }
+
+    static String describe(int flags) {
+        StringJoiner j = new StringJoiner(", ");
+        if ((flags & STUCK) != 0) j.add("stuck sensor");
+        if ((flags & UNEXPLAINED_DROP) != 0) j.add("unexplained drop");
+        if ((flags & IMPOSSIBLE_RATE) != 0) j.add("impossible fill rate");
+        return j.toString();
+    }
+
+    private final class Shard {
+        // Filled by producers, swapped with the worker's batch like ChangeTracker's bit sets
+        private int[] bins, levels, batchBins, batchLevels;
+        private long[] times, batchTimes;
+        private int size;
+        volatile long dropped, processed;
+
+        // Per-bin state, indexed by bin / shards.length
+        private int[] lastLevel = new int[0], repeats = new int[0], samples = new int[0];
+        private int[] beforeCollection = new int[0];
+        private long[] lastTime = new long[0];
+        private double[] mean = new double[0], variance = new double[0], cusum = new double[0];
+        private byte[] flags = new byte[0];
+
+        Shard(int capacity) {
+            bins = new int[capacity];
+            levels = new int[capacity];
+            times = new long[capacity];
+            batchBins = new int[capacity];
+            batchLevels = new int[capacity];
+            batchTimes = new long[capacity];
+        }
+
+        // bin is ~bin for a collection
+        synchronized void push(int bin, long time, int level) {
+            if (size == bins.length) {
+                dropped++;
+                return;
+            }
+            bins[size] = bin;
+            times[size] = time;
+            levels[size] = level;
+            if (size++ == 0) notify();
+        }
+
+        void run() {
+            while (true) {
+                int n;
+                synchronized (this) {
+                    while (size == 0) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    int[] b = bins; bins = batchBins; batchBins = b;
+                    int[] l = levels; levels = batchLevels; batchLevels = l;
+                    long[] t = times; times = batchTimes; batchTimes = t;
+                    n = size;
+                    size = 0;
+                }
+                for (int i = 0; i < n; i++) observe(batchBins[i], batchTimes[i], batchLevels[i]);
+                processed += n;
+            }
+        }
+
+        private void observe(int entry, long time, int level) {
+            boolean collected = entry < 0;
+            int bin = collected ? ~entry : entry;
+            int i = bin / shards.length;
+            if (i >= flags.length) grow(i + 1);
+            int f = flags[i];
+            if (collected) {
+                beforeCollection[i] = lastLevel[i];
+                lastLevel[i] = 0;
+                lastTime[i] = time;
+                repeats[i] = 0;
+                publish(bin, i, f & ~UNEXPLAINED_DROP);
+                return;
+            }
+            if (lastTime[i] == 0) {
+                lastLevel[i] = level;
+                lastTime[i] = time;
+                publish(bin, i, level < 0 || level > 100 ? IMPOSSIBLE_RATE : 0);
+                return;
+            }
+
+            int delta = level - lastLevel[i];
+            double minutes = Math.max(1, time - lastTime[i]) / 60000.0;
+
+            if (level < 0 || level > 100) {
+                f |= IMPOSSIBLE_RATE;
+            } else if (beforeCollection[i] >= 0) {
+                // First reading after a pickup: a nearly full bin must have come down
+                if (beforeCollection[i] >= 50 && level >= beforeCollection[i] - NOISE_POINTS) f |= STUCK;
+                else f &= ~STUCK;
+                beforeCollection[i] = -1;
+            } else if (delta == 0) {
+                // No movement for a while although this bin usually fills fast enough to show it
+                repeats[i]++;
+                boolean shouldMove = level < 100 && samples[i] >= WARMUP_SAMPLES
+                        && mean[i] * minutes * repeats[i] >= NOISE_POINTS;
+                if (repeats[i] >= STUCK_READINGS && shouldMove) f |= STUCK;
+            } else {
+                repeats[i] = 0;
+                f &= ~STUCK;
+                if (delta <= -DROP_POINTS) f |= UNEXPLAINED_DROP;
+                if (delta > 0) f = checkRate(i, delta / minutes, delta, f);
+            }
+            lastLevel[i] = level;
+            lastTime[i] = time;
+            publish(bin, i, f);
+        }
+
+        private int checkRate(int i, double rate, int delta, int f) {
+            boolean jump = false;
+            if (samples[i] >= WARMUP_SAMPLES) {
+                // Runs of identical small readings shrink the variance, so keep a floor under it
+                double sd = Math.max(Math.sqrt(variance[i]), SD_FLOOR * mean[i]) + 1e-6;
+                double z = (rate - mean[i]) / sd;
+                cusum[i] = Math.max(0, cusum[i] + z - CUSUM_K);
+                jump = z > JUMP_Z && delta > 2 * NOISE_POINTS;
+                if (jump || cusum[i] > CUSUM_H) f |= IMPOSSIBLE_RATE;
+                else if (cusum[i] == 0) f &= ~IMPOSSIBLE_RATE;
+            }
+            // Learn the usual rate from everything but outright jumps, so a lasting change of
+            // pace is flagged by the CUSUM and then absorbed; plain averaging while warming up
+            if (!jump) {
+                double alpha = Math.max(ALPHA, 1.0 / (samples[i] + 1));
+                double diff = rate - mean[i];
+                mean[i] += alpha * diff;
+                variance[i] = (1 - alpha) * (variance[i] + alpha * diff * diff);
+                samples[i]++;
+            }
+            return f;
+        }
+
+        private void publish(int bin, int i, int f) {
+            if (flags[i] == f) return;
+            flags[i] = (byte) f;
+            if (f == 0) suspects.remove(bin);
+            else suspects.put(bin, f);
+        }
+
+        private void grow(int size) {
+            int old = flags.length;
+            int n = Math.max(size, old * 2);
+            lastLevel = Arrays.copyOf(lastLevel, n);
+            repeats = Arrays.copyOf(repeats, n);
+            samples = Arrays.copyOf(samples, n);
+            beforeCollection = Arrays.copyOf(beforeCollection, n);
+            Arrays.fill(beforeCollection, old, n, -1);
+            lastTime = Arrays.copyOf(lastTime, n);
+            mean = Arrays.copyOf(mean, n);
+            variance = Arrays.copyOf(variance, n);
+            cusum = Arrays.copyOf(cusum, n);
+            flags = Arrays.copyOf(flags, n);
+        }
+    }
+}
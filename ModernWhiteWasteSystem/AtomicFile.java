@@ -0,0 +1,246 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+// Crash-safe line files (bins.csv, collection_history.csv). A save goes to <name>.tmp through one
+// FileChannel in 64 KB writes, is fsynced, and replaces the file with an atomic rename; the file
+// it replaces is kept as <name>.bak. Lines are grouped in blocks, each followed by a checksum line:
+//
+//   #crc32c
+//   BIN-001,Main Gate,100,General,40
+//   ...
+//   #blk <lines> <crc32c of the block's bytes, hex>
+//   #end <total lines>
+//
+// The # lines have fewer fields than any record, so older readers skip them. Files without
+// the header (written before checksums) are read as they are.
+public final class AtomicFile {
+    private static final String HEADER = "#crc32c", BLOCK = "#blk ", END = "#end ";
+    private static final int BLOCK_LINES = 1024;
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    // One writer per file at a time, so concurrent saves can't share the temp file
+    private static final Map<Path, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    private AtomicFile() {}
+
+    // Use as: try (Output out = AtomicFile.create(file)) { out.line(..); ...; out.commit(); }
+    // Closing without commit() discards the temp file and leaves the old one in place.
+    static Output create(Path file) throws IOException {
+        return new Output(file.toAbsolutePath());
+    }
+
+    static final class Output implements Closeable {
+        private final Path file, tmp;
+        private final ReentrantLock lock;
+        private final FileChannel ch;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        private final StringBuilder block = new StringBuilder();
+        private final CRC32C crc = new CRC32C();
+        private int blockLines, total;
+        private boolean committed;
+
+        private Output(Path file) throws IOException {
+            this.file = file;
+            this.tmp = sibling(file, ".tmp");
+            this.lock = locks.computeIfAbsent(file, k -> new ReentrantLock());
+            lock.lock();
+            try {
+                ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+            } catch (IOException e) {
+                lock.unlock();
+                throw e;
+            }
+            block.append(HEADER).append('\n');
+            put(block);
+            block.setLength(0);
+        }
+
+        void line(CharSequence line) throws IOException {
+            block.append(line).append('\n');
+            total++;
+            if (++blockLines == BLOCK_LINES) endBlock();
+        }
+
+        private void endBlock() throws IOException {
+            if (blockLines == 0) return;
+            byte[] bytes = block.toString().getBytes(StandardCharsets.UTF_8);
+            crc.reset();
+            crc.update(bytes);
+            put(bytes);
+            put(BLOCK + blockLines + " " + Long.toHexString(crc.getValue()) + "\n");
+            block.setLength(0);
+            blockLines = 0;
+        }
+
+        private void put(CharSequence s) throws IOException {
+            put(s.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void put(byte[] bytes) throws IOException {
+            for (int off = 0; off < bytes.length; ) {
+                if (!buffer.hasRemaining()) drain();
+                int n = Math.min(buffer.remaining(), bytes.length - off);
+                buffer.put(bytes, off, n);
+                off += n;
+            }
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) ch.write(buffer);
+            buffer.clear();
+        }
+
+        // Makes the new contents durable and visible; a crash before the rename leaves the old file
+        void commit() throws IOException {
+            endBlock();
+            put(END + total + "\n");
+            drain();
+            ch.force(true);
+            ch.close();
+            Path bak = sibling(file, ".bak");
+            if (Files.exists(file)) {
+                Files.move(file, bak, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            // Between the two renames only the backup exists; readLines() falls back to it
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory(file.getParent());
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (!committed) {
+                    ch.close();
+                    Files.deleteIfExists(tmp);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Data lines of the file. A missing, truncated or corrupt file is recovered from the backup
+    // (and restored from it); if both are damaged, the verified blocks of the better one are used.
+    static List<String> readLines(Path file) throws IOException {
+        file = file.toAbsolutePath();
+        Path bak = sibling(file, ".bak");
+        Contents primary = Files.exists(file) ? read(file) : null;
+        if (primary != null && primary.complete) return primary.lines;
+        Contents backup = Files.exists(bak) ? read(bak) : null;
+        if (backup == null) {
+            if (primary == null) return new ArrayList<>();
+            System.err.println(file.getFileName() + ": damaged, kept " + primary.lines.size() + " verified lines");
+            return primary.lines;
+        }
+        if (backup.complete || primary == null || backup.lines.size() >= primary.lines.size()) {
+            System.err.println(file.getFileName() + ": " + (primary == null ? "missing" : "damaged")
+                    + ", recovered " + backup.lines.size() + " lines from " + bak.getFileName());
+            if (backup.complete) restore(bak, file);
+            return backup.lines;
+        }
+        System.err.println(file.getFileName() + ": damaged, kept " + primary.lines.size() + " verified lines");
+        return primary.lines;
+    }
+
+    private static final class Contents {
+        final List<String> lines = new ArrayList<>();
+        boolean complete;
+    }
+
+    private static Contents read(Path file) throws IOException {
+        byte[] data = Files.readAllBytes(file);
+        Contents c = new Contents();
+        int pos = 0;
+        int first = nextLine(data, 0);
+        if (!text(data, 0, first).equals(HEADER)) {
+            // Written before checksums: nothing to verify
+            for (; pos < data.length; pos = nextLine(data, pos) + 1) {
+                String line = text(data, pos, nextLine(data, pos));
+                if (!line.isEmpty()) c.lines.add(line);
+            }
+            c.complete = true;
+            return c;
+        }
+        CRC32C crc = new CRC32C();
+        List<String> block = new ArrayList<>();
+        int blockStart = pos = first + 1;
+        try {
+            while (pos < data.length) {
+                int end = nextLine(data, pos);
+                if (end == data.length) break; // no newline: cut off mid-line
+                String line = text(data, pos, end);
+                if (line.startsWith(BLOCK)) {
+                    String[] parts = line.substring(BLOCK.length()).split(" ");
+                    crc.reset();
+                    crc.update(data, blockStart, pos - blockStart);
+                    if (parts.length != 2 || Integer.parseInt(parts[0]) != block.size()
+                            || Long.parseLong(parts[1], 16) != crc.getValue()) break;
+                    c.lines.addAll(block);
+                    block.clear();
+                    blockStart = end + 1;
+                } else if (line.startsWith(END)) {
+                    c.complete = block.isEmpty() && Integer.parseInt(line.substring(END.length())) == c.lines.size();
+                    break;
+                } else {
+                    block.add(line);
+                }
+                pos = end + 1;
+            }
+        } catch (NumberFormatException e) {
+            // A garbled checksum line: keep the blocks verified before it
+        }
+        return c;
+    }
+
+    private static int nextLine(byte[] data, int from) {
+        int i = from;
+        while (i < data.length && data[i] != '\n') i++;
+        return i;
+    }
+
+    private static String text(byte[] data, int from, int to) {
+        if (to > from && data[to - 1] == '\r') to--;
+        return new String(data, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    private static void restore(Path bak, Path file) {
+        ReentrantLock lock = locks.computeIfAbsent(file, k -> new ReentrantLock());
+        lock.lock();
+        try {
+            Path tmp = sibling(file, ".tmp");
+            Files.copy(bak, tmp, StandardCopyOption.REPLACE_EXISTING);
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ch.force(true);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory(file.getParent());
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Makes the renames durable; not every platform can open a directory, which is fine there
+    private static void syncDirectory(Path dir) {
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException e) {
+            // Directories can't be opened on Windows, where the rename is durable on its own
+        }
+    }
+
+    private static Path sibling(Path file, String suffix) {
+        return file.resolveSibling(file.getFileName() + suffix);
+    }
+}
@@ -0,0 +1,145 @@
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
+
+// Runs computation and file I/O off the EDT. Work reports progress and checks for
+// cancellation through its Task; only the final result (or failure) is handed back on the EDT.
+//
+// Tasks run on virtual threads when the JDK has them (looked up reflectively so the app
+// still builds and runs on 17), otherwise on a small pool of daemon threads.
+public class BackgroundTasks {
+    private static final ExecutorService EXECUTOR = createExecutor();
+
+    // EDT probe: anything that keeps the dispatch thread busy longer than a frame is counted;
+    // -Dedt.report=true also logs each one as it happens
+    static final long FRAME_BUDGET_MS = 16;
+    private static final boolean EDT_REPORT = Boolean.getBoolean("edt.report");
+    private static volatile long maxEdtLagMillis;
+    private static final AtomicInteger slowFrames = new AtomicInteger();
+
+    interface Work<T> {
+        T run(Task<T> task) throws Exception;
+    }
+
+    static final class Task<T> {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        private Thread runner;
+        private ProgressMonitor monitor;
+        private volatile int percent = -1;
+        private final AtomicBoolean progressPosted = new AtomicBoolean();
+
+        // Coalesced: at most one pending progress update on the EDT at a time
+        void progress(long done, long total) {
+            int p = (int) (done * 100 / Math.max(1, total));
+            if (p == percent) return;
+            percent = p;
+            if (monitor != null && progressPosted.compareAndSet(false, true)) {
+                SwingUtilities.invokeLater(() -> {
+                    progressPosted.set(false);
+                    monitor.setProgress(percent);
+                    if (monitor.isCanceled()) cancel();
+                });
+            }
+        }
+
+        boolean isCancelled() {
+            return future.isCancelled() || Thread.currentThread().isInterrupted();
+        }
+
+        // Also interrupts the running work, which ends blocking I/O and ReportWriter loops
+        synchronized void cancel() {
+            future.cancel(false);
+            if (runner != null) runner.interrupt();
+        }
+
+        // Success and failure callbacks run on the EDT; a cancelled task calls neither
+        Task<T> onEdt(Consumer<? super T> onSuccess, Consumer<? super Throwable> onFailure) {
+            future.whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+                if (monitor != null) monitor.close();
+                if (future.isCancelled()) return;
+                if (error == null) onSuccess.accept(result);
+                else onFailure.accept(error instanceof CompletionException ? error.getCause() : error);
+            }));
+            return this;
+        }
+
+        private void execute(Work<T> work) {
+            synchronized (this) {
+                if (future.isDone()) return;
+                runner = Thread.currentThread();
+            }
+            try {
+                future.complete(work.run(this));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                synchronized (this) {
+                    runner = null;
+                    Thread.interrupted(); // don't leak a late cancel into the next pooled task
+                }
+            }
+        }
+    }
+
+    static <T> Task<T> submit(Work<T> work) {
+        return submit(work, null);
+    }
+
+    // The monitor (created on the EDT) shows progress and its Cancel button cancels the task
+    static <T> Task<T> submit(Work<T> work, ProgressMonitor monitor) {
+        Task<T> task = new Task<>();
+        task.monitor = monitor;
+        EXECUTOR.execute(() -> task.execute(work));
+        return task;
+    }
+
+    private static ExecutorService createExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            AtomicInteger n = new AtomicInteger();
+            return Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+                Thread t = new Thread(r, "background-" + n.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    // Posts a probe to the EDT every 100 ms and counts the times it waited longer than a frame.
+    // A one-line summary is printed at exit if there were any.
+    static void watchEdt() {
+        Thread t = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                long posted = System.nanoTime();
+                try {
+                    SwingUtilities.invokeAndWait(() -> {
+                        long lag = (System.nanoTime() - posted) / 1_000_000;
+                        if (lag <= FRAME_BUDGET_MS) return;
+                        slowFrames.incrementAndGet();
+                        if (lag > maxEdtLagMillis) maxEdtLagMillis = lag;
+                        if (EDT_REPORT) System.err.println("EDT blocked for " + lag + " ms");
+                    });
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                } catch (java.lang.reflect.InvocationTargetException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, "edt-watchdog");
+        t.setDaemon(true);
+        t.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (slowFrames.get() > 0) {
+                System.err.println("EDT: " + slowFrames.get() + " slow frames, longest " + maxEdtLagMillis + " ms");
+            }
+        }));
+    }
+
+    static long maxEdtLagMillis() { return maxEdtLagMillis; }
+    static int slowFrames() { return slowFrames.get(); }
+}
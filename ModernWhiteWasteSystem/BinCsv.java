@@ -0,0 +1,35 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// bins.csv format: id,location,capacity,type,level
+public final class BinCsv {
+    private BinCsv() {}
+
+    static WasteBin parse(String line) {
+        String[] parts = line.split(",");
+        if (parts.length < 5) return null;
+        return new WasteBin(parts[0], parts[1], Integer.parseInt(parts[2]), parts[3],
+                Integer.parseInt(parts[4]));
+    }
+
+    static String format(WasteBin bin) {
+        return String.join(",", bin.getId(), bin.getLocation(), String.valueOf(bin.getCapacity()),
+                bin.getType(), String.valueOf(bin.getCurrentLevel()));
+    }
+
+    // Checksummed reads with fallback to the backup, see AtomicFile
+    static List<WasteBin> read(Path file) throws IOException {
+        List<WasteBin> bins = new ArrayList<>();
+        for (String line : AtomicFile.readLines(file)) {
+            WasteBin bin = parse(line);
+            if (bin != null) bins.add(bin);
+        }
+        return bins;
+    }
+
+    static int countLines(Path file) throws IOException {
+        return AtomicFile.readLines(file).size();
+    }
+}
@@ -0,0 +1,43 @@
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.table.AbstractTableModel;
+
+// Bin Table Model - rows are the filtered bins themselves, read while painting, so only the
+// visible rows cost anything
+public class BinTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+    private static final String[] COLUMNS = {"Bin ID", "Location", "Type", "Capacity (L)",
+            "Current (%)", "Status", "Last Updated", "Trend"};
+    static final int TREND = 7;
+    private List<WasteBin> bins = new ArrayList<>();
+
+    void setBins(List<WasteBin> bins) {
+        this.bins = bins;
+        fireTableDataChanged();
+    }
+
+    @Override
+    public int getRowCount() { return bins.size(); }
+
+    @Override
+    public int getColumnCount() { return COLUMNS.length; }
+
+    @Override
+    public String getColumnName(int column) { return COLUMNS[column]; }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        WasteBin bin = bins.get(row);
+        switch (column) {
+            case 0: return bin.getId();
+            case 1: return bin.getLocation();
+            case 2: return bin.getType();
+            case 3: return bin.getCapacity();
+            case 4: return bin.getCurrentLevel() + "%";
+            case 5: return bin.getStatus();
+            case 6: return bin.getLastUpdated();
+            // The renderer draws the bin's sparkline; no value object per paint
+            default: return bin;
+        }
+    }
+}
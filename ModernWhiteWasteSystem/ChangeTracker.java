@@ -0,0 +1,59 @@
+import java.util.*;
+import java.util.function.IntConsumer;
+
+// Publishes which bins changed as a compact bit set per consumer (UI, persistence,
+// aggregates, alerts...), so each one only processes the bins touched since its last pass.
+public class ChangeTracker {
+    private final List<Cursor> cursors = new ArrayList<>();
+    private long version;
+
+    class Cursor {
+        final String name;
+        private BitSet dirty = new BitSet();
+        private BitSet draining = new BitSet();
+
+        Cursor(String name) { this.name = name; }
+
+        // Visits and clears the dirty indices; returns how many there were
+        int drain(IntConsumer visitor) {
+            BitSet batch;
+            synchronized (ChangeTracker.this) {
+                batch = dirty;
+                dirty = draining;
+                draining = batch;
+            }
+            int count = 0;
+            for (int i = batch.nextSetBit(0); i >= 0; i = batch.nextSetBit(i + 1)) {
+                visitor.accept(i);
+                count++;
+            }
+            batch.clear();
+            return count;
+        }
+
+        boolean isEmpty() {
+            synchronized (ChangeTracker.this) {
+                return dirty.isEmpty();
+            }
+        }
+    }
+
+    synchronized Cursor register(String name) {
+        Cursor cursor = new Cursor(name);
+        cursors.add(cursor);
+        return cursor;
+    }
+
+    synchronized void markDirty(int index) {
+        version++;
+        for (int i = 0; i < cursors.size(); i++) cursors.get(i).dirty.set(index);
+    }
+
+    // Forces a full pass, e.g. after thresholds change for every bin
+    synchronized void markAll(int size) {
+        version++;
+        for (Cursor c : cursors) c.dirty.set(0, size);
+    }
+
+    synchronized long version() { return version; }
+}
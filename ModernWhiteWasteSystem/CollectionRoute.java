@@ -0,0 +1,65 @@
+import java.util.*;
+
+// One row of collection_history.csv:
+//   timestamp,bins,count[,km,baselineKm,type:bins:litres:kg|...]
+// Rows from before impact accounting stop after the count.
+public class CollectionRoute {
+    String timestamp;
+    String bins;
+    int efficiency;
+    // Route actually driven and the naive out-and-back plan it replaced
+    double km, baselineKm;
+    final Map<String, ImpactLedger.Totals> byType = new TreeMap<>();
+
+    public CollectionRoute(String timestamp, String bins, int efficiency) {
+        this.timestamp = timestamp;
+        this.bins = bins;
+        this.efficiency = efficiency;
+    }
+
+    boolean isMeasured() { return !byType.isEmpty(); }
+
+    // The whole collection as one slice
+    ImpactLedger.Totals totals() {
+        ImpactLedger.Totals t = new ImpactLedger.Totals();
+        byType.values().forEach(t::add);
+        t.collections = 1;
+        t.km = km;
+        t.baselineKm = baselineKm;
+        return t;
+    }
+
+    String format() {
+        StringBuilder sb = new StringBuilder(timestamp).append(',').append(bins).append(',').append(efficiency);
+        if (!isMeasured()) return sb.toString();
+        sb.append(String.format(Locale.ROOT, ",%.3f,%.3f,", km, baselineKm));
+        boolean first = true;
+        for (Map.Entry<String, ImpactLedger.Totals> e : byType.entrySet()) {
+            ImpactLedger.Totals t = e.getValue();
+            if (!first) sb.append('|');
+            first = false;
+            sb.append(e.getKey()).append(String.format(Locale.ROOT, ":%d:%.1f:%.2f", t.bins, t.litres, t.kg));
+        }
+        return sb.toString();
+    }
+
+    static CollectionRoute parse(String line) {
+        String[] parts = line.split(",");
+        if (parts.length < 3) return null;
+        CollectionRoute route = new CollectionRoute(parts[0], parts[1], Integer.parseInt(parts[2]));
+        if (parts.length >= 6) {
+            route.km = Double.parseDouble(parts[3]);
+            route.baselineKm = Double.parseDouble(parts[4]);
+            for (String slice : parts[5].split("\\|")) {
+                String[] f = slice.split(":");
+                if (f.length < 4) continue;
+                ImpactLedger.Totals t = new ImpactLedger.Totals();
+                t.bins = Integer.parseInt(f[1]);
+                t.litres = Double.parseDouble(f[2]);
+                t.kg = Double.parseDouble(f[3]);
+                route.byType.put(f[0], t);
+            }
+        }
+        return route;
+    }
+}
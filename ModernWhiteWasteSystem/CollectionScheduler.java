@@ -0,0 +1,153 @@
+import java.util.*;
+
+// Plans collection trips for the next N shifts from current levels and the per-type fill rates.
+// Each bin is planned for the latest shift that starts before it turns CRITICAL (the shift it
+// would cross in), then again every "period" shifts after that. Spare room on a shift's last truck is filled
+// with bins due in the following shift, which is what removes trips.
+//
+// A reading only re-plans its own bin (O(horizon)); the trip table is recomputed from
+// per-shift counts (O(shifts)), never from the whole fleet.
+public class CollectionScheduler {
+    private static final int NOT_PLANNED = -1;
+
+    final int horizonShifts;
+    final long shiftMillis;
+    final int truckStops;
+    private final double ticksPerShift;
+    private long originMillis;
+
+    private int[] firstDue = new int[0];
+    private int[] period = new int[0];
+    private final int[] dueCount;
+    private final BitSet dueNow = new BitSet();
+    private final BitSet dueNext = new BitSet();
+    private final int[] trips;
+    private final int[] stops;
+    private boolean tripsStale = true;
+
+    CollectionScheduler(int horizonShifts, long shiftMillis, long tickMillis, int truckStops, long originMillis) {
+        this.horizonShifts = horizonShifts;
+        this.shiftMillis = shiftMillis;
+        this.truckStops = truckStops;
+        this.ticksPerShift = shiftMillis / (double) tickMillis;
+        this.originMillis = originMillis;
+        this.dueCount = new int[horizonShifts];
+        this.trips = new int[horizonShifts];
+        this.stops = new int[horizonShifts];
+    }
+
+    synchronized void rebuild(List<WasteBin> bins) {
+        Arrays.fill(dueCount, 0);
+        dueNow.clear();
+        dueNext.clear();
+        Arrays.fill(firstDue, 0, firstDue.length, NOT_PLANNED);
+        for (int i = 0; i < bins.size(); i++) plan(i, bins.get(i));
+        tripsStale = true;
+    }
+
+    // Re-plans only the bins changed since the cursor's last pass
+    synchronized void update(ChangeTracker.Cursor changes, List<WasteBin> bins) {
+        if (System.currentTimeMillis() >= originMillis + shiftMillis) {
+            // A shift has passed: roll the horizon and plan everything from the new origin
+            originMillis += (System.currentTimeMillis() - originMillis) / shiftMillis * shiftMillis;
+            changes.drain(i -> {});
+            rebuild(bins);
+            return;
+        }
+        changes.drain(i -> {
+            unplan(i);
+            plan(i, bins.get(i));
+        });
+        tripsStale = true;
+    }
+
+    private void plan(int i, WasteBin bin) {
+        ensureCapacity(i + 1);
+        double perShift = FillProfile.of(bin.getType()).meanPerTick() * ticksPerShift;
+        int critical = bin.thresholds().thresholds[ThresholdRules.CRITICAL];
+        int level = bin.getCurrentLevel();
+        // Shifts from origin until the bin crosses CRITICAL; a reading from before the origin has
+        // been filling since then, so elapsed may be negative
+        double elapsed = (bin.getUpdatedAtMillis() - originMillis) / (double) shiftMillis;
+        double untilCritical = level >= critical ? 0 : elapsed + (critical - level) / perShift;
+        // Shift s runs from s to s + 1: crossing at exactly s + 1 is still shift s
+        int due = Math.max(0, (int) Math.ceil(untilCritical) - 1);
+        period[i] = Math.max(1, (int) Math.ceil(critical / perShift) - 1);
+        firstDue[i] = due < horizonShifts ? due : NOT_PLANNED;
+        if (firstDue[i] == NOT_PLANNED) return;
+        for (int s = firstDue[i]; s < horizonShifts; s += period[i]) dueCount[s]++;
+        if (firstDue[i] == 0) dueNow.set(i);
+        else if (firstDue[i] == 1) dueNext.set(i);
+    }
+
+    private void unplan(int i) {
+        if (i >= firstDue.length || firstDue[i] == NOT_PLANNED) return;
+        for (int s = firstDue[i]; s < horizonShifts; s += period[i]) dueCount[s]--;
+        dueNow.clear(i);
+        dueNext.clear(i);
+        firstDue[i] = NOT_PLANNED;
+    }
+
+    private void ensureCapacity(int size) {
+        if (size <= firstDue.length) return;
+        int old = firstDue.length;
+        int n = Math.max(size, old * 2);
+        firstDue = Arrays.copyOf(firstDue, n);
+        period = Arrays.copyOf(period, n);
+        Arrays.fill(firstDue, old, n, NOT_PLANNED);
+    }
+
+    private void computeTrips() {
+        if (!tripsStale) return;
+        int pulled = 0;
+        for (int s = 0; s < horizonShifts; s++) {
+            int load = dueCount[s] - pulled;
+            trips[s] = (load + truckStops - 1) / truckStops;
+            int spare = trips[s] * truckStops - load;
+            pulled = s + 1 < horizonShifts ? Math.min(spare, dueCount[s + 1]) : 0;
+            stops[s] = load + pulled;
+        }
+        tripsStale = false;
+    }
+
+    synchronized int[] tripsPerShift() {
+        computeTrips();
+        return trips.clone();
+    }
+
+    synchronized int[] stopsPerShift() {
+        computeTrips();
+        return stops.clone();
+    }
+
+    synchronized int totalTrips() {
+        computeTrips();
+        int total = 0;
+        for (int t : trips) total += t;
+        return total;
+    }
+
+    // First shift bin i is planned for, or -1 beyond the horizon
+    synchronized int dueShift(int i) {
+        return i < firstDue.length ? firstDue[i] : NOT_PLANNED;
+    }
+
+    long shiftStart(int shift) {
+        return originMillis + shift * shiftMillis;
+    }
+
+    // Bins for the current shift: everything due now, topped up with the fullest bins due next
+    synchronized List<WasteBin> currentShiftStops(List<WasteBin> bins) {
+        computeTrips();
+        List<WasteBin> result = new ArrayList<>();
+        for (int i = dueNow.nextSetBit(0); i >= 0; i = dueNow.nextSetBit(i + 1)) result.add(bins.get(i));
+        int extra = stops[0] - result.size();
+        if (extra > 0) {
+            List<WasteBin> next = new ArrayList<>();
+            for (int i = dueNext.nextSetBit(0); i >= 0; i = dueNext.nextSetBit(i + 1)) next.add(bins.get(i));
+            next.sort((a, b) -> Integer.compare(b.getCurrentLevel(), a.getCurrentLevel()));
+            result.addAll(next.subList(0, Math.min(extra, next.size())));
+        }
+        return result;
+    }
+}
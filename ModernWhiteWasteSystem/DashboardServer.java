@@ -0,0 +1,262 @@
+import com.sun.net.httpserver.*;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Read-only live view of the fleet for browsers on the depot network, as Server-Sent Events:
+//
+//   GET /         a small self-contained page (wall display)
+//   GET /events   event: snapshot  {"seq":..,"bins":[[index,"id","location","type",level,status],..],"stats":{..}}
+//                 event: delta     {"seq":..,"bins":[[index,level,status],..],"stats":{..},"alerts":[..]}
+//
+// A publisher thread drains its own ChangeTracker cursor every period, encodes one delta and
+// hands the same bytes to every client, so the UI tick pays nothing and the cost per tick is
+// one encoding plus one queue offer per viewer. Each client has a bounded queue drained by
+// its own connection thread; a client that falls behind has its queue dropped and is sent a
+// fresh snapshot instead, so a slow display never holds up the publisher or the others.
+public class DashboardServer {
+    private static final long HEARTBEAT_MS = 15_000;
+
+    private final HttpServer server;
+    private final List<WasteBin> bins;
+    private final ChangeTracker.Cursor changes;
+    private final FleetIndex index;
+    private final AnomalyDetector anomalies;
+    private final long periodMillis;
+    private final int queueCapacity;
+
+    private final Set<Client> clients = ConcurrentHashMap.newKeySet();
+    private final BitSet changed = new BitSet();
+    private byte[] lastStatus = new byte[0];
+    private long seq;
+    private volatile boolean running = true;
+
+    DashboardServer(int port, List<WasteBin> bins, ChangeTracker.Cursor changes, FleetIndex index,
+                    AnomalyDetector anomalies, long periodMillis, int queueCapacity) throws IOException {
+        this.bins = bins;
+        this.changes = changes;
+        this.index = index;
+        this.anomalies = anomalies;
+        this.periodMillis = periodMillis;
+        this.queueCapacity = queueCapacity;
+        AtomicInteger n = new AtomicInteger();
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        // Every open stream holds a thread while it waits for the next message
+        server.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "dashboard-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }));
+        server.createContext("/", this::page);
+        server.createContext("/events", this::events);
+    }
+
+    void start() {
+        // Viewers start from a snapshot, so changes so far and bins already CRITICAL are not news
+        changes.drain(i -> {});
+        for (int i = 0, n = bins.size(); i < n; i++) remember(i, bins.get(i).statusLevel());
+        server.start();
+        Thread publisher = new Thread(this::publish, "dashboard-publisher");
+        publisher.setDaemon(true);
+        publisher.start();
+    }
+
+    void stop() {
+        running = false;
+        server.stop(0);
+    }
+
+    int port() { return server.getAddress().getPort(); }
+    int clients() { return clients.size(); }
+
+    private static final class Client {
+        final BlockingQueue<byte[]> queue;
+        // Set on connect and after an overflow: the next message must be a snapshot
+        volatile boolean resync = true;
+        // True while blocked on the socket; a stalled viewer gets no new snapshot until it moves
+        volatile boolean writing;
+
+        Client(int capacity) { queue = new ArrayBlockingQueue<>(capacity); }
+    }
+
+    private void publish() {
+        while (running) {
+            try {
+                Thread.sleep(periodMillis);
+                tick();
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // One period: drain the cursor, encode once, fan out
+    void tick() {
+        changed.clear();
+        changes.drain(changed::set);
+        if (changed.isEmpty() && seq > 0 && clients.stream().noneMatch(c -> c.resync)) return;
+        seq++;
+        String stats = stats();
+        byte[] delta = changed.isEmpty() ? null : delta(stats);
+        byte[] snapshot = null;
+        for (Client c : clients) {
+            if (c.resync) {
+                if (c.writing) continue;
+                if (snapshot == null) snapshot = snapshot(stats);
+                c.queue.clear();
+                if (c.queue.offer(snapshot)) c.resync = false;
+            } else if (delta != null && !c.queue.offer(delta)) {
+                // Too slow to keep up: forget the backlog and start over from a snapshot next period
+                c.queue.clear();
+                c.resync = true;
+            }
+        }
+    }
+
+    private byte[] delta(String stats) {
+        StringBuilder sb = new StringBuilder(32 + changed.cardinality() * 16);
+        StringBuilder alerts = new StringBuilder();
+        sb.append("event: delta\ndata: {\"seq\":").append(seq).append(",\"bins\":[");
+        boolean first = true;
+        for (int i = changed.nextSetBit(0); i >= 0 && i < bins.size(); i = changed.nextSetBit(i + 1)) {
+            WasteBin b = bins.get(i);
+            int status = b.statusLevel();
+            if (!first) sb.append(',');
+            first = false;
+            sb.append('[').append(i).append(',').append(b.getCurrentLevel()).append(',').append(status).append(']');
+            // Alert only on the transition into CRITICAL, not on every reading while it stays there
+            if (remember(i, status) != WasteBin.CRITICAL && status == WasteBin.CRITICAL) {
+                if (alerts.length() > 0) alerts.append(',');
+                json(alerts.append('['), b.getId()).append(',');
+                json(alerts, b.getLocation()).append(',').append(b.getCurrentLevel()).append(']');
+            }
+        }
+        sb.append("],\"stats\":").append(stats).append(",\"alerts\":[").append(alerts).append("]}\n\n");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] snapshot(String stats) {
+        int n = bins.size();
+        StringBuilder sb = new StringBuilder(64 + n * 48);
+        sb.append("event: snapshot\ndata: {\"seq\":").append(seq).append(",\"bins\":[");
+        for (int i = 0; i < n; i++) {
+            WasteBin b = bins.get(i);
+            int status = b.statusLevel();
+            if (i > 0) sb.append(',');
+            sb.append('[').append(i).append(',');
+            json(sb, b.getId()).append(',');
+            json(sb, b.getLocation()).append(',');
+            json(sb, b.getType()).append(',');
+            sb.append(b.getCurrentLevel()).append(',').append(status).append(']');
+            remember(i, status);
+        }
+        sb.append("],\"stats\":").append(stats).append("}\n\n");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Stores the status last published for a bin and returns the previous one
+    private int remember(int i, int status) {
+        if (i >= lastStatus.length) lastStatus = Arrays.copyOf(lastStatus, Math.max(i + 1, lastStatus.length * 2));
+        int before = lastStatus[i];
+        lastStatus[i] = (byte) status;
+        return before;
+    }
+
+    // From the index's maintained per-status totals, never a pass over the fleet
+    private String stats() {
+        Map<String, FleetQuery.Group> byStatus = FleetQuery.bins().groupBy(index, FleetQuery.GroupBy.STATUS);
+        int total = 0;
+        long levels = 0;
+        for (FleetQuery.Group g : byStatus.values()) {
+            total += g.count;
+            levels += g.levelSum;
+        }
+        return String.format(Locale.ROOT,
+                "{\"total\":%d,\"normal\":%d,\"warning\":%d,\"critical\":%d,\"avgLevel\":%.1f,\"dueForCollection\":%d,\"suspect\":%d}",
+                total, byStatus.get("NORMAL").count, byStatus.get("WARNING").count, byStatus.get("CRITICAL").count,
+                total == 0 ? 0 : levels / (double) total, FleetQuery.bins().needsCollection().count(index),
+                anomalies.suspects().size());
+    }
+
+    private void events(HttpExchange ex) throws IOException {
+        Client client = new Client(queueCapacity);
+        ex.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        ex.getResponseHeaders().set("Cache-Control", "no-cache");
+        ex.sendResponseHeaders(200, 0);
+        clients.add(client);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(("retry: " + periodMillis + "\n\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            while (running) {
+                byte[] message = client.queue.poll(HEARTBEAT_MS, TimeUnit.MILLISECONDS);
+                // Comment lines keep proxies from closing an idle stream
+                client.writing = true;
+                out.write(message != null ? message : ": keep-alive\n\n".getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                client.writing = false;
+            }
+        } catch (IOException | InterruptedException e) {
+            // The viewer went away
+        } finally {
+            clients.remove(client);
+            ex.close();
+        }
+    }
+
+    private void page(HttpExchange ex) throws IOException {
+        if (!ex.getRequestURI().getPath().equals("/")) {
+            ex.sendResponseHeaders(404, -1);
+            ex.close();
+            return;
+        }
+        byte[] body = PAGE.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+        ex.sendResponseHeaders(200, body.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static StringBuilder json(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') sb.append('\\').append(c);
+            else if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+            else sb.append(c);
+        }
+        return sb.append('"');
+    }
+
+    // Keeps the fleet in a plain array indexed like the server's bins and applies deltas in place
+    private static final String PAGE = String.join("\n",
+            "<!DOCTYPE html><html><head><meta charset='utf-8'><title>Fleet</title><style>",
+            "body{font-family:Segoe UI,sans-serif;background:#0f172a;color:#e2e8f0;margin:20px}",
+            ".stats span{display:inline-block;margin-right:28px;font-size:22px}",
+            "#bins{display:flex;flex-wrap:wrap;gap:4px;margin-top:16px}",
+            "#bins div{width:14px;height:14px;border-radius:3px}",
+            "#alerts{color:#f87171;margin-top:12px;font-size:16px}",
+            "</style></head><body><h2>Smart Waste Management</h2>",
+            "<div class='stats' id='stats'></div><div id='alerts'></div><div id='bins'></div><script>",
+            "const colors=['#10b981','#f59e0b','#ef4444'];let cells=[],alerts=[];",
+            "const es=new EventSource('events');",
+            "function stats(s){document.getElementById('stats').innerHTML=",
+            " `<span>Bins ${s.total}</span><span>Critical ${s.critical}</span><span>Warning ${s.warning}</span>`+",
+            " `<span>Avg ${s.avgLevel}%</span><span>Due ${s.dueForCollection}</span><span>Sensor faults ${s.suspect}</span>`;}",
+            "function paint(i,level,status){const c=cells[i];if(!c)return;c.style.background=colors[status];c.title=c.dataset.id+' '+level+'%';}",
+            "es.addEventListener('snapshot',e=>{const m=JSON.parse(e.data),root=document.getElementById('bins');",
+            " root.textContent='';cells=[];",
+            " for(const [i,id,loc,type,level,status] of m.bins){const c=document.createElement('div');",
+            "  c.dataset.id=id+' '+loc;cells[i]=c;root.appendChild(c);paint(i,level,status);}",
+            " stats(m.stats);});",
+            "es.addEventListener('delta',e=>{const m=JSON.parse(e.data);",
+            " for(const [i,level,status] of m.bins)paint(i,level,status);stats(m.stats);",
+            " for(const [id,loc,level] of m.alerts)alerts.unshift(`${id} at ${loc} is ${level}% full`);",
+            " alerts=alerts.slice(0,5);document.getElementById('alerts').textContent=alerts.join(' \\u2022 ');});",
+            "</script></body></html>");
+}
@@ -0,0 +1,535 @@
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.*;
+import java.util.zip.*;
+
+// Append-only binary event log with periodic snapshots.
+//
+// Layout of the store directory:
+//   events-<firstSeq>.log    records of [int length][event][int crc32c]; a new segment starts at each snapshot
+//   snapshot-<seq>.bin       full fleet state after event <seq>
+//   archive/events-<firstSeq>.log.gz   old segments, gzipped by retention (see HistoryArchive)
+//   archive/base-<seq>.bin   fleet state where the kept log starts, once older segments are dropped
+//
+// Startup loads the newest valid snapshot and replays only the segments after it.
+// Point-in-time reconstruction for audits:
+//   java EventStore --dir events --at "2026-10-18 14:00"
+public class EventStore implements Closeable {
+    private static final int SNAPSHOT_MAGIC = 0x57534E50;
+    private static final int MIN_SNAPSHOT_INTERVAL = 10_000;
+    private static final int SNAPSHOTS_KEPT = 10;
+    // magic, seq, time, count and the trailing checksum; a bin is 3 UTF lengths, an int and a byte
+    private static final int SNAPSHOT_HEADER = 4 + 8 + 8 + 4 + 4, MIN_SNAPSHOT_BIN = 3 * 2 + 4 + 1;
+    private static final DateTimeFormatter AUDIT_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm[:ss]");
+    static final String ARCHIVE_DIR = "archive";
+
+    // The record being encoded, readable in place for the checksum and the segment write
+    private static final class RecordBuffer extends ByteArrayOutputStream {
+        RecordBuffer() { super(128); }
+
+        byte[] array() { return buf; }
+    }
+
+    private final Path dir;
+    private final FleetProjection projection;
+    private final RecordBuffer record = new RecordBuffer();
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private final CRC32C crc = new CRC32C();
+    private FileOutputStream segmentFile;
+    private DataOutputStream segment;
+    private long nextSeq;
+    private int sinceSnapshot;
+    // Set once a write fails: the log may end in a torn record, so nothing more is appended
+    private IOException writeFailure;
+    // Set on a replication primary: flush() and sync() tell it, and wait for standbys as its mode asks
+    private volatile Replication.Primary primary;
+
+    private EventStore(Path dir, FleetProjection projection) {
+        this.dir = dir;
+        this.projection = projection;
+        this.nextSeq = projection.lastSeq() + 1;
+    }
+
+    static EventStore open(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        FleetProjection projection = new FleetProjection();
+        loadLatestSnapshot(dir, Long.MAX_VALUE, Long.MAX_VALUE, projection);
+        List<Path> segments = segments(dir);
+        List<Path> journal = journal(dir);
+        // Without a usable snapshot the log must reach back to the first event
+        if (!journal.isEmpty() && seqOf(journal.get(0)) > projection.lastSeq() + 1) {
+            throw new IOException("No intact snapshot before event #" + seqOf(journal.get(0)) + " in " + dir);
+        }
+        // Archived segments are never last, so the length is the live tail's
+        long goodLength = replay(journal, projection, Long.MAX_VALUE, Long.MAX_VALUE);
+
+        EventStore store = new EventStore(dir, projection);
+        Path active;
+        if (segments.isEmpty()) {
+            active = dir.resolve(segmentName(store.nextSeq));
+        } else {
+            // Drop a record torn by a crash so new events append after the last good one
+            active = segments.get(segments.size() - 1);
+            try (FileChannel ch = FileChannel.open(active, StandardOpenOption.WRITE)) {
+                if (ch.size() > goodLength) ch.truncate(goodLength);
+            }
+        }
+        store.openSegment(active);
+        return store;
+    }
+
+    FleetProjection projection() { return projection; }
+
+    Path dir() { return dir; }
+
+    synchronized long lastSeq() { return nextSeq - 1; }
+
+    void replicateTo(Replication.Primary primary) { this.primary = primary; }
+
+    synchronized boolean isEmpty() { return nextSeq == 1; }
+
+    // Returns the bin instance owned by the projection
+    synchronized WasteBin binAdded(WasteBin bin) {
+        append(FleetEvent.Type.BIN_ADDED, bin.getId(), bin.getCurrentLevel(), bin.getLocation(), bin.getType(),
+                bin.getCapacity());
+        return projection.get(bin.getId());
+    }
+
+    synchronized void reading(WasteBin bin, int level) {
+        reading(bin, level, System.currentTimeMillis());
+    }
+
+    // Sensor readings carry the time they were measured, not the time they arrived
+    synchronized void reading(WasteBin bin, int level, long timeMillis) {
+        append(FleetEvent.Type.READING, timeMillis, bin.getId(), level, null, null, 0);
+    }
+
+    // Returns the level emptied, read under the same lock readings are applied with
+    synchronized int collection(WasteBin bin) {
+        int level = bin.getCurrentLevel();
+        append(FleetEvent.Type.COLLECTION, bin.getId(), level, null, null, 0);
+        return level;
+    }
+
+    synchronized void reset() {
+        append(FleetEvent.Type.RESET, null, 0, null, null, 0);
+    }
+
+    private void append(FleetEvent.Type type, String binId, int level, String location, String binType, int capacity) {
+        append(type, System.currentTimeMillis(), binId, level, location, binType, capacity);
+    }
+
+    private void append(FleetEvent.Type type, long timeMillis, String binId, int level, String location,
+                        String binType, int capacity) {
+        // An event is applied only once it is in the log, so the fleet never runs ahead of it
+        checkWritable();
+        // Levels are logged as one unsigned byte: a faulty sensor's -5 would replay as 251.
+        // The raw value still reaches the anomaly detector, which is what flags it.
+        level = Math.max(0, Math.min(100, level));
+        // Encoded straight from the fields and checksummed in place: a reading allocates nothing here
+        try {
+            record.reset();
+            FleetEvent.write(recordOut, type, nextSeq, timeMillis, binId, level, location, binType, capacity);
+            crc.reset();
+            crc.update(record.array(), 0, record.size());
+            segment.writeInt(record.size());
+            segment.write(record.array(), 0, record.size());
+            segment.writeInt((int) crc.getValue());
+        } catch (IOException ex) {
+            throw failed(ex);
+        }
+        projection.apply(type, nextSeq++, timeMillis, binId, level, location, binType, capacity);
+        if (++sinceSnapshot >= Math.max(MIN_SNAPSHOT_INTERVAL, 4 * projection.bins().size())) snapshot();
+    }
+
+    // Standby: appends a record shipped from the primary unchanged, so both logs hold the same
+    // events under the same sequence numbers
+    synchronized void replicate(FleetEvent e, byte[] data, int offset, int length) throws IOException {
+        if (e.seq != nextSeq) throw new IOException("Expected event #" + nextSeq + ", got #" + e.seq);
+        checkWritable();
+        try {
+            crc.reset();
+            crc.update(data, offset, length);
+            segment.writeInt(length);
+            segment.write(data, offset, length);
+            segment.writeInt((int) crc.getValue());
+        } catch (IOException ex) {
+            throw failed(ex);
+        }
+        nextSeq++;
+        projection.apply(e);
+        if (++sinceSnapshot >= Math.max(MIN_SNAPSHOT_INTERVAL, 4 * projection.bins().size())) snapshot();
+    }
+
+    // Waits (outside the lock) for standbys only on a primary in lag mode
+    void flush() {
+        long seq = flushLocal();
+        Replication.Primary p = primary;
+        if (p != null) p.flushed(seq);
+    }
+
+    // Flush and force to disk; used for actions that must survive a crash (collections, resets).
+    // A primary in ack or lag mode also waits until a standby has them.
+    void sync() {
+        long seq = syncLocal();
+        Replication.Primary p = primary;
+        if (p != null) p.synced(seq);
+    }
+
+    private synchronized long flushLocal() {
+        checkWritable();
+        try {
+            segment.flush();
+        } catch (IOException e) {
+            throw failed(e);
+        }
+        return nextSeq - 1;
+    }
+
+    private synchronized long syncLocal() {
+        checkWritable();
+        try {
+            segment.flush();
+            segmentFile.getFD().sync();
+        } catch (IOException e) {
+            throw failed(e);
+        }
+        return nextSeq - 1;
+    }
+
+    // A closed store (e.g. its site was evicted) or a failed one takes no more events
+    private void checkWritable() {
+        if (writeFailure != null) throw new UncheckedIOException("Event log " + dir + " failed earlier", writeFailure);
+        if (segment == null) throw new IllegalStateException("Event log " + dir + " is closed");
+    }
+
+    private UncheckedIOException failed(IOException e) {
+        writeFailure = e;
+        return new UncheckedIOException("Writing event log " + dir + " failed", e);
+    }
+
+    synchronized void snapshot() {
+        sinceSnapshot = 0;
+        if (segment == null || writeFailure != null) return;
+        try {
+            syncLocal();
+            writeSnapshot(projection, dir.resolve(String.format("snapshot-%020d.bin", projection.lastSeq())));
+
+            segment.close();
+            openSegment(dir.resolve(segmentName(nextSeq)));
+
+            List<Path> snapshots = snapshots(dir);
+            for (int i = 0; i < snapshots.size() - SNAPSHOTS_KEPT; i++) Files.deleteIfExists(snapshots.get(i));
+        } catch (IOException | UncheckedIOException e) { e.printStackTrace(); }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (segment == null) return;
+        try {
+            if (writeFailure == null) syncLocal();
+        } catch (UncheckedIOException e) { e.printStackTrace(); }
+        try {
+            segment.close();
+        } catch (IOException e) { e.printStackTrace(); }
+        segment = null;
+    }
+
+    private void openSegment(Path file) throws IOException {
+        segmentFile = new FileOutputStream(file.toFile(), true);
+        segment = new DataOutputStream(new BufferedOutputStream(segmentFile, 1 << 16));
+    }
+
+    // Written to a temp file, fsynced and renamed into place
+    private static void writeSnapshot(FleetProjection projection, Path target) throws IOException {
+        Path tmp = target.resolveSibling("snapshot.tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile())) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(fos, 1 << 16), new CRC32C());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(projection.lastSeq());
+            out.writeLong(projection.lastTime());
+            out.writeInt(projection.bins().size());
+            for (WasteBin b : projection.bins()) {
+                out.writeUTF(b.getId());
+                out.writeUTF(b.getLocation());
+                out.writeUTF(b.getType());
+                out.writeInt(b.getCapacity());
+                out.writeByte(b.getCurrentLevel());
+            }
+            out.flush();
+            out.writeInt((int) checked.getChecksum().getValue());
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Standby catch-up: replaces the log in dir with the primary's snapshot (size bytes read from
+    // in); the next open() starts from it. Interrupted half way, the standby just starts over.
+    static void install(Path dir, long seq, InputStream in, long size) throws IOException {
+        Files.createDirectories(dir);
+        Path tmp = dir.resolve("snapshot.tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile())) {
+            byte[] buf = new byte[1 << 16];
+            for (long left = size; left > 0; ) {
+                int n = in.read(buf, 0, (int) Math.min(buf.length, left));
+                if (n < 0) throw new EOFException("Snapshot cut off");
+                fos.write(buf, 0, n);
+                left -= n;
+            }
+            fos.getFD().sync();
+        }
+        List<Path> old = new ArrayList<>(segments(dir));
+        old.addAll(snapshots(dir));
+        old.addAll(list(dir.resolve(ARCHIVE_DIR), "events-", ".log.gz"));
+        old.addAll(list(dir.resolve(ARCHIVE_DIR), "base-", ".bin"));
+        for (Path p : old) Files.delete(p);
+        Files.move(tmp, dir.resolve(String.format("snapshot-%020d.bin", seq)), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Retention: closed segments last written before the cutoff whose events the newest snapshot
+    // already holds, so startup never replays them
+    static List<Path> archivable(Path dir, long beforeMillis) throws IOException {
+        List<Path> segments = segments(dir), snapshots = snapshots(dir), closed = new ArrayList<>();
+        if (snapshots.isEmpty()) return closed;
+        long covered = seqOf(snapshots.get(snapshots.size() - 1));
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            Path s = segments.get(i);
+            if (seqOf(segments.get(i + 1)) > covered + 1 || Files.getLastModifiedTime(s).toMillis() >= beforeMillis) break;
+            closed.add(s);
+        }
+        return closed;
+    }
+
+    // Gzips a closed segment into archive/, passing each event to the caller first (for rollups).
+    // The archived copy keeps the segment's modification time, which expire() goes by; the
+    // caller deletes the original once it has recorded the archive.
+    static Path archive(Path segment, Consumer<FleetEvent> each) throws IOException {
+        Path archive = segment.resolveSibling(ARCHIVE_DIR);
+        Files.createDirectories(archive);
+        Path tmp = archive.resolve("segment.tmp"), target = archive.resolve(segment.getFileName() + ".gz");
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+             GZIPOutputStream gz = new GZIPOutputStream(new BufferedOutputStream(fos, 1 << 16), 1 << 16);
+             InputStream in = input(segment)) {
+            DataOutputStream out = new DataOutputStream(gz);
+            CRC32C crc = new CRC32C();
+            records(in, (e, data, length) -> {
+                each.accept(e);
+                crc.reset();
+                crc.update(data, 0, length);
+                out.writeInt(length);
+                out.write(data, 0, length);
+                out.writeInt((int) crc.getValue());
+                return true;
+            });
+            gz.finish();
+            gz.flush();
+            fos.getFD().sync();
+        }
+        Files.setLastModifiedTime(tmp, Files.getLastModifiedTime(segment));
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return target;
+    }
+
+    // Retention: drops the archived segments last written before the cutoff. The fleet as it
+    // stood where the kept log starts is saved first as a base snapshot, so audits inside the
+    // kept window still replay from a known state. Returns the number of segments dropped.
+    static int expire(Path dir, long beforeMillis) throws IOException {
+        Path archive = dir.resolve(ARCHIVE_DIR);
+        List<Path> expired = new ArrayList<>();
+        for (Path p : list(archive, "events-", ".log.gz")) {
+            if (Files.getLastModifiedTime(p).toMillis() >= beforeMillis) break;
+            expired.add(p);
+        }
+        if (expired.isEmpty()) return 0;
+        List<Path> journal = journal(dir);
+        // Archived segments always have a successor
+        long keptFrom = seqOf(journal.get(journal.indexOf(expired.get(expired.size() - 1)) + 1));
+        FleetProjection base = reconstructTo(dir, keptFrom - 1);
+        writeSnapshot(base, archive.resolve(String.format("base-%020d.bin", base.lastSeq())));
+        for (Path p : expired) Files.delete(p);
+        for (Path p : list(archive, "base-", ".bin")) {
+            if (seqOf(p) < base.lastSeq()) Files.delete(p);
+        }
+        return expired.size();
+    }
+
+    // Rebuilds the fleet as it was at the given time from the closest earlier snapshot
+    static FleetProjection reconstructAt(Path dir, long timeMillis) throws IOException {
+        FleetProjection projection = new FleetProjection();
+        loadLatestSnapshot(dir, timeMillis, Long.MAX_VALUE, projection);
+        replay(journal(dir), projection, timeMillis, Long.MAX_VALUE);
+        return projection;
+    }
+
+    // The fleet right after event seq
+    static FleetProjection reconstructTo(Path dir, long seq) throws IOException {
+        FleetProjection projection = new FleetProjection();
+        loadLatestSnapshot(dir, Long.MAX_VALUE, seq, projection);
+        replay(journal(dir), projection, Long.MAX_VALUE, seq);
+        return projection;
+    }
+
+    // Returns the length of the valid prefix of the last segment
+    private static long replay(List<Path> segments, FleetProjection projection, long untilTime, long untilSeq)
+            throws IOException {
+        long goodLength = 0;
+        boolean[] stopped = new boolean[1];
+        for (int i = 0; i < segments.size(); i++) {
+            // Segments entirely covered by the snapshot are skipped without being opened
+            if (i + 1 < segments.size() && seqOf(segments.get(i + 1)) <= projection.lastSeq() + 1) continue;
+            if (seqOf(segments.get(i)) > untilSeq) break;
+            try (InputStream in = input(segments.get(i))) {
+                goodLength = records(in, (e, data, length) -> {
+                    if (e.timeMillis > untilTime || e.seq > untilSeq) {
+                        stopped[0] = true;
+                        return false;
+                    }
+                    if (e.seq > projection.lastSeq()) projection.apply(e);
+                    return true;
+                });
+            }
+            if (stopped[0]) break;
+        }
+        return goodLength;
+    }
+
+    interface RecordHandler {
+        // false stops before this record
+        boolean record(FleetEvent e, byte[] data, int length) throws IOException;
+    }
+
+    // Intact records up to the end, a torn or corrupt one, or the handler stopping; returns the
+    // length of the records handled
+    private static long records(InputStream raw, RecordHandler handler) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(raw, 1 << 16));
+        CRC32C crc = new CRC32C();
+        byte[] buf = new byte[256];
+        long length = 0;
+        while (true) {
+            int len;
+            try {
+                len = in.readInt();
+            } catch (EOFException eof) { break; }
+            if (len <= 0 || len > 1 << 20) break;
+            if (buf.length < len) buf = new byte[len];
+            try {
+                in.readFully(buf, 0, len);
+                crc.reset();
+                crc.update(buf, 0, len);
+                if (in.readInt() != (int) crc.getValue()) break;
+            } catch (EOFException torn) { break; }
+            FleetEvent e = FleetEvent.readFrom(new DataInputStream(new ByteArrayInputStream(buf, 0, len)));
+            if (!handler.record(e, buf, len)) break;
+            length += 8 + len;
+        }
+        return length;
+    }
+
+    private static InputStream input(Path segment) throws IOException {
+        InputStream in = Files.newInputStream(segment);
+        return segment.toString().endsWith(".gz") ? new GZIPInputStream(in, 1 << 16) : in;
+    }
+
+    // The newest live or base snapshot within the limits that reads back intact. A damaged one
+    // (cut short, bad checksum, garbage count) is skipped and the next older one tried; the
+    // replay then covers the gap from the log.
+    private static void loadLatestSnapshot(Path dir, long notAfterTime, long notAfterSeq, FleetProjection projection)
+            throws IOException {
+        List<Path> snapshots = snapshots(dir);
+        snapshots.addAll(list(dir.resolve(ARCHIVE_DIR), "base-", ".bin"));
+        snapshots.sort(Comparator.comparingLong(EventStore::seqOf));
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            long size = Files.size(snapshots.get(i));
+            try (InputStream raw = new BufferedInputStream(Files.newInputStream(snapshots.get(i)), 1 << 16)) {
+                CheckedInputStream checked = new CheckedInputStream(raw, new CRC32C());
+                DataInputStream in = new DataInputStream(checked);
+                if (in.readInt() != SNAPSHOT_MAGIC) continue;
+                long seq = in.readLong(), time = in.readLong();
+                if (time > notAfterTime || seq > notAfterSeq) continue;
+                int count = in.readInt();
+                // Each bin takes at least three empty strings, the capacity and the level
+                if (count < 0 || count > (size - SNAPSHOT_HEADER) / MIN_SNAPSHOT_BIN) {
+                    throw new IOException("Bin count " + count + " does not fit the file");
+                }
+                List<WasteBin> bins = new ArrayList<>(count);
+                for (int b = 0; b < count; b++) {
+                    String id = in.readUTF(), location = in.readUTF(), type = in.readUTF();
+                    int capacity = in.readInt();
+                    bins.add(new WasteBin(id, location, capacity, type, in.readUnsignedByte()));
+                }
+                long expected = checked.getChecksum().getValue();
+                if (in.readInt() != (int) expected) throw new IOException("Checksum mismatch");
+                for (WasteBin bin : bins) projection.restore(bin);
+                projection.restorePosition(seq, time);
+                return;
+            } catch (IOException | RuntimeException corrupt) {
+                System.err.println("Skipping damaged snapshot " + snapshots.get(i) + ": " + corrupt);
+            }
+        }
+    }
+
+    static List<Path> segments(Path dir) throws IOException {
+        return list(dir, "events-", ".log");
+    }
+
+    static List<Path> snapshots(Path dir) throws IOException {
+        return list(dir, "snapshot-", ".bin");
+    }
+
+    // Archived and live segments in sequence order; a segment archived by a pass that was cut
+    // short before deleting the original is read from the original
+    private static List<Path> journal(Path dir) throws IOException {
+        List<Path> journal = list(dir.resolve(ARCHIVE_DIR), "events-", ".log.gz");
+        journal.addAll(segments(dir));
+        journal.sort(Comparator.comparingLong(EventStore::seqOf));
+        for (int i = journal.size() - 1; i > 0; i--) {
+            if (seqOf(journal.get(i - 1)) == seqOf(journal.get(i))) journal.remove(i - 1);
+        }
+        return journal;
+    }
+
+    private static List<Path> list(Path dir, String prefix, String suffix) throws IOException {
+        if (!Files.isDirectory(dir)) return new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> {
+                String n = p.getFileName().toString();
+                return n.startsWith(prefix) && n.endsWith(suffix);
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+
+    static String segmentName(long firstSeq) {
+        return String.format("events-%020d.log", firstSeq);
+    }
+
+    // The number in events-<firstSeq>.log[.gz], snapshot-<seq>.bin and base-<seq>.bin
+    static long seqOf(Path file) {
+        String n = file.getFileName().toString();
+        return Long.parseLong(n.substring(n.indexOf('-') + 1, n.indexOf('.')));
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path dir = Paths.get("events");
+        String at = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("--dir")) dir = Paths.get(args[i + 1]);
+            else if (args[i].equals("--at")) at = args[i + 1];
+        }
+        long time = at == null ? Long.MAX_VALUE
+                : LocalDateTime.parse(at, AUDIT_TIME).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        FleetProjection fleet = reconstructAt(dir, time);
+        System.out.println("# fleet as of event #" + fleet.lastSeq() + " ("
+                + (fleet.lastTime() == 0 ? "empty" : Instant.ofEpochMilli(fleet.lastTime())) + ")");
+        for (WasteBin b : fleet.bins()) {
+            System.out.println(String.join(",", b.getId(), b.getLocation(), String.valueOf(b.getCapacity()),
+                    b.getType(), String.valueOf(b.getCurrentLevel())));
+        }
+    }
+}
@@ -0,0 +1,29 @@
+import java.util.SplittableRandom;
+
+// Per-type fill rates, in percentage points per simulation tick (one tick is 5 s in the live demo)
+public enum FillProfile {
+    ORGANIC(2, 7),
+    GENERAL(1, 5),
+    RECYCLABLE(1, 3);
+
+    final int minIncrease, maxIncrease;
+
+    FillProfile(int minIncrease, int maxIncrease) {
+        this.minIncrease = minIncrease;
+        this.maxIncrease = maxIncrease;
+    }
+
+    static FillProfile of(String type) {
+        if (type.equals("Organic")) return ORGANIC;
+        if (type.equals("General")) return GENERAL;
+        return RECYCLABLE;
+    }
+
+    int sample(SplittableRandom rand) {
+        return minIncrease + rand.nextInt(maxIncrease - minIncrease + 1);
+    }
+
+    double meanPerTick() {
+        return (minIncrease + maxIncrease) / 2.0;
+    }
+}
@@ -0,0 +1,1016 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.List;
+import javax.swing.*;
+
+// Micro benchmarks for large fleets. Runs headless:
+//   java -Djava.awt.headless=true FleetBenchmark theme 100000
+//   java FleetBenchmark report 100000
+//   java FleetBenchmark rules 1000000
+//   java FleetBenchmark ingest 100000
+//   java FleetBenchmark anomaly 100000
+//   java FleetBenchmark query 1000000
+//   java FleetBenchmark persist 1000000
+//   java FleetBenchmark route 5000
+//   java FleetBenchmark dashboard 100000
+//   java [-Dstartup.archive=app.jsa] FleetBenchmark startup 100000
+//   java -Djava.awt.headless=true FleetBenchmark sparkline 1000000
+//   java FleetBenchmark retention 10        (years of collection history)
+//   java FleetBenchmark replication 100000
+//   java FleetBenchmark recovery 10000
+//   java FleetBenchmark schedule 1000000
+public class FleetBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String which = args.length > 0 ? args[0] : "theme";
+        int bins = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        switch (which) {
+            case "theme": benchTheme(bins); break;
+            case "report": benchReport(bins); break;
+            case "rules": benchRules(bins); break;
+            case "ingest": benchIngest(bins); break;
+            case "anomaly": benchAnomaly(bins); break;
+            case "query": benchQuery(bins); break;
+            case "persist": benchPersist(bins); break;
+            case "route": benchRoute(bins); break;
+            case "dashboard": benchDashboard(bins); break;
+            case "startup": benchStartup(bins); break;
+            case "sparkline": benchSparkline(bins); break;
+            case "retention": benchRetention(bins); break;
+            case "replication": benchReplication(bins); break;
+            case "recovery": benchRecovery(bins); break;
+            case "schedule": benchSchedule(bins); break;
+            default:
+                System.err.println("Unknown benchmark: " + which);
+                System.exit(1);
+        }
+    }
+
+    static WasteBin[] sampleBins(int n) {
+        String[] types = {"General", "Organic", "Recyclable"};
+        WasteBin[] bins = new WasteBin[n];
+        for (int i = 0; i < n; i++) {
+            bins[i] = new WasteBin(String.format("BIN-%06d", i + 1), "Zone " + (i % 97),
+                    60 + (i % 5) * 20, types[i % 3], (i * 37) % 101);
+        }
+        return bins;
+    }
+
+    // Switching theme must not create, remove or re-layout any component: the cost is
+    // the palette swap plus one repaint of the visible area.
+    static void benchTheme(int n) throws Exception {
+        Theme.set(Theme.LIGHT);
+        JPanel dashboard = new JPanel(new GridLayout(0, 6, 15, 15));
+        WasteBin[] bins = sampleBins(n);
+        long t0 = System.nanoTime();
+        for (WasteBin bin : bins) dashboard.add(ModernWhiteWasteSystem.createEnhancedBinCard(bin));
+        dashboard.setSize(dashboard.getPreferredSize());
+        dashboard.doLayout();
+        for (Component c : dashboard.getComponents()) ((Container) c).doLayout();
+        long built = System.nanoTime() - t0;
+
+        BufferedImage frame = new BufferedImage(1400, 900, BufferedImage.TYPE_INT_RGB);
+        int components = dashboard.getComponentCount();
+        int rounds = 50;
+        long best = Long.MAX_VALUE, total = 0;
+        for (int i = 0; i < rounds; i++) {
+            Graphics2D g = frame.createGraphics();
+            g.setClip(0, 0, 1400, 900);
+            long s = System.nanoTime();
+            Theme.toggle();
+            dashboard.paint(g);
+            long d = System.nanoTime() - s;
+            g.dispose();
+            best = Math.min(best, d);
+            total += d;
+        }
+        if (dashboard.getComponentCount() != components) throw new IllegalStateException("theme switch rebuilt cards");
+        System.out.printf("theme: %d cards built in %.1f ms%n", n, built / 1e6);
+        System.out.printf("theme: switch + repaint best %.2f ms, avg %.2f ms over %d rounds%n",
+                best / 1e6, total / 1e6 / rounds, rounds);
+    }
+
+    static void benchReport(int n) throws Exception {
+        List<WasteBin> bins = Arrays.asList(sampleBins(n));
+        Path out = Files.createTempFile("report", ".txt");
+        try {
+            for (ReportWriter.Format format : ReportWriter.Format.values()) {
+                long best = Long.MAX_VALUE;
+                for (int i = 0; i < 5; i++) {
+                    long s = System.nanoTime();
+                    ReportWriter.Summary summary = ReportWriter.Summary.of(bins, new ImpactLedger());
+                    new ReportWriter(format, null).write(bins, summary, out);
+                    best = Math.min(best, System.nanoTime() - s);
+                }
+                System.out.printf("report: %s for %d bins in %.1f ms (%d KB)%n",
+                        format, n, best / 1e6, Files.size(out) / 1024);
+            }
+        } finally {
+            Files.deleteIfExists(out);
+        }
+    }
+
+    static void benchRules(int n) {
+        Properties props = new Properties();
+        props.setProperty("type.Organic.critical", "70");
+        props.setProperty("location.Zone 1.warning", "40");
+        props.setProperty("bin.BIN-000002.collect", "50");
+        ThresholdRules rules = new ThresholdRules(props);
+        ThresholdRules.install(rules);
+        WasteBin[] bins = sampleBins(n);
+        long s = System.nanoTime();
+        for (WasteBin bin : bins) bin.thresholds();
+        System.out.printf("rules: resolved profiles for %d bins in %.1f ms%n", n, (System.nanoTime() - s) / 1e6);
+
+        int[] levels = new int[1 << 16];
+        SplittableRandom rand = new SplittableRandom(1);
+        for (int i = 0; i < levels.length; i++) levels[i] = rand.nextInt(101);
+        long readings = 100_000_000L, critical = 0;
+        for (int round = 0; round < 3; round++) {
+            critical = 0;
+            s = System.nanoTime();
+            for (long r = 0; r < readings; r++) {
+                int code = bins[(int) (r % n)].thresholds().code(levels[(int) r & 0xFFFF]);
+                if ((code & 3) == WasteBin.CRITICAL) critical++;
+            }
+            long d = System.nanoTime() - s;
+            System.out.printf("rules: %d readings in %.1f ms = %.0f M/s (%d critical)%n",
+                    readings, d / 1e6, readings / (d / 1e9) / 1e6, critical);
+        }
+    }
+
+    // 20 ticks of readings for n bins, 5% delivered twice and every reading delayed by up to
+    // 900 ms against a 1 s lateness window. Each bin must see its readings applied in sensor
+    // time order, once each, and every extra copy must be counted as a duplicate. Then a
+    // sensor that restarts its counter, and a pending buffer too small for the delays.
+    static void benchIngest(int n) {
+        int ticks = 20;
+        long tickMillis = 1000, lateness = 1000;
+        SplittableRandom rand = new SplittableRandom(7);
+        int readings = n * ticks;
+        int total = readings + readings / 20;
+        long[] order = new long[total];
+        for (int r = 0; r < total; r++) {
+            int reading = r < readings ? r : rand.nextInt(readings);
+            long sensorTime = (reading / n + 1) * tickMillis;
+            order[r] = (sensorTime + rand.nextInt(900)) << 23 | reading;
+        }
+        Arrays.sort(order);
+
+        long[] lastApplied = new long[n];
+        long[] violations = new long[1];
+        for (int round = 0; round < 3; round++) {
+            Arrays.fill(lastApplied, Long.MIN_VALUE);
+            SensorIngest ingest = new SensorIngest(lateness, 1 << 20, (bin, time, level) -> {
+                if (time <= lastApplied[bin]) violations[0]++;
+                lastApplied[bin] = time;
+            });
+            com.sun.management.ThreadMXBean threads =
+                    (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+            long allocated = threads.getCurrentThreadAllocatedBytes();
+            long s = System.nanoTime();
+            for (long key : order) {
+                int reading = (int) (key & ((1 << 23) - 1));
+                int tick = reading / n;
+                ingest.offer(reading % n, tick, (tick + 1) * tickMillis, tick * 5 % 101);
+            }
+            ingest.flush();
+            long d = System.nanoTime() - s;
+            allocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+            System.out.printf("ingest: %d readings in %.1f ms = %.1f M/s, applied %d, duplicates %d, stale %d, "
+                            + "out of order %d, allocated %d KB%n", total, d / 1e6, total / (d / 1e9) / 1e6,
+                    ingest.applied(), ingest.duplicates(), ingest.stale(), violations[0], allocated / 1024);
+            // Delays stay inside the window, so nothing is stale: each reading applied once, each copy dropped
+            if (violations[0] != 0 || ingest.applied() != readings || ingest.duplicates() != total - readings
+                    || ingest.stale() != 0) {
+                throw new IllegalStateException("ingest: expected " + readings + " applied in order and "
+                        + (total - readings) + " duplicates");
+            }
+        }
+        ingestRestart(lateness);
+        ingestOverflow(n, lateness);
+    }
+
+    // One sensor counts to 199, reboots and counts from 0 again with later timestamps: the new
+    // readings are applied, a re-sent one is still a duplicate and a late one from before the
+    // reboot is stale.
+    private static void ingestRestart(long lateness) {
+        List<Long> applied = new ArrayList<>();
+        SensorIngest ingest = new SensorIngest(lateness, 1 << 10, (bin, time, level) -> applied.add(time));
+        for (int seq = 0; seq < 200; seq++) ingest.offer(0, seq, (seq + 1) * 1000L, seq % 101);
+        ingest.flush();
+        long rebooted = 300_000;
+        for (int seq = 0; seq < 5; seq++) {
+            if (ingest.offer(0, seq, rebooted + seq * 1000L, seq) != SensorIngest.ACCEPTED) {
+                throw new IllegalStateException("ingest: reading #" + seq + " after the counter restart was dropped");
+            }
+        }
+        if (ingest.offer(0, 3, rebooted + 3000, 3) != SensorIngest.DUPLICATE) {
+            throw new IllegalStateException("ingest: copy of a reading after the restart was not a duplicate");
+        }
+        if (ingest.offer(0, 150, 151_000, 50) != SensorIngest.STALE) {
+            throw new IllegalStateException("ingest: late reading from before the restart was not stale");
+        }
+        ingest.flush();
+        for (int i = 1; i < applied.size(); i++) {
+            if (applied.get(i) <= applied.get(i - 1)) throw new IllegalStateException("ingest: restart applied out of order");
+        }
+        if (applied.size() != 205) throw new IllegalStateException("ingest: restart applied " + applied.size() + " of 205");
+        System.out.println("ingest: counter restart applied 205 readings in order, copy and late reading dropped");
+    }
+
+    // maxPending far below what the delays need, and delays of up to two ticks so a bin's
+    // readings arrive out of order: readings are forced out early, and ones that arrive behind
+    // them must be dropped as stale, never applied out of order. Every reading ends up applied,
+    // duplicate or stale exactly once.
+    private static void ingestOverflow(int n, long lateness) {
+        int maxPending = Math.max(16, n / 100), ticks = 20;
+        SplittableRandom rand = new SplittableRandom(9);
+        long[] order = new long[n * ticks];
+        for (int r = 0; r < order.length; r++) {
+            long sensorTime = (r / n + 1) * 1000L;
+            order[r] = (sensorTime + rand.nextInt(2000)) << 23 | r;
+        }
+        Arrays.sort(order);
+        long[] lastApplied = new long[n];
+        Arrays.fill(lastApplied, Long.MIN_VALUE);
+        long[] violations = new long[1];
+        SensorIngest ingest = new SensorIngest(lateness, maxPending, (bin, time, level) -> {
+            if (time <= lastApplied[bin]) violations[0]++;
+            lastApplied[bin] = time;
+        });
+        for (long key : order) {
+            int reading = (int) (key & ((1 << 23) - 1));
+            int tick = reading / n;
+            ingest.offer(reading % n, tick, (tick + 1) * 1000L, tick);
+            if (ingest.pending() > maxPending) throw new IllegalStateException("ingest: pending above maxPending");
+        }
+        ingest.flush();
+        if (violations[0] != 0) throw new IllegalStateException("ingest: overflow applied " + violations[0] + " out of order");
+        if (ingest.stale() == 0) throw new IllegalStateException("ingest: overflow case dropped nothing");
+        if (ingest.applied() + ingest.duplicates() + ingest.stale() != order.length) {
+            throw new IllegalStateException("ingest: overflow lost or double-counted readings");
+        }
+        System.out.printf("ingest: maxPending %d overflowed: %d applied in order, %d stale, none lost%n",
+                maxPending, ingest.applied(), ingest.stale());
+    }
+
+    // 200 five-minute ticks of normal filling with logged collections at 90%. Every 1000th bin
+    // gets a fault half way through: stuck, emptied without a collection, a +50 jump, or
+    // jammed at 100 through a collection. Each tick waits for the detector to catch up, as
+    // live ticks are minutes apart; reports producer cost, detector throughput and accuracy.
+    // Then checks that a reading of -1 is flagged rather than taken for a collection.
+    static void benchAnomaly(int n) throws InterruptedException {
+        int ticks = 200, faultTick = ticks / 2 + 1;
+        long tickMillis = 300_000;
+        AnomalyDetector detector = new AnomalyDetector(
+                Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)), 1 << 20);
+        LoadGenerator gen = LoadGenerator.forBins(3, Arrays.asList(sampleBins(n)));
+        int[] levels = new int[n];
+        boolean[] emptied = new boolean[n];
+        long readings = 0, produceNanos = 0, start = System.nanoTime();
+        for (int t = 1; t <= ticks; t++) {
+            long now = t * tickMillis;
+            long s = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                int level = gen.advance(i, levels[i]);
+                int fault = i % 1000 == 0 && t >= faultTick ? (i / 1000) % 4 : -1;
+                if (fault == 0) level = levels[i];
+                else if (fault == 1 && !emptied[i] && levels[i] >= 60) {
+                    level = 0;
+                    emptied[i] = true;
+                }
+                else if (fault == 2 && t == faultTick) level = Math.min(100, levels[i] + 50);
+                else if (fault == 3) level = 100;
+                if (fault == 3 && t == faultTick + 4 || fault < 0 && level >= 90) {
+                    detector.collected(i, now);
+                    if (fault < 0) level = 0;
+                }
+                levels[i] = level;
+                detector.reading(i, now, level);
+                readings++;
+            }
+            produceNanos += System.nanoTime() - s;
+            while (detector.processed() + detector.dropped() < readings) Thread.sleep(1);
+        }
+        long totalNanos = System.nanoTime() - start;
+
+        int[] found = new int[4];
+        int falsePositives = 0;
+        int[] expected = {AnomalyDetector.STUCK, AnomalyDetector.UNEXPLAINED_DROP,
+                AnomalyDetector.IMPOSSIBLE_RATE, AnomalyDetector.STUCK};
+        for (Map.Entry<Integer, Integer> e : detector.suspects().entrySet()) {
+            int i = e.getKey();
+            if (i % 1000 != 0) falsePositives++;
+            else if ((e.getValue() & expected[(i / 1000) % 4]) != 0) found[(i / 1000) % 4]++;
+        }
+        System.out.printf("anomaly: %d readings, producer %.1f M/s, detector %.1f M/s end to end, dropped %d%n",
+                readings, readings / (produceNanos / 1e9) / 1e6, readings / (totalNanos / 1e9) / 1e6,
+                detector.dropped());
+        System.out.printf("anomaly: detected stuck %d, drop %d, jump %d, jammed %d of ~%d each; %d false positives%n",
+                found[0], found[1], found[2], found[3], (n + 999) / 1000 / 4, falsePositives);
+
+        // A sensor reporting -1 must be flagged, not taken for a logged pickup
+        AnomalyDetector probe = new AnomalyDetector(1, 64);
+        probe.reading(0, tickMillis, 40);
+        probe.reading(0, 2 * tickMillis, -1);
+        while (probe.processed() < 2) Thread.sleep(1);
+        probe.close();
+        if ((probe.flags(0) & AnomalyDetector.IMPOSSIBLE_RATE) == 0) {
+            throw new IllegalStateException("anomaly: a reading of -1 was not flagged");
+        }
+    }
+
+    // Typical UI queries against the secondary indexes; 1000 bins change between rounds
+    static void benchQuery(int n) {
+        ChangeTracker changes = new ChangeTracker();
+        List<WasteBin> bins = Arrays.asList(sampleBins(n));
+        FleetIndex index = new FleetIndex(bins, changes.register("index"), Zones.EMPTY);
+        for (int i = 0; i < n; i++) bins.get(i).attach(changes, i);
+        long s = System.nanoTime();
+        index.update();
+        System.out.printf("query: indexed %d bins in %.1f ms%n", n, (System.nanoTime() - s) / 1e6);
+
+        Map<String, FleetQuery> queries = new LinkedHashMap<>();
+        queries.put("type+status", FleetQuery.bins().type("Organic").status(WasteBin.CRITICAL));
+        queries.put("level 35-72", FleetQuery.bins().level(35, 72));
+        queries.put("location prefix", FleetQuery.bins().locationPrefix("Zone 9"));
+        queries.put("collect top 20", FleetQuery.bins().needsCollection().orderBy(FleetQuery.Order.LEVEL_DESC).limit(20));
+        SplittableRandom rand = new SplittableRandom(5);
+        for (int round = 0; round < 50; round++) {
+            for (int c = 0; c < 1000; c++) bins.get(rand.nextInt(n)).setCurrentLevel(rand.nextInt(101));
+            StringBuilder line = new StringBuilder("query:");
+            for (Map.Entry<String, FleetQuery> q : queries.entrySet()) {
+                s = System.nanoTime();
+                // Large results are counted, not materialized: that part costs the same with or without indexes
+                int found = q.getKey().startsWith("collect") ? q.getValue().run(index).size() : q.getValue().count(index);
+                line.append(String.format(" %s %d in %.3f ms |", q.getKey(), found, (System.nanoTime() - s) / 1e6));
+            }
+            s = System.nanoTime();
+            int groups = FleetQuery.bins().groupBy(index, FleetQuery.GroupBy.TYPE).size();
+            line.append(String.format(" group by type %d in %.3f ms", groups, (System.nanoTime() - s) / 1e6));
+            if (round >= 45) System.out.println(line);
+        }
+    }
+
+    // The crash-safe save (checksums, fsync, atomic rename) against the old in-place FileWriter,
+    // then a save torn in half to check that loading recovers the previous one from the backup
+    static void benchPersist(int n) throws Exception {
+        WasteBin[] bins = sampleBins(n);
+        Path dir = Files.createTempDirectory("persist");
+        Path file = dir.resolve("bins.csv");
+        try {
+            long plain = Long.MAX_VALUE, safe = Long.MAX_VALUE;
+            for (int round = 0; round < 5; round++) {
+                long s = System.nanoTime();
+                try (PrintWriter pw = new PrintWriter(new FileWriter(file.toFile()))) {
+                    for (WasteBin bin : bins) pw.println(BinCsv.format(bin));
+                }
+                plain = Math.min(plain, System.nanoTime() - s);
+
+                s = System.nanoTime();
+                try (AtomicFile.Output out = AtomicFile.create(file)) {
+                    for (WasteBin bin : bins) out.line(BinCsv.format(bin));
+                    out.commit();
+                }
+                safe = Math.min(safe, System.nanoTime() - s);
+            }
+            System.out.printf("persist: %d bins in-place %.1f ms, atomic + crc32c + fsync %.1f ms (%d KB)%n",
+                    n, plain / 1e6, safe / 1e6, Files.size(file) / 1024);
+
+            long s = System.nanoTime();
+            int read = BinCsv.read(file).size();
+            System.out.printf("persist: read and verified %d bins in %.1f ms%n", read, (System.nanoTime() - s) / 1e6);
+
+            // A torn write: the new file is cut off in the middle, the backup holds the previous save
+            bins[0].setCurrentLevel(99);
+            try (AtomicFile.Output out = AtomicFile.create(file)) {
+                for (WasteBin bin : bins) out.line(BinCsv.format(bin));
+                out.commit();
+            }
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ch.truncate(ch.size() / 2);
+            }
+            List<WasteBin> recovered = BinCsv.read(file);
+            if (recovered.size() != n || recovered.get(0).getCurrentLevel() == 99) {
+                throw new IllegalStateException("torn file: expected the " + n + " bins of the previous save, got "
+                        + recovered.size());
+            }
+            if (BinCsv.read(file).size() != n) throw new IllegalStateException("torn file: restored file is damaged");
+            System.out.printf("persist: torn file recovered %d bins from backup, restored file verifies%n",
+                    recovered.size());
+        } finally {
+            for (File f : dir.toFile().listFiles()) Files.deleteIfExists(f.toPath());
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    // Full plan of a fleet with readings from before and after the origin. Every bin must be
+    // planned for the shift it crosses CRITICAL in: never one that starts after the crossing,
+    // and not an earlier one either. Half the readings are taken at the origin so crossings
+    // fall exactly on shift boundaries too.
+    static void benchSchedule(int n) {
+        long tick = 5000, shift = 12 * tick, origin = System.currentTimeMillis();
+        int horizon = 6;
+        SplittableRandom rand = new SplittableRandom(11);
+        List<WasteBin> bins = new ArrayList<>();
+        for (WasteBin bin : sampleBins(n)) {
+            long at = rand.nextBoolean() ? origin : origin - rand.nextLong(2 * shift) + rand.nextLong(shift);
+            bin.setCurrentLevel(rand.nextInt(101), at);
+            bins.add(bin);
+        }
+        CollectionScheduler scheduler = new CollectionScheduler(horizon, shift, tick, 20, origin);
+        long s = System.nanoTime();
+        scheduler.rebuild(bins);
+        long planned = System.nanoTime() - s;
+        int boundary = 0;
+        for (int i = 0; i < bins.size(); i++) {
+            WasteBin bin = bins.get(i);
+            int critical = bin.thresholds().thresholds[ThresholdRules.CRITICAL];
+            double perShift = FillProfile.of(bin.getType()).meanPerTick() * shift / tick;
+            double crossing = bin.getCurrentLevel() >= critical ? 0
+                    : (bin.getUpdatedAtMillis() - origin) / (double) shift + (critical - bin.getCurrentLevel()) / perShift;
+            int due = scheduler.dueShift(i);
+            if (crossing == Math.rint(crossing) && crossing > 0) boundary++;
+            boolean ok = crossing > horizon ? due == -1
+                    : crossing <= 0 ? due == 0
+                    : due >= 0 && due < crossing && due + 1 >= crossing;
+            if (!ok) {
+                throw new IllegalStateException(bin.getId() + " crosses CRITICAL at shift " + crossing
+                        + " but is planned for shift " + due);
+            }
+        }
+        System.out.printf("schedule: %d bins planned in %.0f ms, %d trips; every bin due in the shift it crosses in (%d on a boundary)%n",
+                n, planned / 1e6, scheduler.totalTrips(), boundary);
+    }
+
+    // A cold route over n stops, then rounds where a few bins are collected and a few others
+    // cross the threshold: the cached route is repaired and compared with planning from scratch
+    static void benchRoute(int n) {
+        String[] types = {"General", "Organic", "Recyclable"};
+        List<WasteBin> fleet = new ArrayList<>();
+        for (int i = 0; i < 2 * n; i++) {
+            WasteBin bin = new WasteBin(String.format("BIN-%06d", i + 1), "Site " + (i % n), 100, types[i % 3], 0);
+            bin.attach(null, i);
+            fleet.add(bin);
+        }
+        SplittableRandom rand = new SplittableRandom(7);
+        BitSet due = new BitSet();
+        while (due.cardinality() < n) due.set(rand.nextInt(fleet.size()));
+
+        RoutePlanner planner = new RoutePlanner(SiteMap.EMPTY, 4, 8, 2000);
+        RoutePlanner.Plan plan = planner.plan("all", stops(fleet, due));
+        check(plan, due);
+        System.out.printf("route: cold %d stops in %.1f ms, %.1f km%n", plan.stops.size(), plan.nanos / 1e6, plan.km);
+        for (int round = 0; round < 10; round++) {
+            for (int k = 0; k < 5; k++) {
+                int collected = due.nextSetBit(rand.nextInt(fleet.size()));
+                due.clear(collected < 0 ? due.nextSetBit(0) : collected);
+                due.set(rand.nextInt(fleet.size()));
+            }
+            plan = planner.plan("all", stops(fleet, due));
+            check(plan, due);
+            RoutePlanner.Plan fresh = new RoutePlanner(SiteMap.EMPTY, 1, 8, 2000).plan("all", stops(fleet, due));
+            System.out.printf("route: warm +%d -%d in %.2f ms, %.1f km (from scratch %.1f ms, %.1f km)%n",
+                    plan.added, plan.removed, plan.nanos / 1e6, plan.km, fresh.nanos / 1e6, fresh.km);
+        }
+    }
+
+    private static List<WasteBin> stops(List<WasteBin> fleet, BitSet due) {
+        List<WasteBin> stops = new ArrayList<>();
+        for (int i = due.nextSetBit(0); i >= 0; i = due.nextSetBit(i + 1)) stops.add(fleet.get(i));
+        return stops;
+    }
+
+    private static void check(RoutePlanner.Plan plan, BitSet due) {
+        BitSet seen = new BitSet();
+        for (WasteBin bin : plan.stops) {
+            if (seen.get(bin.getIndex())) throw new IllegalStateException("stop visited twice: " + bin.getId());
+            seen.set(bin.getIndex());
+        }
+        if (!seen.equals(due)) throw new IllegalStateException("route does not match the bins due");
+    }
+
+    // Publisher cost per tick with many browser viewers, one of which stops reading: it must be
+    // cut back to a snapshot without slowing the ticks or the other viewers
+    static void benchDashboard(int n) throws Exception {
+        int viewers = 200;
+        ChangeTracker changes = new ChangeTracker();
+        List<WasteBin> bins = Arrays.asList(sampleBins(n));
+        FleetIndex index = new FleetIndex(bins, changes.register("index"), Zones.EMPTY);
+        ChangeTracker.Cursor feed = changes.register("dashboard");
+        for (int i = 0; i < n; i++) bins.get(i).attach(changes, i);
+        AnomalyDetector anomalies = new AnomalyDetector(1, 1024);
+        DashboardServer server = new DashboardServer(0, bins, feed, index, anomalies, 3_600_000, 16);
+        server.start();
+
+        List<java.net.Socket> sockets = new ArrayList<>();
+        long[] received = new long[viewers];
+        for (int v = 0; v <= viewers; v++) {
+            java.net.Socket socket = new java.net.Socket("localhost", server.port());
+            socket.getOutputStream().write("GET /events HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes());
+            sockets.add(socket);
+            if (v == viewers) break; // the last one never reads
+            int id = v;
+            Thread reader = new Thread(() -> {
+                byte[] buf = new byte[1 << 16];
+                try (InputStream in = socket.getInputStream()) {
+                    for (int r; (r = in.read(buf)) > 0; ) received[id] += r;
+                } catch (IOException e) {
+                    // closed at the end
+                }
+            });
+            reader.setDaemon(true);
+            reader.start();
+        }
+        while (server.clients() <= viewers) Thread.sleep(10);
+
+        long s = System.nanoTime();
+        server.tick();
+        System.out.printf("dashboard: snapshot of %d bins to %d viewers in %.1f ms%n",
+                n, viewers + 1, (System.nanoTime() - s) / 1e6);
+        SplittableRandom rand = new SplittableRandom(3);
+        // CPU time of the publishing thread: on a small machine wall time mostly measures
+        // the 200 reader threads competing for the same cores
+        java.lang.management.ThreadMXBean cpu = java.lang.management.ManagementFactory.getThreadMXBean();
+        long total = 0, worst = 0, wall = 0;
+        int ticks = 200;
+        for (int t = 0; t < ticks; t++) {
+            for (int c = 0; c < n / 100; c++) bins.get(rand.nextInt(n)).setCurrentLevel(rand.nextInt(101));
+            s = System.nanoTime();
+            long c0 = cpu.getCurrentThreadCpuTime();
+            server.tick();
+            long d = cpu.getCurrentThreadCpuTime() - c0;
+            wall += System.nanoTime() - s;
+            total += d;
+            worst = Math.max(worst, d);
+            Thread.sleep(20);
+        }
+        Thread.sleep(500);
+        long min = Long.MAX_VALUE;
+        for (int v = 0; v < viewers; v++) min = Math.min(min, received[v]);
+        System.out.printf("dashboard: %d ticks of %d changed bins, cpu avg %.2f ms, worst %.2f ms, wall avg %.2f ms per tick%n",
+                ticks, n / 100, total / 1e6 / ticks, worst / 1e6, wall / 1e6 / ticks);
+        System.out.printf("dashboard: every reading viewer got >= %d KB, %d viewers still connected%n",
+                min / 1024, server.clients());
+        for (java.net.Socket socket : sockets) socket.close();
+        server.stop();
+    }
+
+    // Time to first frame and to the fleet on screen. With a display the real app is started in
+    // child JVMs (first start imports bins.csv, restarts replay from the snapshot), optionally with
+    // a CDS archive; headless, the same steps are timed in-process: the site load that runs in the
+    // background and the EDT work that puts the fleet on screen, against building every row and card.
+    static void benchStartup(int n) throws Exception {
+        Path dir = Files.createTempDirectory("startup");
+        try {
+            try (AtomicFile.Output out = AtomicFile.create(dir.resolve("bins.csv"))) {
+                for (WasteBin bin : sampleBins(n)) out.line(BinCsv.format(bin));
+                out.commit();
+            }
+            if (!GraphicsEnvironment.isHeadless()) {
+                String archive = System.getProperty("startup.archive");
+                for (int run = 0; run < 3; run++) {
+                    List<String> cmd = new ArrayList<>(List.of(
+                            Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                            "-cp", Paths.get(System.getProperty("java.class.path")).toAbsolutePath().toString()));
+                    if (archive != null) cmd.add("-XX:SharedArchiveFile=" + Paths.get(archive).toAbsolutePath());
+                    cmd.addAll(List.of("-Dstartup.report=true", "-Dstartup.exit=true", "ModernWhiteWasteSystem"));
+                    Process child = new ProcessBuilder(cmd).directory(dir.toFile()).redirectErrorStream(true).start();
+                    StringBuilder marks = new StringBuilder();
+                    try (BufferedReader br = new BufferedReader(new InputStreamReader(child.getInputStream()))) {
+                        String line;
+                        while ((line = br.readLine()) != null) {
+                            if (line.startsWith("startup: ")) marks.append(marks.length() > 0 ? ", " : "").append(line.substring(9));
+                        }
+                    }
+                    child.waitFor();
+                    System.out.printf("startup: %s %d bins%s: %s%n", run == 0 ? "first start" : "restart", n,
+                            archive != null ? " (CDS)" : "", marks);
+                }
+                return;
+            }
+
+            // Background: import on first start, snapshot replay on restart
+            long s = System.nanoTime();
+            EventStore store = EventStore.open(dir.resolve("events"));
+            for (WasteBin bin : BinCsv.read(dir.resolve("bins.csv"))) store.binAdded(bin);
+            store.sync();
+            long imported = System.nanoTime() - s;
+            store.snapshot();
+            store.close();
+            s = System.nanoTime();
+            store = EventStore.open(dir.resolve("events"));
+            List<WasteBin> fleet = store.projection().bins();
+            long replayed = System.nanoTime() - s;
+            store.close();
+            System.out.printf("startup: site load %d bins, first start %.0f ms, restart %.0f ms (off the EDT)%n",
+                    fleet.size(), imported / 1e6, replayed / 1e6);
+
+            // EDT: the fleet on screen, lazily vs every row and card
+            BufferedImage frame = new BufferedImage(1400, 900, BufferedImage.TYPE_INT_RGB);
+            long[] lazy = new long[2];
+            for (int round = 0; round < 2; round++) {
+                s = System.nanoTime();
+                BinTableModel model = new BinTableModel();
+                model.setBins(fleet);
+                JPanel cards = new JPanel(new FlowLayout(FlowLayout.LEFT, 15, 15));
+                for (int i = 0; i < 60 && i < fleet.size(); i++) cards.add(ModernWhiteWasteSystem.createEnhancedBinCard(fleet.get(i)));
+                lazy[round] = System.nanoTime() - s + paint(new JTable(model), cards, frame);
+            }
+
+            s = System.nanoTime();
+            javax.swing.table.DefaultTableModel rows = new javax.swing.table.DefaultTableModel(
+                    new String[]{"Bin ID", "Location", "Type", "Capacity (L)", "Current (%)", "Status", "Last Updated"}, 0);
+            JPanel allCards = new JPanel(new FlowLayout(FlowLayout.LEFT, 15, 15));
+            for (WasteBin bin : fleet) {
+                rows.addRow(new Object[]{bin.getId(), bin.getLocation(), bin.getType(), bin.getCapacity(),
+                        bin.getCurrentLevel() + "%", bin.getStatus(), bin.getLastUpdated()});
+                allCards.add(ModernWhiteWasteSystem.createEnhancedBinCard(bin));
+            }
+            long eager = System.nanoTime() - s + paint(new JTable(rows), allCards, frame);
+            System.out.printf("startup: fleet on screen (EDT) lazy %.1f ms cold / %.1f ms warm, every row and card %.1f ms%n",
+                    lazy[0] / 1e6, lazy[1] / 1e6, eager / 1e6);
+            System.out.println("startup: no display, so time to first frame was not measured (run under X or xvfb-run)");
+        } finally {
+            try (java.util.stream.Stream<Path> files = Files.walk(dir)) {
+                for (Path f : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.deleteIfExists(f);
+            }
+        }
+    }
+
+    // One layout and paint of the table and cards as they would first appear
+    private static long paint(JTable table, JPanel cards, BufferedImage frame) {
+        long s = System.nanoTime();
+        table.setRowHeight(40);
+        table.setSize(1370, 560);
+        cards.setSize(1370, 280);
+        cards.doLayout();
+        for (Component c : cards.getComponents()) ((Container) c).doLayout();
+        Graphics2D g = frame.createGraphics();
+        g.setClip(0, 0, 1370, 280);
+        cards.paint(g);
+        g.translate(0, 300);
+        g.setClip(0, 0, 1370, 560);
+        table.paint(g);
+        g.dispose();
+        return System.nanoTime() - s;
+    }
+
+    // Fills every bin's ring from its ChangeTracker cursor, then paints table-cell sparklines
+    // and reports the heap they cost and what a paint allocates, Java2D included
+    static void benchSparkline(int n) {
+        List<WasteBin> fleet = new ArrayList<>(Arrays.asList(sampleBins(n)));
+        ChangeTracker tracker = new ChangeTracker();
+        for (int i = 0; i < n; i++) fleet.get(i).attach(tracker, i);
+        LevelHistory history = new LevelHistory(fleet, tracker.register("sparklines"));
+        SplittableRandom rand = new SplittableRandom(42);
+        long s = System.nanoTime();
+        for (int round = 0; round < LevelHistory.SAMPLES; round++) {
+            for (WasteBin bin : fleet) bin.setCurrentLevel(rand.nextInt(101));
+            history.update();
+        }
+        double secs = (System.nanoTime() - s) / 1e9;
+        System.out.printf("sparkline: %d bins x %d samples recorded in %.2f s (%.1f M samples/s incl. level updates), %d MB%n",
+                n, LevelHistory.SAMPLES, secs, n * (double) LevelHistory.SAMPLES / secs / 1e6, history.bytes() >> 20);
+
+        JTable table = new JTable(1, 1);
+        Sparkline renderer = new Sparkline();
+        renderer.setHistory(history);
+        renderer.setSize(140, 40);
+        BufferedImage image = new BufferedImage(140, 40, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        int paints = 100_000;
+        for (int warm = 0; warm < 2; warm++) {
+            long allocated = threads.getThreadAllocatedBytes(tid);
+            s = System.nanoTime();
+            for (int i = 0; i < paints; i++) {
+                WasteBin bin = fleet.get((int) ((i * 7919L) % n));
+                renderer.getTableCellRendererComponent(table, bin, false, false, i, BinTableModel.TREND);
+                renderer.paintComponent(g);
+            }
+            long nanos = System.nanoTime() - s;
+            allocated = threads.getThreadAllocatedBytes(tid) - allocated;
+            if (warm == 1) {
+                System.out.printf("sparkline: %d paints, %.2f us each, %.2f bytes allocated per paint%n",
+                        paints, nanos / 1e3 / paints, allocated / (double) paints);
+            }
+        }
+        g.dispose();
+    }
+
+    // Years of collections (24 a day) loaded the old way, all rows parsed into the ledger, then
+    // after a retention pass: 90 hot days plus the archive index. Then a small event log whose
+    // closed segments are archived and expired, checked by reopening it.
+    static void benchRetention(int years) throws Exception {
+        Path dir = Files.createTempDirectory("retention");
+        try {
+            String[] types = {"General", "Organic", "Recyclable"};
+            SplittableRandom rand = new SplittableRandom(3);
+            LocalDate today = LocalDate.now();
+            List<CollectionRoute> routes = new ArrayList<>();
+            for (LocalDate day = today.minusYears(years); day.isBefore(today); day = day.plusDays(1)) {
+                for (int h = 0; h < 24; h++) {
+                    CollectionRoute route = new CollectionRoute(String.format("%s %02d:00", day, h), "BIN-1;BIN-2", 2);
+                    route.km = 5 + rand.nextDouble() * 10;
+                    route.baselineKm = route.km * 2;
+                    for (String type : types) {
+                        ImpactLedger.Totals t = new ImpactLedger.Totals();
+                        t.bins = 1 + rand.nextInt(20);
+                        t.litres = t.bins * 80.0;
+                        t.kg = t.litres * ImpactLedger.density(type);
+                        route.byType.put(type, t);
+                    }
+                    routes.add(route);
+                }
+            }
+            Path hot = dir.resolve("collection_history.csv");
+            try (AtomicFile.Output out = AtomicFile.create(hot)) {
+                for (CollectionRoute route : routes) out.line(route.format());
+                out.commit();
+            }
+            long fullBytes = Files.size(hot);
+            long s = System.nanoTime();
+            ImpactLedger before = new ImpactLedger();
+            List<CollectionRoute> loaded = new ArrayList<>();
+            for (String line : AtomicFile.readLines(hot)) loaded.add(CollectionRoute.parse(line));
+            loaded.forEach(before::record);
+            System.out.printf("retention: %d years, %d rows: load everything %.0f ms, %d KB%n",
+                    years, loaded.size(), (System.nanoTime() - s) / 1e6, fullBytes / 1024);
+
+            Path archiveDir = dir.resolve("archive"), eventDir = dir.resolve("events");
+            s = System.nanoTime();
+            HistoryArchive archive = HistoryArchive.open(archiveDir);
+            int archived = archive.archive(loaded, today.minusDays(90));
+            try (AtomicFile.Output out = AtomicFile.create(hot)) {
+                for (CollectionRoute route : loaded.subList(archived, loaded.size())) out.line(route.format());
+                out.commit();
+            }
+            long passNanos = System.nanoTime() - s;
+            long archiveBytes = size(archiveDir);
+            s = System.nanoTime();
+            int expired = archive.expire(YearMonth.from(today).minusMonths(24), eventDir);
+            System.out.printf("retention: pass archived %d rows in %.0f ms (%d KB gz + index), expiry dropped %d months (%d KB left)%n",
+                    archived, passNanos / 1e6, archiveBytes / 1024, expired, size(archiveDir) / 1024);
+
+            s = System.nanoTime();
+            ImpactLedger after = new ImpactLedger();
+            HistoryArchive.open(archiveDir).restore(after);
+            int hotRows = 0;
+            for (String line : AtomicFile.readLines(hot)) {
+                after.record(CollectionRoute.parse(line));
+                hotRows++;
+            }
+            System.out.printf("retention: startup %.1f ms (%d hot rows, %d KB), ledger %s (CO2 %.0f vs %.0f kg, %d vs %d bins)%n",
+                    (System.nanoTime() - s) / 1e6, hotRows, Files.size(hot) / 1024,
+                    Math.abs(after.total().co2SavedKg() - before.total().co2SavedKg()) < 1 && after.total().bins == before.total().bins
+                            ? "matches" : "DIFFERS",
+                    after.total().co2SavedKg(), before.total().co2SavedKg(), after.total().bins, before.total().bins);
+
+            int[] rows = new int[1];
+            LocalDate month = today.minusMonths(6).withDayOfMonth(1);
+            s = System.nanoTime();
+            archive.read(month, month.plusMonths(1), route -> rows[0]++);
+            System.out.printf("retention: lazy read of %s: %d rows in %.1f ms%n",
+                    YearMonth.from(month), rows[0], (System.nanoTime() - s) / 1e6);
+
+            // Event log: closed segments are gzipped, then dropped behind a base snapshot
+            WasteBin[] bins = sampleBins(2000);
+            EventStore store = EventStore.open(eventDir);
+            for (WasteBin bin : bins) store.binAdded(bin);
+            List<WasteBin> fleet = store.projection().bins();
+            for (int round = 0; round < 100; round++) {
+                for (WasteBin bin : fleet) store.reading(bin, rand.nextInt(101));
+            }
+            store.snapshot();
+            for (WasteBin bin : fleet) store.reading(bin, rand.nextInt(101));
+            store.close();
+            String expected = levels(store.projection().bins());
+            long live = size(eventDir);
+            s = System.nanoTime();
+            int segments = archive.archiveEvents(eventDir, Long.MAX_VALUE);
+            long gz = size(eventDir.resolve("archive"));
+            System.out.printf("retention: event log %d KB, %d closed segments archived in %.0f ms, now %d KB live + %d KB gz%n",
+                    live / 1024, segments, (System.nanoTime() - s) / 1e6, (size(eventDir) - gz) / 1024, gz / 1024);
+            boolean reopened = levels(reopen(eventDir)).equals(expected);
+            archive.expire(YearMonth.from(today).plusMonths(1), eventDir);
+            System.out.printf("retention: reopened after archiving %s, after expiry %s; readings rolled up %s%n",
+                    reopened ? "matches" : "DIFFERS", levels(reopen(eventDir)).equals(expected) ? "matches" : "DIFFERS",
+                    archive.readings().values().stream().mapToLong(r -> r.readings).sum());
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    // A closed store must refuse events. The newest snapshot is cut short, has a bit flipped or
+    // claims a huge bin count: the store must skip it, load the older one and replay the log to
+    // the same fleet. With every snapshot damaged and the start of the log gone, opening must
+    // fail rather than come up empty.
+    static void benchRecovery(int n) throws Exception {
+        Path dir = Files.createTempDirectory("recovery");
+        try {
+            Path clean = dir.resolve("clean");
+            SplittableRandom rand = new SplittableRandom(5);
+            EventStore store = EventStore.open(clean);
+            for (WasteBin bin : sampleBins(n)) store.binAdded(bin);
+            List<WasteBin> fleet = store.projection().bins();
+            for (int round = 0; round < 3; round++) {
+                for (WasteBin bin : fleet) store.reading(bin, rand.nextInt(101));
+                store.snapshot();
+            }
+            for (WasteBin bin : fleet) store.reading(bin, rand.nextInt(101));
+            // Out-of-range sensor values are logged clamped, so replay gives the live levels
+            store.reading(fleet.get(1), -5);
+            store.reading(fleet.get(2), 130);
+            if (fleet.get(1).getCurrentLevel() != 0 || fleet.get(2).getCurrentLevel() != 100) {
+                throw new IllegalStateException("out-of-range readings were not clamped");
+            }
+            store.close();
+            String expected = levels(fleet);
+            // A closed store refuses events instead of applying them without logging them
+            long last = store.lastSeq();
+            try {
+                store.reading(fleet.get(0), 100 - fleet.get(0).getCurrentLevel());
+                throw new IllegalStateException("closed store accepted an event");
+            } catch (IllegalStateException closed) {
+                if (store.lastSeq() != last || !levels(fleet).equals(expected)) {
+                    throw new IllegalStateException("closed store applied an event it did not log");
+                }
+            }
+
+            String[] damages = {"truncated", "bit-flipped", "huge count"};
+            for (int d = 0; d < damages.length; d++) {
+                Path copy = dir.resolve("case" + d);
+                copyTree(clean, copy);
+                List<Path> snapshots = EventStore.snapshots(copy);
+                Path newest = snapshots.get(snapshots.size() - 1);
+                damage(newest, d);
+                long s = System.nanoTime();
+                String recovered = levels(reopen(copy));
+                if (!recovered.equals(expected)) throw new IllegalStateException(damages[d] + " snapshot: fleet differs");
+                System.out.printf("recovery: %s snapshot skipped, fleet matches after %.0f ms%n",
+                        damages[d], (System.nanoTime() - s) / 1e6);
+            }
+
+            Path lost = dir.resolve("lost");
+            copyTree(clean, lost);
+            for (Path p : EventStore.snapshots(lost)) damage(p, 1);
+            Files.delete(EventStore.segments(lost).get(0));
+            try {
+                reopen(lost);
+                throw new IllegalStateException("opened a store with no intact snapshot and no log start");
+            } catch (IOException expectedFailure) {
+                System.out.println("recovery: no intact snapshot and no log start fails: " + expectedFailure.getMessage());
+            }
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    private static void damage(Path snapshot, int how) throws IOException {
+        try (FileChannel ch = FileChannel.open(snapshot, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (how == 0) {
+                ch.truncate(ch.size() / 2);
+            } else if (how == 1) {
+                java.nio.ByteBuffer b = java.nio.ByteBuffer.allocate(1);
+                ch.read(b, ch.size() / 2);
+                b.put(0, (byte) (b.get(0) ^ 0x10)).rewind();
+                ch.write(b, ch.size() / 2);
+            } else {
+                // The count follows magic, seq and time
+                ch.write(java.nio.ByteBuffer.allocate(4).putInt(0, Integer.MAX_VALUE), 20);
+            }
+        }
+    }
+
+    private static void copyTree(Path from, Path to) throws IOException {
+        try (java.util.stream.Stream<Path> files = Files.walk(from)) {
+            for (Path f : (Iterable<Path>) files::iterator) {
+                Path target = to.resolve(from.relativize(f).toString());
+                if (Files.isDirectory(f)) Files.createDirectories(target);
+                else Files.copy(f, target);
+            }
+        }
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        try (java.util.stream.Stream<Path> files = Files.walk(dir)) {
+            for (Path f : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.deleteIfExists(f);
+        }
+    }
+
+    private static long size(Path dir) throws IOException {
+        if (!Files.exists(dir)) return 0;
+        try (java.util.stream.Stream<Path> files = Files.walk(dir)) {
+            return files.filter(Files::isRegularFile).mapToLong(f -> f.toFile().length()).sum();
+        }
+    }
+
+    private static List<WasteBin> reopen(Path eventDir) throws IOException {
+        try (EventStore store = EventStore.open(eventDir)) {
+            return store.projection().bins();
+        }
+    }
+
+    private static String levels(List<WasteBin> bins) {
+        StringBuilder sb = new StringBuilder();
+        for (WasteBin bin : bins) sb.append(bin.getId()).append(bin.getCurrentLevel());
+        return sb.toString();
+    }
+
+    // Primary ingest (readings, a flush per round, a synced collection every 10 rounds) without
+    // replication and then with a standby in a second JVM in each mode. Ingest is reported as
+    // readings/s and as the primary thread's CPU per reading, which is what the ingest path
+    // costs whatever the standby takes from a shared machine. Then the primary stops, the
+    // standby takes over, and its log is checked against the primary's.
+    static void benchReplication(int n) throws Exception {
+        Path dir = Files.createTempDirectory("replication");
+        Process child = null;
+        try {
+            EventStore store = EventStore.open(dir.resolve("a"));
+            for (WasteBin bin : sampleBins(n)) store.binAdded(bin);
+            store.sync();
+            List<WasteBin> fleet = store.projection().bins();
+            LoadGenerator load = LoadGenerator.forBins(1, fleet);
+            int rounds = Math.max(20, 4_000_000 / n);
+            ingest(store, fleet, load, rounds);
+            ingest(store, fleet, load, rounds, "none", null);
+
+            int port;
+            try (java.net.ServerSocket probe = new java.net.ServerSocket(0)) {
+                port = probe.getLocalPort();
+            }
+            child = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                    "-cp", System.getProperty("java.class.path"), "Replication", "standby",
+                    "--dir", dir.resolve("b").toString(), "--port", String.valueOf(port), "--takeover-ms", "3000",
+                    "--seconds", "1").redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            BufferedReader standbyOut = new BufferedReader(new InputStreamReader(child.getInputStream()));
+            for (String mode : new String[] {"async", "ack", "lag:" + n}) {
+                Replication.Primary primary = new Replication.Primary(store, port, mode);
+                primary.start();
+                long s = System.currentTimeMillis();
+                while (primary.lag() != 0 && System.currentTimeMillis() - s < 60_000) Thread.sleep(10);
+                ingest(store, fleet, load, rounds, mode, primary);
+                s = System.currentTimeMillis();
+                while (primary.lag() != 0 && System.currentTimeMillis() - s < 60_000) Thread.sleep(1);
+                System.out.printf("replication: %s standby caught up %d ms after the last round%n",
+                        mode, System.currentTimeMillis() - s);
+                primary.close();
+                if (mode.startsWith("lag:")) {
+                    long last = store.lastSeq();
+                    s = System.currentTimeMillis();
+                    String line;
+                    while ((line = standbyOut.readLine()) != null && !line.contains("took over")) { }
+                    System.out.printf("replication: primary stopped at #%d, standby: %s (after %d ms)%n",
+                            last, line, System.currentTimeMillis() - s);
+                }
+            }
+            child.waitFor();
+            long last = store.lastSeq();
+            boolean same = levels(EventStore.reconstructTo(dir.resolve("b"), last).bins()).equals(levels(fleet));
+            System.out.printf("replication: standby's log at #%d %s the primary's fleet%n", last, same ? "matches" : "DIFFERS from");
+            store.close();
+        } finally {
+            if (child != null) child.destroyForcibly().waitFor();
+            try (java.util.stream.Stream<Path> files = Files.walk(dir)) {
+                for (Path f : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.deleteIfExists(f);
+            }
+        }
+    }
+
+    private static void ingest(EventStore store, List<WasteBin> fleet, LoadGenerator load, int rounds) {
+        for (int round = 1; round <= rounds; round++) {
+            for (int i = 0; i < fleet.size(); i++) {
+                WasteBin bin = fleet.get(i);
+                store.reading(bin, load.advance(i, bin.getCurrentLevel()));
+            }
+            store.flush();
+            if (round % 10 == 0) {
+                store.collection(fleet.get(round % fleet.size()));
+                store.sync();
+            }
+        }
+    }
+
+    private static void ingest(EventStore store, List<WasteBin> fleet, LoadGenerator load, int rounds,
+                               String mode, Replication.Primary primary) {
+        java.lang.management.ThreadMXBean threads = java.lang.management.ManagementFactory.getThreadMXBean();
+        long cpu = threads.getCurrentThreadCpuTime(), s = System.nanoTime();
+        ingest(store, fleet, load, rounds);
+        long nanos = System.nanoTime() - s;
+        cpu = threads.getCurrentThreadCpuTime() - cpu;
+        long readings = (long) rounds * fleet.size();
+        System.out.printf("replication: %-12s %,d readings/s, %.0f ns CPU per reading on the ingest thread%s%n",
+                mode, (long) (readings / (nanos / 1e9)), cpu / (double) readings,
+                primary == null ? "" : ", standby lag at end " + primary.lag() + " events");
+    }
+}
@@ -0,0 +1,86 @@
+import java.io.*;
+
+// Immutable fact about the fleet. Bin state is never overwritten in place;
+// it is the result of applying these events in sequence order.
+public final class FleetEvent {
+    enum Type {
+        BIN_ADDED(1), READING(2), COLLECTION(3), RESET(4);
+
+        final byte code;
+
+        Type(int code) { this.code = (byte) code; }
+
+        static Type of(byte code) {
+            for (Type t : values()) if (t.code == code) return t;
+            throw new IllegalArgumentException("Unknown event type " + code);
+        }
+    }
+
+    final Type type;
+    final long seq;
+    final long timeMillis;
+    final String binId;     // null for RESET
+    final int level;        // new level for READING, level emptied for COLLECTION
+    final String location;  // BIN_ADDED only
+    final String binType;   // BIN_ADDED only
+    final int capacity;     // BIN_ADDED only
+
+    FleetEvent(Type type, long seq, long timeMillis, String binId, int level,
+               String location, String binType, int capacity) {
+        this.type = type;
+        this.seq = seq;
+        this.timeMillis = timeMillis;
+        this.binId = binId;
+        this.level = level;
+        this.location = location;
+        this.binType = binType;
+        this.capacity = capacity;
+    }
+
+    // Static so the log can encode an event without allocating one per reading
+    static void write(DataOutput out, Type type, long seq, long timeMillis, String binId, int level,
+                      String location, String binType, int capacity) throws IOException {
+        out.writeByte(type.code);
+        out.writeLong(seq);
+        out.writeLong(timeMillis);
+        switch (type) {
+            case BIN_ADDED:
+                out.writeUTF(binId);
+                out.writeUTF(location);
+                out.writeUTF(binType);
+                out.writeInt(capacity);
+                out.writeByte(level);
+                break;
+            case READING:
+            case COLLECTION:
+                out.writeUTF(binId);
+                out.writeByte(level);
+                break;
+            case RESET:
+                break;
+        }
+    }
+
+    static FleetEvent readFrom(DataInput in) throws IOException {
+        Type type = Type.of(in.readByte());
+        long seq = in.readLong();
+        long time = in.readLong();
+        switch (type) {
+            case BIN_ADDED: {
+                String id = in.readUTF(), location = in.readUTF(), binType = in.readUTF();
+                int capacity = in.readInt();
+                return new FleetEvent(type, seq, time, id, in.readUnsignedByte(), location, binType, capacity);
+            }
+            case READING:
+            case COLLECTION:
+                return new FleetEvent(type, seq, time, in.readUTF(), in.readUnsignedByte(), null, null, 0);
+            default:
+                return new FleetEvent(type, seq, time, null, 0, null, null, 0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "#" + seq + " " + type + (binId != null ? " " + binId + " " + level + "%" : "");
+    }
+}
@@ -0,0 +1,268 @@
+import java.util.*;
+
+// Secondary indexes over the fleet, kept current from their own ChangeTracker cursor:
+// bitmaps per type, zone, status and "needs collection", a bit-sliced index over the level
+// (one bitmap per bit of 0-100, so any range is ~14 bitmap operations), and a location-sorted
+// permutation for prefix lookups. Per-type, per-zone and per-status counts
+// and level sums are maintained alongside, so unfiltered group-bys never touch the bins.
+//
+// Queries (see FleetQuery) combine bitmaps word by word and only look at individual bins for
+// predicates no index covers. Every call first applies pending changes, so results are current.
+public class FleetIndex {
+    private static final int LEVEL_BITS = 7;
+
+    private final List<WasteBin> bins;
+    private final ChangeTracker.Cursor changes;
+    private final Zones zones;
+
+    private int size;
+    private byte[] levels = new byte[16];
+    private byte[] statuses = new byte[16];
+    private String[] types = new String[16];
+    private String[] zoneOf = new String[16];
+
+    private final BitSet all = new BitSet();
+    private final BitSet[] levelSlices = new BitSet[LEVEL_BITS];
+    // Reused by the level comparisons, which run under the index lock
+    private final BitSet eq = new BitSet(), bound = new BitSet(), scratch = new BitSet();
+    private final BitSet[] byStatus = {new BitSet(), new BitSet(), new BitSet()};
+    private final BitSet collect = new BitSet();
+    private final Map<String, BitSet> byType = new TreeMap<>();
+    private final Map<String, BitSet> byZone = new TreeMap<>();
+    private final Map<String, FleetQuery.Group> typeTotals = new TreeMap<>();
+    private final Map<String, FleetQuery.Group> zoneTotals = new TreeMap<>();
+    private final FleetQuery.Group[] statusTotals = {new FleetQuery.Group(), new FleetQuery.Group(), new FleetQuery.Group()};
+
+    // Bin indices sorted by location, with the locations alongside; rebuilt lazily after adds
+    private int[] byLocation = new int[0];
+    private String[] sortedLocations = new String[0];
+
+    FleetIndex(List<WasteBin> bins, ChangeTracker.Cursor changes, Zones zones) {
+        this.bins = bins;
+        this.changes = changes;
+        this.zones = zones;
+        for (int b = 0; b < LEVEL_BITS; b++) levelSlices[b] = new BitSet();
+    }
+
+    synchronized void update() {
+        changes.drain(this::apply);
+    }
+
+    private void apply(int i) {
+        WasteBin bin = bins.get(i);
+        int level = Math.max(0, Math.min(100, bin.getCurrentLevel()));
+        int status = bin.statusLevel();
+        if (i >= size) {
+            add(i, bin);
+        } else {
+            int oldLevel = levels[i];
+            byStatus[statuses[i]].clear(i);
+            typeTotals.get(types[i]).remove(oldLevel, statuses[i]);
+            zoneTotals.get(zoneOf[i]).remove(oldLevel, statuses[i]);
+            statusTotals[statuses[i]].remove(oldLevel, statuses[i]);
+        }
+        levels[i] = (byte) level;
+        statuses[i] = (byte) status;
+        for (int b = 0; b < LEVEL_BITS; b++) levelSlices[b].set(i, (level >> b & 1) != 0);
+        byStatus[status].set(i);
+        collect.set(i, bin.needsCollection());
+        typeTotals.get(types[i]).add(level, status);
+        zoneTotals.get(zoneOf[i]).add(level, status);
+        statusTotals[status].add(level, status);
+    }
+
+    // Type, location and zone never change, so they are indexed once per bin
+    private void add(int i, WasteBin bin) {
+        if (i >= levels.length) {
+            int n = Math.max(levels.length * 2, i + 1);
+            levels = Arrays.copyOf(levels, n);
+            statuses = Arrays.copyOf(statuses, n);
+            types = Arrays.copyOf(types, n);
+            zoneOf = Arrays.copyOf(zoneOf, n);
+        }
+        types[i] = bin.getType();
+        zoneOf[i] = zones.zoneOf(bin.getLocation());
+        byType.computeIfAbsent(types[i], k -> new BitSet()).set(i);
+        byZone.computeIfAbsent(zoneOf[i], k -> new BitSet()).set(i);
+        typeTotals.computeIfAbsent(types[i], k -> new FleetQuery.Group());
+        zoneTotals.computeIfAbsent(zoneOf[i], k -> new FleetQuery.Group());
+        all.set(i);
+        size = i + 1;
+    }
+
+    synchronized BitSet select(FleetQuery q) {
+        update();
+        BitSet result = null;
+        if (q.type != null) result = and(result, byType.get(q.type));
+        if (q.zone != null) result = and(result, byZone.get(q.zone));
+        if (q.status >= 0) result = and(result, byStatus[q.status]);
+        if (q.collect) result = and(result, collect);
+        if (q.locationPrefix != null) result = and(result, locationRange(q.locationPrefix));
+        if (result == null) result = (BitSet) all.clone();
+        if (q.minLevel > 0) keepAtLeast(result, q.minLevel);
+        if (q.maxLevel < 100) keepAtMost(result, q.maxLevel);
+        if (q.exclude != null) result.andNot(q.exclude);
+        if (q.text != null || q.where != null) {
+            for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i + 1)) {
+                WasteBin bin = bins.get(i);
+                if (q.text != null && !containsIgnoreCase(bin.getId(), q.text)
+                        && !containsIgnoreCase(bin.getLocation(), q.text)
+                        || q.where != null && !q.where.test(bin)) {
+                    result.clear(i);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static BitSet and(BitSet result, BitSet index) {
+        if (index == null) return new BitSet();
+        if (result == null) return (BitSet) index.clone();
+        result.and(index);
+        return result;
+    }
+
+    // Bit-sliced comparison, most significant bit first: bins still equal to the constant on
+    // the bits seen so far (eq) either drop out or join the strictly greater/smaller bound
+    private void keepAtLeast(BitSet result, int min) {
+        compare(result, min, true);
+    }
+
+    private void keepAtMost(BitSet result, int max) {
+        compare(result, max, false);
+    }
+
+    private void compare(BitSet result, int constant, boolean atLeast) {
+        bound.clear();
+        eq.clear();
+        eq.or(result);
+        for (int b = LEVEL_BITS - 1; b >= 0; b--) {
+            BitSet slice = levelSlices[b];
+            boolean one = (constant >> b & 1) != 0;
+            if (atLeast ? one : !one) {
+                // Bins with the other bit value fall out of eq (too small / too large)
+                if (atLeast) eq.and(slice);
+                else eq.andNot(slice);
+                continue;
+            }
+            // Bins with the other bit value are strictly beyond the constant from here on
+            scratch.clear();
+            scratch.or(eq);
+            if (atLeast) {
+                scratch.and(slice);
+                eq.andNot(slice);
+            } else {
+                scratch.andNot(slice);
+                eq.and(slice);
+            }
+            bound.or(scratch);
+        }
+        bound.or(eq);
+        result.and(bound);
+    }
+
+    private BitSet locationRange(String prefix) {
+        if (byLocation.length != size) {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) order[i] = i;
+            Arrays.sort(order, Comparator.comparing(i -> bins.get(i).getLocation()));
+            byLocation = new int[size];
+            sortedLocations = new String[size];
+            for (int i = 0; i < size; i++) {
+                byLocation[i] = order[i];
+                sortedLocations[i] = bins.get(order[i]).getLocation();
+            }
+        }
+        // Every location with the prefix sorts between the prefix and the prefix + '\uffff'
+        int from = lowerBound(prefix), to = lowerBound(prefix + '\uffff');
+        BitSet range = new BitSet(size);
+        for (int p = from; p < to; p++) range.set(byLocation[p]);
+        return range;
+    }
+
+    private int lowerBound(String key) {
+        int lo = 0, hi = sortedLocations.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sortedLocations[mid].compareTo(key) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // Sorts by level with a counting pass over the matches instead of a comparison sort. For a
+    // top-k, the matches are first cut down to the highest (lowest) levels that still hold k bins.
+    synchronized int[] orderByLevel(BitSet matches, boolean descending, int limit) {
+        if (limit < matches.cardinality()) {
+            BitSet candidates = new BitSet();
+            for (int t = descending ? 90 : 10; descending ? t > 0 : t < 100; t += descending ? -10 : 10) {
+                candidates.clear();
+                candidates.or(matches);
+                compare(candidates, t, descending);
+                if (candidates.cardinality() >= limit) {
+                    matches = candidates;
+                    break;
+                }
+            }
+        }
+        int[] counts = new int[102];
+        for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+            counts[(descending ? 100 - levels[i] : levels[i]) + 1]++;
+        }
+        for (int l = 1; l < counts.length; l++) counts[l] += counts[l - 1];
+        int[] sorted = new int[counts[101]];
+        for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+            sorted[counts[descending ? 100 - levels[i] : levels[i]]++] = i;
+        }
+        return limit < sorted.length ? Arrays.copyOf(sorted, limit) : sorted;
+    }
+
+    synchronized Map<String, FleetQuery.Group> groupBy(FleetQuery.GroupBy key, BitSet matches) {
+        Map<String, FleetQuery.Group> result = new LinkedHashMap<>();
+        if (matches == null) {
+            // No filter: copy the maintained totals
+            update();
+            if (key == FleetQuery.GroupBy.STATUS) {
+                for (int s = 0; s < 3; s++) result.put(statusName(s), statusTotals[s].copy());
+            } else {
+                for (Map.Entry<String, FleetQuery.Group> e : (key == FleetQuery.GroupBy.TYPE ? typeTotals : zoneTotals).entrySet()) {
+                    if (e.getValue().count > 0) result.put(e.getKey(), e.getValue().copy());
+                }
+            }
+            return result;
+        }
+        Map<String, BitSet> groups = new LinkedHashMap<>();
+        if (key == FleetQuery.GroupBy.STATUS) {
+            for (int s = 0; s < 3; s++) groups.put(statusName(s), byStatus[s]);
+        } else {
+            groups.putAll(key == FleetQuery.GroupBy.TYPE ? byType : byZone);
+        }
+        for (Map.Entry<String, BitSet> e : groups.entrySet()) {
+            BitSet members = (BitSet) matches.clone();
+            members.and(e.getValue());
+            if (members.isEmpty()) continue;
+            FleetQuery.Group g = new FleetQuery.Group();
+            for (int i = members.nextSetBit(0); i >= 0; i = members.nextSetBit(i + 1)) g.add(levels[i], statuses[i]);
+            result.put(e.getKey(), g);
+        }
+        return result;
+    }
+
+    synchronized Set<String> zones() {
+        update();
+        return new TreeSet<>(byZone.keySet());
+    }
+
+    List<WasteBin> bins() { return bins; }
+
+    private static String statusName(int status) {
+        return status == WasteBin.CRITICAL ? "CRITICAL" : status == WasteBin.WARNING ? "WARNING" : "NORMAL";
+    }
+
+    static boolean containsIgnoreCase(String s, String part) {
+        for (int i = 0; i + part.length() <= s.length(); i++) {
+            if (s.regionMatches(true, i, part, 0, part.length())) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,54 @@
+import java.util.*;
+
+// Current fleet state derived from the event log
+public class FleetProjection {
+    private final List<WasteBin> bins = new ArrayList<>();
+    private final Map<String, WasteBin> byId = new HashMap<>();
+    private final ChangeTracker changes = new ChangeTracker();
+    private long lastSeq;
+    private long lastTime;
+
+    List<WasteBin> bins() { return bins; }
+    ChangeTracker changes() { return changes; }
+    WasteBin get(String id) { return byId.get(id); }
+    long lastSeq() { return lastSeq; }
+    long lastTime() { return lastTime; }
+
+    void restore(WasteBin bin) {
+        bins.add(bin);
+        byId.put(bin.getId(), bin);
+        bin.attach(changes, bins.size() - 1);
+    }
+
+    void restorePosition(long seq, long time) {
+        lastSeq = seq;
+        lastTime = time;
+    }
+
+    void apply(FleetEvent e) {
+        apply(e.type, e.seq, e.timeMillis, e.binId, e.level, e.location, e.binType, e.capacity);
+    }
+
+    // The event's fields, for callers that never build a FleetEvent (EventStore.append)
+    void apply(FleetEvent.Type type, long seq, long timeMillis, String binId, int level,
+               String location, String binType, int capacity) {
+        switch (type) {
+            case BIN_ADDED:
+                if (!byId.containsKey(binId)) {
+                    restore(new WasteBin(binId, location, capacity, binType, level));
+                }
+                break;
+            case READING:
+            case COLLECTION: {
+                WasteBin bin = byId.get(binId);
+                if (bin != null) bin.setCurrentLevel(type == FleetEvent.Type.READING ? level : 0, timeMillis);
+                break;
+            }
+            case RESET:
+                for (WasteBin bin : bins) bin.setCurrentLevel(0, timeMillis);
+                break;
+        }
+        lastSeq = seq;
+        lastTime = timeMillis;
+    }
+}
@@ -0,0 +1,114 @@
+import java.util.*;
+import java.util.function.Predicate;
+
+// Declarative query over the fleet, executed against FleetIndex:
+//
+//   List<WasteBin> due = FleetQuery.bins().needsCollection().zone("North")
+//           .orderBy(FleetQuery.Order.LEVEL_DESC).limit(20).run(index);
+//   Map<String, FleetQuery.Group> byType = FleetQuery.bins().groupBy(index, FleetQuery.GroupBy.TYPE);
+//
+// Type, zone, status, collection, location prefix and level range are answered from indexes;
+// text search and where() are checked only on the bins that survive them.
+public class FleetQuery {
+    enum Order { INDEX, LEVEL_DESC, LEVEL_ASC, ID }
+    enum GroupBy { TYPE, ZONE, STATUS }
+
+    // Aggregates for one group: bins, summed level and how many are CRITICAL
+    static final class Group {
+        int count, critical;
+        long levelSum;
+
+        void add(int level, int status) {
+            count++;
+            levelSum += level;
+            if (status == WasteBin.CRITICAL) critical++;
+        }
+
+        void remove(int level, int status) {
+            count--;
+            levelSum -= level;
+            if (status == WasteBin.CRITICAL) critical--;
+        }
+
+        Group copy() {
+            Group g = new Group();
+            g.count = count;
+            g.critical = critical;
+            g.levelSum = levelSum;
+            return g;
+        }
+
+        double averageLevel() { return count == 0 ? 0 : levelSum / (double) count; }
+    }
+
+    String type, zone, locationPrefix, text;
+    int status = -1, minLevel = 0, maxLevel = 100;
+    boolean collect;
+    BitSet exclude;
+    Predicate<WasteBin> where;
+    private Order order = Order.INDEX;
+    private int limit = Integer.MAX_VALUE;
+
+    static FleetQuery bins() { return new FleetQuery(); }
+
+    FleetQuery type(String type) { this.type = type; return this; }
+    FleetQuery zone(String zone) { this.zone = zone; return this; }
+    FleetQuery status(int status) { this.status = status; return this; }
+    FleetQuery level(int min, int max) { this.minLevel = min; this.maxLevel = max; return this; }
+    FleetQuery locationPrefix(String prefix) { this.locationPrefix = prefix; return this; }
+    FleetQuery needsCollection() { this.collect = true; return this; }
+    FleetQuery exclude(BitSet bins) { this.exclude = bins; return this; }
+    FleetQuery orderBy(Order order) { this.order = order; return this; }
+    FleetQuery limit(int limit) { this.limit = limit; return this; }
+
+    // Case-insensitive substring of the id or location; empty text matches everything
+    FleetQuery matching(String text) {
+        this.text = text == null || text.isEmpty() ? null : text;
+        return this;
+    }
+
+    // Anything the indexes don't cover; evaluated last
+    FleetQuery where(Predicate<WasteBin> where) {
+        this.where = this.where == null ? where : this.where.and(where);
+        return this;
+    }
+
+    BitSet select(FleetIndex index) {
+        return index.select(this);
+    }
+
+    int count(FleetIndex index) {
+        return select(index).cardinality();
+    }
+
+    List<WasteBin> run(FleetIndex index) {
+        BitSet matches = select(index);
+        List<WasteBin> bins = index.bins();
+        List<WasteBin> result = new ArrayList<>(Math.min(limit, matches.cardinality()));
+        switch (order) {
+            case LEVEL_DESC:
+            case LEVEL_ASC:
+                for (int i : index.orderByLevel(matches, order == Order.LEVEL_DESC, limit)) result.add(bins.get(i));
+                break;
+            case ID:
+                for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) result.add(bins.get(i));
+                result.sort(Comparator.comparing(WasteBin::getId));
+                if (result.size() > limit) result.subList(limit, result.size()).clear();
+                break;
+            default:
+                for (int i = matches.nextSetBit(0); i >= 0 && result.size() < limit; i = matches.nextSetBit(i + 1)) {
+                    result.add(bins.get(i));
+                }
+        }
+        return result;
+    }
+
+    Map<String, Group> groupBy(FleetIndex index, GroupBy key) {
+        return index.groupBy(key, isUnfiltered() ? null : select(index));
+    }
+
+    private boolean isUnfiltered() {
+        return type == null && zone == null && locationPrefix == null && text == null && status < 0
+                && minLevel <= 0 && maxLevel >= 100 && !collect && exclude == null && where == null;
+    }
+}
@@ -0,0 +1,42 @@
+import java.util.*;
+
+// Fleet aggregates maintained from change sets instead of rescanning every bin
+public class FleetStats {
+    private int[] levels = new int[16];
+    private byte[] statuses = new byte[16];
+    private int total;
+    private long levelSum;
+    private final int[] statusCounts = new int[3];
+
+    // Applies the bins changed since the cursor's last pass; new indices count as additions
+    void update(ChangeTracker.Cursor changes, List<WasteBin> bins) {
+        changes.drain(i -> apply(i, bins.get(i)));
+    }
+
+    private void apply(int i, WasteBin bin) {
+        if (i >= levels.length) {
+            int size = Math.max(levels.length * 2, i + 1);
+            levels = Arrays.copyOf(levels, size);
+            statuses = Arrays.copyOf(statuses, size);
+        }
+        int level = bin.getCurrentLevel();
+        int status = bin.statusLevel();
+        if (i >= total) {
+            total = i + 1;
+            statusCounts[status]++;
+        } else {
+            levelSum -= levels[i];
+            statusCounts[statuses[i]]--;
+            statusCounts[status]++;
+        }
+        levelSum += level;
+        levels[i] = level;
+        statuses[i] = (byte) status;
+    }
+
+    int total() { return total; }
+    int normal() { return statusCounts[WasteBin.NORMAL]; }
+    int warning() { return statusCounts[WasteBin.WARNING]; }
+    int critical() { return statusCounts[WasteBin.CRITICAL]; }
+    double averageLevel() { return total == 0 ? 0 : levelSum / (double) total; }
+}
@@ -0,0 +1,399 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.*;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Tiered retention for one site. Recent collections stay hot in collection_history.csv and recent
+// event log segments stay live; older ones move here:
+//
+//   archive/collections-<yyyy-MM>.csv.gz   one gzip member per day, rows as in collection_history.csv
+//   archive/index.csv                      (AtomicFile) which rows are where, and the rollups:
+//     D,<day>,<offset>,<length>,<rows>     a day's member in its month file
+//     M,<month>,<last day>,<unmeasured>,<totals>,<type>:<totals>|...   collections of the month
+//     R,<day or month>,<readings>,<collections>,<resets>,<level sum>   events of archived segments
+//     E,<firstSeq>                         a segment archived but not yet deleted from the live log
+//   <event dir>/archive/...                gzipped segments (see EventStore)
+//
+// Startup reads only the hot rows and the index; the monthly rollups stand in for the archived
+// rows in the impact ledger, and archived days are read on demand, one member at a time. Past
+// the archive window the detail is deleted and only the rollups remain (reading rollups are
+// merged from days into months then), so startup and memory stay flat as the years go by.
+//
+//   java HistoryArchive [--dir <site dir>] [--from yyyy-MM-dd] [--to yyyy-MM-dd]
+// prints the rollups and, with --from, the archived collections in [from, to).
+public class HistoryArchive {
+    private static final String INDEX = "index.csv";
+
+    // A day's gzip member in its month file
+    private static final class Day {
+        final long offset;
+        final int length, rows;
+
+        Day(long offset, int length, int rows) {
+            this.offset = offset;
+            this.length = length;
+            this.rows = rows;
+        }
+    }
+
+    // All archived collections of a month, whether or not their rows are still kept
+    static final class Month {
+        LocalDate lastDay;
+        final ImpactLedger.Totals total = new ImpactLedger.Totals();
+        final Map<String, ImpactLedger.Totals> byType = new TreeMap<>();
+        int unmeasured;
+    }
+
+    // Events of archived log segments
+    static final class Readings {
+        long readings, collections, resets, levelSum;
+
+        void add(FleetEvent e) {
+            switch (e.type) {
+                case READING: readings++; levelSum += e.level; break;
+                case COLLECTION: collections++; break;
+                case RESET: resets++; break;
+                default: break;
+            }
+        }
+
+        void add(Readings r) {
+            readings += r.readings;
+            collections += r.collections;
+            resets += r.resets;
+            levelSum += r.levelSum;
+        }
+
+        double meanLevel() { return readings == 0 ? 0 : levelSum / (double) readings; }
+    }
+
+    private final Path dir;
+    private final TreeMap<LocalDate, Day> days = new TreeMap<>();
+    private final TreeMap<YearMonth, Month> months = new TreeMap<>();
+    // Keyed by yyyy-MM-dd while the month's segments are kept, by yyyy-MM after
+    private final TreeMap<String, Readings> readings = new TreeMap<>();
+    private final TreeSet<Long> pendingSegments = new TreeSet<>();
+    private LocalDate lastDay;
+
+    private HistoryArchive(Path dir) {
+        this.dir = dir;
+    }
+
+    static HistoryArchive open(Path dir) throws IOException {
+        HistoryArchive archive = new HistoryArchive(dir);
+        for (String line : AtomicFile.readLines(dir.resolve(INDEX))) {
+            String[] f = line.split(",", -1);
+            try {
+                switch (f[0]) {
+                    case "D":
+                        archive.days.put(LocalDate.parse(f[1]),
+                                new Day(Long.parseLong(f[2]), Integer.parseInt(f[3]), Integer.parseInt(f[4])));
+                        break;
+                    case "M": {
+                        Month m = new Month();
+                        m.lastDay = LocalDate.parse(f[2]);
+                        m.unmeasured = Integer.parseInt(f[3]);
+                        parseTotals(f[4], 0, m.total);
+                        if (!f[5].isEmpty()) {
+                            for (String slice : f[5].split("\\|")) {
+                                int colon = slice.indexOf(':');
+                                ImpactLedger.Totals t = new ImpactLedger.Totals();
+                                parseTotals(slice, colon + 1, t);
+                                m.byType.put(slice.substring(0, colon), t);
+                            }
+                        }
+                        archive.months.put(YearMonth.parse(f[1]), m);
+                        if (archive.lastDay == null || m.lastDay.isAfter(archive.lastDay)) archive.lastDay = m.lastDay;
+                        break;
+                    }
+                    case "R": {
+                        Readings r = new Readings();
+                        r.readings = Long.parseLong(f[2]);
+                        r.collections = Long.parseLong(f[3]);
+                        r.resets = Long.parseLong(f[4]);
+                        r.levelSum = Long.parseLong(f[5]);
+                        archive.readings.put(f[1], r);
+                        break;
+                    }
+                    case "E":
+                        archive.pendingSegments.add(Long.parseLong(f[1]));
+                        break;
+                    default:
+                        break;
+                }
+            } catch (RuntimeException e) {
+                System.err.println(dir.resolve(INDEX) + ": skipped " + line);
+            }
+        }
+        return archive;
+    }
+
+    // Moves the collections of whole days before the cutoff (routes oldest first) into the
+    // month files and rolls them up. Rows of days archived before (left in the hot file by a
+    // save that raced the last pass) are dropped, not archived twice. Returns how many leading
+    // routes are no longer hot; a row without a readable date stops the pass there.
+    synchronized int archive(List<CollectionRoute> routes, LocalDate before) throws IOException {
+        int n = 0;
+        TreeMap<LocalDate, List<CollectionRoute>> byDay = new TreeMap<>();
+        for (CollectionRoute route : routes) {
+            LocalDate day = dayOf(route);
+            if (day == null || !day.isBefore(before)) break;
+            n++;
+            if (lastDay == null || day.isAfter(lastDay)) byDay.computeIfAbsent(day, d -> new ArrayList<>()).add(route);
+        }
+        if (byDay.isEmpty()) return n;
+        Files.createDirectories(dir);
+        // Members first: a crash before the index commit leaves unreferenced bytes and the rows still hot
+        FileChannel ch = null;
+        YearMonth open = null;
+        try {
+            for (Map.Entry<LocalDate, List<CollectionRoute>> e : byDay.entrySet()) {
+                YearMonth month = YearMonth.from(e.getKey());
+                if (!month.equals(open)) {
+                    if (ch != null) {
+                        ch.force(true);
+                        ch.close();
+                    }
+                    ch = FileChannel.open(monthFile(month), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                            StandardOpenOption.APPEND);
+                    open = month;
+                }
+                ByteArrayOutputStream member = new ByteArrayOutputStream();
+                try (Writer out = new OutputStreamWriter(new GZIPOutputStream(member), StandardCharsets.UTF_8)) {
+                    for (CollectionRoute route : e.getValue()) out.write(route.format() + "\n");
+                }
+                long offset = ch.size();
+                ch.write(ByteBuffer.wrap(member.toByteArray()));
+                days.put(e.getKey(), new Day(offset, member.size(), e.getValue().size()));
+
+                Month m = months.computeIfAbsent(month, k -> new Month());
+                ImpactLedger rollup = new ImpactLedger();
+                e.getValue().forEach(rollup::record);
+                m.total.add(rollup.total());
+                rollup.byType().forEach((type, t) -> m.byType.computeIfAbsent(type, k -> new ImpactLedger.Totals()).add(t));
+                m.unmeasured += rollup.unmeasured();
+                m.lastDay = e.getKey();
+                lastDay = e.getKey();
+            }
+        } finally {
+            if (ch != null) {
+                ch.force(true);
+                ch.close();
+            }
+        }
+        commit();
+        return n;
+    }
+
+    // Gzips the live event log segments last written before the cutoff into the event
+    // archive, rolling their events up by day. Returns the number of segments archived.
+    synchronized int archiveEvents(Path eventDir, long beforeMillis) throws IOException {
+        List<Path> segments = EventStore.archivable(eventDir, beforeMillis);
+        if (segments.isEmpty() && pendingSegments.isEmpty()) return 0;
+        ZoneId zone = ZoneId.systemDefault();
+        for (Path segment : segments) {
+            long seq = EventStore.seqOf(segment);
+            // Archived and rolled up by a pass that stopped before deleting it
+            if (pendingSegments.contains(seq)) continue;
+            Map<String, Readings> rolled = new HashMap<>();
+            EventStore.archive(segment, e -> rolled.computeIfAbsent(
+                    Instant.ofEpochMilli(e.timeMillis).atZone(zone).toLocalDate().toString(), d -> new Readings()).add(e));
+            rolled.forEach((day, r) -> readings.computeIfAbsent(day, d -> new Readings()).add(r));
+            pendingSegments.add(seq);
+        }
+        Files.createDirectories(dir);
+        commit();
+        for (Path segment : segments) Files.deleteIfExists(segment);
+        pendingSegments.clear();
+        commit();
+        return segments.size();
+    }
+
+    // Deletes archived rows and event segments of the months before keepFrom; their rollups stay.
+    // Returns the number of month files deleted.
+    synchronized int expire(YearMonth keepFrom, Path eventDir) throws IOException {
+        int deleted = 0;
+        for (YearMonth month : months.headMap(keepFrom).keySet()) {
+            if (Files.deleteIfExists(monthFile(month))) deleted++;
+        }
+        days.headMap(keepFrom.atDay(1)).clear();
+        String first = keepFrom.atDay(1).toString();
+        for (Map.Entry<String, Readings> e : new ArrayList<>(readings.headMap(first).entrySet())) {
+            if (e.getKey().length() == 7) continue;
+            readings.remove(e.getKey());
+            readings.computeIfAbsent(e.getKey().substring(0, 7), k -> new Readings()).add(e.getValue());
+        }
+        EventStore.expire(eventDir, keepFrom.atDay(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        Files.createDirectories(dir);
+        commit();
+        return deleted;
+    }
+
+    // The archived months in the ledger's totals (not in its recent days)
+    synchronized void restore(ImpactLedger ledger) {
+        for (Month m : months.values()) ledger.restore(m.total, m.byType, m.unmeasured);
+    }
+
+    // Whether the route's day has been archived (and so is in the rollups)
+    synchronized boolean isArchived(CollectionRoute route) {
+        LocalDate day = dayOf(route);
+        return day != null && lastDay != null && !day.isAfter(lastDay);
+    }
+
+    synchronized SortedMap<YearMonth, Month> months() { return new TreeMap<>(months); }
+
+    synchronized SortedMap<String, Readings> readings() { return new TreeMap<>(readings); }
+
+    // Lazy reader: archived collections of the days in [from, to), oldest first. Only the
+    // members of those days are read; days whose detail has expired are skipped.
+    void read(LocalDate from, LocalDate to, Consumer<CollectionRoute> each) throws IOException {
+        SortedMap<LocalDate, Day> range;
+        synchronized (this) {
+            range = new TreeMap<>(days.subMap(from, to));
+        }
+        FileChannel ch = null;
+        YearMonth open = null;
+        try {
+            for (Map.Entry<LocalDate, Day> e : range.entrySet()) {
+                YearMonth month = YearMonth.from(e.getKey());
+                if (!month.equals(open)) {
+                    if (ch != null) ch.close();
+                    ch = FileChannel.open(monthFile(month), StandardOpenOption.READ);
+                    open = month;
+                }
+                Day day = e.getValue();
+                ch.position(day.offset);
+                InputStream member = new BoundedInput(Channels.newInputStream(ch), day.length);
+                try (BufferedReader in = new BufferedReader(new InputStreamReader(new GZIPInputStream(member),
+                        StandardCharsets.UTF_8))) {
+                    for (String line; (line = in.readLine()) != null; ) {
+                        CollectionRoute route = CollectionRoute.parse(line);
+                        if (route != null) each.accept(route);
+                    }
+                }
+            }
+        } finally {
+            if (ch != null) ch.close();
+        }
+    }
+
+    private Path monthFile(YearMonth month) {
+        return dir.resolve("collections-" + month + ".csv.gz");
+    }
+
+    private void commit() throws IOException {
+        try (AtomicFile.Output out = AtomicFile.create(dir.resolve(INDEX))) {
+            for (Map.Entry<LocalDate, Day> e : days.entrySet()) {
+                Day d = e.getValue();
+                out.line("D," + e.getKey() + "," + d.offset + "," + d.length + "," + d.rows);
+            }
+            for (Map.Entry<YearMonth, Month> e : months.entrySet()) {
+                Month m = e.getValue();
+                StringBuilder line = new StringBuilder("M,").append(e.getKey()).append(',').append(m.lastDay)
+                        .append(',').append(m.unmeasured).append(',').append(formatTotals(m.total)).append(',');
+                boolean first = true;
+                for (Map.Entry<String, ImpactLedger.Totals> t : m.byType.entrySet()) {
+                    if (!first) line.append('|');
+                    first = false;
+                    line.append(t.getKey()).append(':').append(formatTotals(t.getValue()));
+                }
+                out.line(line);
+            }
+            for (Map.Entry<String, Readings> e : readings.entrySet()) {
+                Readings r = e.getValue();
+                out.line("R," + e.getKey() + "," + r.readings + "," + r.collections + "," + r.resets + "," + r.levelSum);
+            }
+            for (long seq : pendingSegments) out.line("E," + seq);
+            out.commit();
+        }
+    }
+
+    // collections:bins:litres:kg:km:baselineKm
+    private static String formatTotals(ImpactLedger.Totals t) {
+        return String.format(Locale.ROOT, "%d:%d:%.1f:%.2f:%.3f:%.3f", t.collections, t.bins, t.litres, t.kg, t.km, t.baselineKm);
+    }
+
+    private static void parseTotals(String s, int from, ImpactLedger.Totals t) {
+        String[] f = s.substring(from).split(":");
+        t.collections = Integer.parseInt(f[0]);
+        t.bins = Integer.parseInt(f[1]);
+        t.litres = Double.parseDouble(f[2]);
+        t.kg = Double.parseDouble(f[3]);
+        t.km = Double.parseDouble(f[4]);
+        t.baselineKm = Double.parseDouble(f[5]);
+    }
+
+    // "yyyy-MM-dd HH:mm"
+    private static LocalDate dayOf(CollectionRoute route) {
+        try {
+            return route.timestamp.length() >= 10 ? LocalDate.parse(route.timestamp.substring(0, 10)) : null;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    // One gzip member out of a month file; GZIPInputStream would otherwise read on into the next
+    private static final class BoundedInput extends FilterInputStream {
+        private long left;
+
+        BoundedInput(InputStream in, long length) {
+            super(in);
+            this.left = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (left <= 0) return -1;
+            int b = in.read();
+            if (b >= 0) left--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (left <= 0) return -1;
+            int n = in.read(b, off, (int) Math.min(len, left));
+            if (n > 0) left -= n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+            // The month file stays open for the next day
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path siteDir = Paths.get("");
+        LocalDate from = null, to = LocalDate.now().plusDays(1);
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--dir": siteDir = Paths.get(args[i + 1]); break;
+                case "--from": from = LocalDate.parse(args[i + 1]); break;
+                case "--to": to = LocalDate.parse(args[i + 1]); break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+        HistoryArchive archive = open(siteDir.resolve("archive"));
+        System.out.println("# month, collections, bins, kg, CO2 saved kg");
+        archive.months().forEach((month, m) -> System.out.printf(Locale.ROOT, "%s,%d,%d,%.1f,%.1f%n",
+                month, m.total.collections, m.total.bins, m.total.kg, m.total.co2SavedKg()));
+        System.out.println("# period, readings, collections, resets, mean reading %");
+        archive.readings().forEach((period, r) -> System.out.printf(Locale.ROOT, "%s,%d,%d,%d,%.1f%n",
+                period, r.readings, r.collections, r.resets, r.meanLevel()));
+        if (from != null) {
+            System.out.println("# archived collections " + from + " to " + to);
+            archive.read(from, to, route -> System.out.println(route.format()));
+        }
+    }
+}
@@ -0,0 +1,118 @@
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+// Environmental impact of the collections actually made, kept as running totals so analytics
+// and reports never go back over the history. An emptied bin weighs capacity × level × the
+// density of its waste type; a route is credited with the CO₂ of the distance it saved against
+// the naive plan of driving from the depot to every bin and back. One ledger per site.
+public class ImpactLedger {
+    // Loose waste as it sits in a bin, kg per litre (-Dimpact.density.<Type>=<kg/L>)
+    private static final Map<String, Double> DENSITY = new HashMap<>();
+    private static final double DEFAULT_DENSITY = Double.parseDouble(System.getProperty("impact.density", "0.15"));
+    // Diesel refuse truck, kg CO₂ per km driven
+    static final double CO2_PER_KM = Double.parseDouble(System.getProperty("impact.co2PerKm", "1.1"));
+
+    static {
+        DENSITY.put("General", 0.15);
+        DENSITY.put("Organic", 0.5);
+        DENSITY.put("Recyclable", 0.06);
+    }
+
+    static double density(String type) {
+        String override = System.getProperty("impact.density." + type);
+        if (override != null) {
+            try {
+                return Double.parseDouble(override);
+            } catch (NumberFormatException e) { e.printStackTrace(); }
+        }
+        return DENSITY.getOrDefault(type, DEFAULT_DENSITY);
+    }
+
+    // Sums for one slice (a collection, a type, a day or the whole site)
+    static final class Totals {
+        int collections, bins;
+        double litres, kg, km, baselineKm;
+
+        double co2SavedKg() { return (baselineKm - km) * CO2_PER_KM; }
+
+        // One emptied bin, at the level it had when it was collected
+        void weigh(WasteBin bin, int level) {
+            double l = bin.getCapacity() * level / 100.0;
+            bins++;
+            litres += l;
+            kg += l * density(bin.getType());
+        }
+
+        void add(Totals t) {
+            collections += t.collections;
+            bins += t.bins;
+            litres += t.litres;
+            kg += t.kg;
+            km += t.km;
+            baselineKm += t.baselineKm;
+        }
+
+        Totals copy() {
+            Totals t = new Totals();
+            t.add(this);
+            return t;
+        }
+    }
+
+    private final Totals total = new Totals();
+    private final Map<String, Totals> byType = new TreeMap<>();
+    private final TreeMap<LocalDate, Totals> byDay = new TreeMap<>();
+    // Rows written before impact was measured: counted as collections, weighed as nothing
+    private int unmeasured;
+
+    // O(types in the collection)
+    synchronized void record(CollectionRoute route) {
+        Totals c = route.totals();
+        total.add(c);
+        if (!route.isMeasured()) unmeasured++;
+        for (Map.Entry<String, Totals> e : route.byType.entrySet()) {
+            Totals t = byType.computeIfAbsent(e.getKey(), k -> new Totals());
+            t.add(e.getValue());
+            t.collections++;
+        }
+        LocalDate day = dayOf(route.timestamp);
+        if (day != null) byDay.computeIfAbsent(day, d -> new Totals()).add(c);
+    }
+
+    // Rolled-up months from the archive: in the totals, not in the recent days
+    synchronized void restore(Totals total, Map<String, Totals> byType, int unmeasured) {
+        this.total.add(total);
+        byType.forEach((k, v) -> this.byType.computeIfAbsent(k, t -> new Totals()).add(v));
+        this.unmeasured += unmeasured;
+    }
+
+    // "yyyy-MM-dd HH:mm"
+    private static LocalDate dayOf(String timestamp) {
+        try {
+            return timestamp.length() >= 10 ? LocalDate.parse(timestamp.substring(0, 10)) : null;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    synchronized Totals total() { return total.copy(); }
+
+    synchronized int unmeasured() { return unmeasured; }
+
+    synchronized Map<String, Totals> byType() {
+        Map<String, Totals> copy = new TreeMap<>();
+        byType.forEach((k, v) -> copy.put(k, v.copy()));
+        return copy;
+    }
+
+    // The most recent days with collections, oldest first
+    synchronized SortedMap<LocalDate, Totals> lastDays(int days) {
+        SortedMap<LocalDate, Totals> copy = new TreeMap<>();
+        for (Map.Entry<LocalDate, Totals> e : byDay.descendingMap().entrySet()) {
+            if (copy.size() == days) break;
+            copy.put(e.getKey(), e.getValue().copy());
+        }
+        return copy;
+    }
+}
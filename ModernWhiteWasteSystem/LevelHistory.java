@@ -0,0 +1,63 @@
+import java.util.*;
+
+// The last SAMPLES readings of every bin, for sparklines. All bins share one byte[] (bin i owns
+// slots [i * SAMPLES, (i + 1) * SAMPLES) as a ring), plus a write position and a fill count per
+// bin, so 1M bins cost 66 MB and no object per sample or per bin. Fed from its own
+// ChangeTracker cursor: update() records the current level of every bin changed since the
+// last pass.
+//
+// One writer (the thread calling update()); painters read without locking and at worst draw a
+// sample that is being replaced.
+public class LevelHistory {
+    static final int SAMPLES = 64;
+
+    private final List<WasteBin> bins;
+    private final ChangeTracker.Cursor changes;
+    private volatile byte[] samples;
+    private volatile byte[] head, count;
+
+    LevelHistory(List<WasteBin> bins, ChangeTracker.Cursor changes) {
+        this.bins = bins;
+        this.changes = changes;
+        int capacity = Math.max(16, bins.size());
+        samples = new byte[capacity * SAMPLES];
+        head = new byte[capacity];
+        count = new byte[capacity];
+    }
+
+    synchronized void update() {
+        changes.drain(i -> record(i, bins.get(i).getCurrentLevel()));
+    }
+
+    synchronized void record(int bin, int level) {
+        if (bin >= head.length) grow(bin + 1);
+        int h = head[bin];
+        samples[bin * SAMPLES + h] = (byte) level;
+        head[bin] = (byte) ((h + 1) % SAMPLES);
+        if (count[bin] < SAMPLES) count[bin]++;
+    }
+
+    private void grow(int bins) {
+        int capacity = Math.max(bins, head.length * 2);
+        samples = Arrays.copyOf(samples, capacity * SAMPLES);
+        head = Arrays.copyOf(head, capacity);
+        count = Arrays.copyOf(count, capacity);
+    }
+
+    // Samples held for the bin, 0..SAMPLES
+    int size(int bin) {
+        byte[] c = count;
+        return bin < c.length ? c[bin] : 0;
+    }
+
+    // Oldest first: copies up to SAMPLES levels into out and returns how many
+    int copy(int bin, int[] out) {
+        byte[] s = samples, h = head, c = count;
+        if (bin >= c.length || bin * SAMPLES >= s.length) return 0;
+        int n = c[bin], start = (h[bin] - n + SAMPLES) % SAMPLES, base = bin * SAMPLES;
+        for (int k = 0; k < n; k++) out[k] = s[base + (start + k) % SAMPLES];
+        return n;
+    }
+
+    long bytes() { return samples.length + head.length + count.length; }
+}
@@ -0,0 +1,144 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Deterministic fill-level generator. Every bin owns a SplittableRandom split from one
+// seed, so a scenario replays identically however the bins are partitioned across threads.
+//
+// Offline replay (a month of 5-minute readings for 100k bins, compressed into seconds):
+//   java LoadGenerator --bins 100000 --days 30 --tick-seconds 300 --seed 42 --threads 8
+public class LoadGenerator {
+    // Receives one reading; implementations must not retain references across calls
+    interface ReadingSink {
+        void accept(int bin, long timeMillis, int level);
+    }
+
+    // One bin's stream and fill profile
+    private static final class Source {
+        final SplittableRandom rng;
+        final FillProfile profile;
+
+        Source(SplittableRandom rng, FillProfile profile) {
+            this.rng = rng;
+            this.profile = profile;
+        }
+    }
+
+    private final SplittableRandom root;
+    // Written under the lock and republished after every change, so the tick thread reading it
+    // without the lock sees complete entries and never an array mid-copy
+    private volatile Source[] sources = new Source[16];
+    private int size;
+
+    LoadGenerator(long seed) {
+        root = new SplittableRandom(seed);
+    }
+
+    static LoadGenerator forBins(long seed, List<WasteBin> bins) {
+        LoadGenerator gen = new LoadGenerator(seed);
+        for (int i = 0; i < bins.size(); i++) gen.addBin(i, FillProfile.of(bins.get(i).getType()));
+        return gen;
+    }
+
+    // Registers the bin at its fleet index; streams are split in registration order
+    synchronized void addBin(int index, FillProfile profile) {
+        Source[] s = sources;
+        if (index >= s.length) s = Arrays.copyOf(s, Math.max(index + 1, s.length * 2));
+        s[index] = new Source(root.split(), profile);
+        size = Math.max(size, index + 1);
+        sources = s;
+    }
+
+    synchronized int size() { return size; }
+
+    // One live tick for a single bin; full bins stay full until collected, and a bin not
+    // registered yet keeps its level
+    int advance(int bin, int level) {
+        Source[] s = sources;
+        return bin < s.length ? advance(s[bin], level) : level;
+    }
+
+    private static int advance(Source source, int level) {
+        if (level >= 100 || source == null) return level;
+        return Math.min(100, level + source.profile.sample(source.rng));
+    }
+
+    // Replays ticks for bins [from, to), emptying a bin once it reaches collectAt (0 = never)
+    long replay(int[] levels, int from, int to, long startMillis, long tickMillis, long ticks,
+                int collectAt, ReadingSink sink) {
+        Source[] s = sources;
+        long readings = 0;
+        for (long t = 1; t <= ticks; t++) {
+            long now = startMillis + t * tickMillis;
+            for (int i = from; i < to; i++) {
+                int level = advance(s[i], levels[i]);
+                if (collectAt > 0 && level >= collectAt) level = 0;
+                levels[i] = level;
+                sink.accept(i, now, level);
+            }
+            readings += to - from;
+        }
+        return readings;
+    }
+
+    // Splits the fleet into contiguous ranges, one task per thread, each with its own sink
+    long replayParallel(int[] levels, long startMillis, long tickMillis, long ticks, int collectAt,
+                        int threads, java.util.function.IntFunction<ReadingSink> sinkForThread)
+            throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        AtomicLong readings = new AtomicLong();
+        try {
+            List<Future<?>> parts = new ArrayList<>();
+            int size = size();
+            int chunk = (size + threads - 1) / threads;
+            for (int t = 0; t < threads; t++) {
+                int from = t * chunk, to = Math.min(size, from + chunk);
+                if (from >= to) break;
+                ReadingSink sink = sinkForThread.apply(t);
+                parts.add(pool.submit(() -> readings.addAndGet(
+                        replay(levels, from, to, startMillis, tickMillis, ticks, collectAt, sink))));
+            }
+            for (Future<?> f : parts) f.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return readings.get();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int bins = 100_000, threads = Runtime.getRuntime().availableProcessors(), collectAt = 90;
+        long seed = 42, tickSeconds = 300;
+        double days = 30;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--bins": bins = Integer.parseInt(args[i + 1]); break;
+                case "--days": days = Double.parseDouble(args[i + 1]); break;
+                case "--tick-seconds": tickSeconds = Long.parseLong(args[i + 1]); break;
+                case "--seed": seed = Long.parseLong(args[i + 1]); break;
+                case "--threads": threads = Integer.parseInt(args[i + 1]); break;
+                case "--collect-at": collectAt = Integer.parseInt(args[i + 1]); break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+        FillProfile[] types = FillProfile.values();
+        LoadGenerator gen = new LoadGenerator(seed);
+        int[] levels = new int[bins];
+        for (int i = 0; i < bins; i++) gen.addBin(i, types[i % types.length]);
+
+        long ticks = (long) (days * 86_400 / tickSeconds);
+        long[] checksums = new long[threads];
+        long start = System.nanoTime();
+        long readings = gen.replayParallel(levels, System.currentTimeMillis(), tickSeconds * 1000, ticks, collectAt,
+                threads, t -> (bin, time, level) -> checksums[t] = checksums[t] * 31 + level);
+        double secs = (System.nanoTime() - start) / 1e9;
+        long fleetSum = 0;
+        for (int level : levels) fleetSum += level;
+        System.out.printf("%d readings (%d bins x %d ticks) in %.2f s = %.1f M readings/s%n",
+                readings, bins, ticks, secs, readings / secs / 1e6);
+        System.out.printf("final fleet level sum %d (seed %d)%n", fleetSum, seed);
+    }
+}
@@ -1,129 +1,385 @@
 import java.awt.*;
 import java.awt.geom.*;
 import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.List;
 import java.util.Timer;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.swing.*;
 import javax.swing.event.*;
 import javax.swing.table.*;
 import javax.swing.plaf.basic.BasicScrollBarUI;
 
 public class ModernWhiteWasteSystem extends JFrame {
-    private List<WasteBin> wasteBins;
+    private static final long serialVersionUID = 1L;
+
+    // The site on screen; background work captures it when submitted, so a site switch
+    // in between can't redirect it to another fleet
+    private Site site;
+    private SiteRegistry sites;
+    private final AtomicBoolean rulesLoaded = new AtomicBoolean();
     private List<WasteBin> filteredBins;
-    private List<CollectionRoute> collectionHistory;
+    private int[] rowOfBin = new int[0];
+    private final List<BinCard> binCards = new ArrayList<>();
+    // Bins whose row/card still need repainting; worked off in frame-sized slices
+    private final BitSet pendingViews = new BitSet();
+    private boolean viewsPosted;
+    private static final long VIEW_SLICE_NANOS = 8_000_000;
     private JTable binTable;
-    private DefaultTableModel tableModel;
+    private BinTableModel tableModel;
+    private final Sparkline trendRenderer = new Sparkline();
     private JPanel dashboardPanel;
+    // Cards are built on first use: a batch when the view is (re)built, more as it is scrolled
+    private static final int CARD_BATCH = 60;
+    private int cardsShown;
     private JPanel statsPanel;
     private Timer simulationTimer;
-    private boolean darkMode = false;
+    private LoadGenerator loadGenerator;
+    private SensorIngest ingest;
+    private static final long SIMULATION_SEED = Long.getLong("sim.seed", System.nanoTime());
+    private static final long SIMULATION_PERIOD_MS = Long.getLong("sim.periodMs", 5000);
+    // How long readings wait for late/out-of-order ones from other sensors before applying
+    private static final long INGEST_LATENESS_MS = Long.getLong("ingest.latenessMs", 0);
+    private static final int INGEST_MAX_PENDING = Integer.getInteger("ingest.maxPending", 1 << 20);
+    // Leave bins with a suspected sensor fault out of optimized routes (-Droute.excludeSuspect=false to keep them)
+    private static final boolean ROUTE_EXCLUDE_SUSPECT =
+            Boolean.parseBoolean(System.getProperty("route.excludeSuspect", "true"));
+    // Planning horizon, shift length in simulation ticks and stops one truck can make per trip
+    private static final int SCHEDULE_SHIFTS = Integer.getInteger("schedule.shifts", 6);
+    private static final int SCHEDULE_SHIFT_TICKS = Integer.getInteger("schedule.shiftTicks", 12);
+    private static final int SCHEDULE_TRUCK_STOPS = Integer.getInteger("schedule.truckStops", 20);
+    // Cached routes (one per zone), neighbours considered per stop and the local search budget
+    private static final int ROUTE_CACHE_SIZE = Integer.getInteger("route.cacheSize", 8);
+    private static final int ROUTE_NEIGHBOURS = Integer.getInteger("route.neighbours", 8);
+    private static final long ROUTE_SEARCH_MS = Long.getLong("route.searchMs", 500);
+    // Browser dashboard for wall displays (-Ddashboard.port=8080 to enable), update period and
+    // messages a viewer may fall behind before it is re-sent a snapshot
+    private static final int DASHBOARD_PORT = Integer.getInteger("dashboard.port", 0);
+    private static final long DASHBOARD_PERIOD_MS = Long.getLong("dashboard.periodMs", 1000);
+    private static final int DASHBOARD_CLIENT_QUEUE = Integer.getInteger("dashboard.clientQueue", 32);
+    // Hot standby: ships the startup site's event log to standbys on this loopback port
+    // (-Dreplication.port=7070, see Replication), in mode async, ack or lag:<events>
+    private static final int REPLICATION_PORT = Integer.getInteger("replication.port", 0);
+    private static final String REPLICATION_MODE = System.getProperty("replication.mode", "async");
+    // Retention: days of collections kept hot in collection_history.csv and of event log kept
+    // live, then months of compressed detail kept in the archive (0 = forever); the monthly
+    // rollups are kept for good
+    private static final int RETENTION_HOT_DAYS = Integer.getInteger("retention.hotDays", 90);
+    private static final int RETENTION_EVENT_HOT_DAYS = Integer.getInteger("retention.eventHotDays", 7);
+    private static final int RETENTION_ARCHIVE_MONTHS = Integer.getInteger("retention.archiveMonths", 24);
     private final String DATA_FILE = "bins.csv";
     private final String HISTORY_FILE = "collection_history.csv";
+    private final String ARCHIVE_DIR = "archive";
+    private final String EVENT_DIR = "events";
+    private final String RULES_FILE = "thresholds.properties";
+    private final String ZONES_FILE = "zones.properties";
+    private final String LOCATIONS_FILE = "locations.csv";
+    private final String SITES_DIR = "sites";
+    // Site shown at startup (-Dsite=<name>, a directory under sites/), open sites kept in memory
+    // and their combined bins, and the caps every site runs under
+    private static final String INITIAL_SITE = System.getProperty("site", SiteRegistry.DEFAULT);
+    private static final int SITES_MAX_OPEN = Integer.getInteger("sites.maxOpen", 4);
+    private static final long SITES_MAX_OPEN_BINS = Long.getLong("sites.maxOpenBins", 2_000_000);
+    private static final Site.Limits SITE_LIMITS = new Site.Limits(
+            Integer.getInteger("site.maxBins", 1_000_000),
+            Integer.getInteger("site.anomalyThreads", Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2))),
+            Integer.getInteger("site.anomalyBuffer", 1 << 16),
+            INGEST_MAX_PENDING);
+    private static final int REPORT_PREVIEW_BINS = 2000;
+    // -Dstartup.report=true prints when the first frame and the fleet were on screen (ms since JVM
+    // start); -Dstartup.exit=true exits once the fleet is shown, for CDS training runs and benchmarks
+    private static final boolean STARTUP_REPORT = Boolean.getBoolean("startup.report");
+    private static final boolean STARTUP_EXIT = Boolean.getBoolean("startup.exit");
+    private JPanel mainContainer;
+    private JLabel loadingLabel;
+    private boolean contentBuilt, firstFrame, fleetShown;
+    private Site pendingSite;
     private JTextField searchField;
-    private JComboBox<String> filterCombo;
+    private JComboBox<String> filterCombo, statusCombo, zoneCombo, siteCombo;
+    private final List<JButton> fleetButtons = new ArrayList<>();
     private JLabel totalBinsLabel, criticalBinsLabel, avgFillLabel, co2SavedLabel;
-    private int totalCollections = 0;
-    private double co2Saved = 0;
-
-    // Modern color palette
-    private Color primaryColor = new Color(99, 102, 241);
-    private Color successColor = new Color(16, 185, 129);
-    private Color warningColor = new Color(245, 158, 11);
-    private Color dangerColor = new Color(239, 68, 68);
-    private Color bgLight = new Color(249, 250, 251);
-    private Color bgDark = new Color(17, 24, 39);
-    private Color cardLight = Color.WHITE;
-    private Color cardDark = new Color(31, 41, 55);
+
+    // Modern color palette (backgrounds and text come from Theme)
+    private Color primaryColor = Theme.PRIMARY;
+    private Color successColor = Theme.SUCCESS;
+    private Color warningColor = Theme.WARNING;
+    private Color dangerColor = Theme.DANGER;
 
     public ModernWhiteWasteSystem() {
-        wasteBins = new ArrayList<>();
         filteredBins = new ArrayList<>();
-        collectionHistory = new ArrayList<>();
-        loadBins();
-        loadHistory();
-        setupUI();
+        setupShell();
+
+        sites = new SiteRegistry(Paths.get(SITES_DIR), this::loadSite, SITES_MAX_OPEN, SITES_MAX_OPEN_BINS);
+        Runtime.getRuntime().addShutdownHook(new Thread(sites::closeAll));
+        for (String name : sites.names()) siteCombo.addItem(name);
+        // Naming a site that has no directory yet creates it
+        if (((DefaultComboBoxModel<String>) siteCombo.getModel()).getIndexOf(INITIAL_SITE) < 0) siteCombo.addItem(INITIAL_SITE);
+        siteCombo.setSelectedItem(INITIAL_SITE);
+        siteCombo.addActionListener(e -> switchSite((String) siteCombo.getSelectedItem()));
+        switchSite(INITIAL_SITE);
+    }
+
+    // Replaying the event log can take a while on big fleets: the window stays up with the
+    // controls disabled while the site loads (only the first time; later it is in memory
+    // unless it was evicted)
+    private void switchSite(String name) {
+        if (site != null && site.name.equals(name)) return;
+        fleetButtons.forEach(b -> b.setEnabled(false));
+        siteCombo.setEnabled(false);
+        BackgroundTasks.<Site>submit(task -> sites.open(name)).onEdt(this::showSite, e -> {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(this, "Loading failed: " + e.getMessage(),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            siteCombo.setEnabled(true);
+            if (site != null) {
+                fleetButtons.forEach(b -> b.setEnabled(true));
+                siteCombo.setSelectedItem(site.name);
+            }
+        });
+    }
+
+    private void showSite(Site next) {
+        if (!contentBuilt) {
+            pendingSite = next; // shown by buildContent()
+            return;
+        }
+        if (simulationTimer != null) simulationTimer.cancel();
+        if (site != null) sites.unpin(site.name, "screen");
+        sites.pin(next.name, "screen");
+        // Views and zones belong to the previous fleet; filterBins() waits for the new one
+        site = null;
+        binCards.clear();
+        pendingViews.clear();
+        zoneCombo.removeAllItems();
+        zoneCombo.addItem("All Zones");
+        for (String zone : next.index.zones()) zoneCombo.addItem(zone);
+        site = next;
+        trendRenderer.setHistory(next.levels);
+        setTitle("Smart Waste Management System - " + next.name);
+        fleetButtons.forEach(b -> b.setEnabled(true));
+        siteCombo.setEnabled(true);
+        filterBins();
         startSimulation();
     }
 
-    private void loadBins() {
-        File file = new File(DATA_FILE);
-        if (file.exists()) {
-            try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    String[] parts = line.split(",");
-                    if (parts.length >= 5) {
-                        WasteBin bin = new WasteBin(parts[0], parts[1],
-                                Integer.parseInt(parts[2]), parts[3],
-                                Integer.parseInt(parts[4]));
-                        wasteBins.add(bin);
-                    }
+    // SiteRegistry's loader, off the EDT: the fleet is the projection of the site's event log
+    // (snapshot + tail replay), and every consumer gets its own cursor on it. A log that cannot be
+    // opened fails the load: running on without it would lose every change made from then on.
+    private Site loadSite(String name, Path dir) throws IOException {
+        Site site = new Site(name, dir, SITE_LIMITS);
+        site.eventStore = EventStore.open(site.file(EVENT_DIR));
+
+        if (site.eventStore.isEmpty()) {
+            // First start: import bins.csv (or the demo bins) as BIN_ADDED events
+            List<WasteBin> initial = new ArrayList<>();
+            if (Files.exists(site.file(DATA_FILE)) || Files.exists(site.file(DATA_FILE + ".bak"))) {
+                // An unreadable file fails the load: importing nothing would leave the log non-empty
+                // after the first added bin, and the old bins would never be imported
+                try {
+                    initial = BinCsv.read(site.file(DATA_FILE));
+                } catch (IOException | NumberFormatException e) {
+                    site.eventStore.close();
+                    throw new IOException(name + ": cannot import " + DATA_FILE, e);
                 }
-            } catch (Exception e) { e.printStackTrace(); }
-        } else {
-            wasteBins.add(new WasteBin("BIN-001", "Main Gate", 100, "General"));
-            wasteBins.add(new WasteBin("BIN-002", "Cafeteria", 80, "Organic"));
-            wasteBins.add(new WasteBin("BIN-003", "Office Block A", 100, "Recyclable"));
-            wasteBins.add(new WasteBin("BIN-004", "Parking Lot", 120, "General"));
-            wasteBins.add(new WasteBin("BIN-005", "Garden Area", 80, "Organic"));
-            wasteBins.add(new WasteBin("BIN-006", "Reception", 60, "Recyclable"));
-        }
-        filteredBins.addAll(wasteBins);
-    }
-
-    private void loadHistory() {
-        File file = new File(HISTORY_FILE);
-        if (file.exists()) {
-            try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    String[] parts = line.split(",");
-                    if (parts.length >= 3) {
-                        collectionHistory.add(new CollectionRoute(parts[0], parts[1], Integer.parseInt(parts[2])));
-                    }
+                if (initial.isEmpty()) {
+                    site.eventStore.close();
+                    throw new IOException(name + ": " + DATA_FILE + " holds no readable bins");
                 }
-                totalCollections = collectionHistory.size();
-                co2Saved = totalCollections * 2.5; // 2.5 kg CO2 saved per optimized collection
-            } catch (Exception e) { e.printStackTrace(); }
+            } else {
+                initial.add(new WasteBin("BIN-001", "Main Gate", 100, "General"));
+                initial.add(new WasteBin("BIN-002", "Cafeteria", 80, "Organic"));
+                initial.add(new WasteBin("BIN-003", "Office Block A", 100, "Recyclable"));
+                initial.add(new WasteBin("BIN-004", "Parking Lot", 120, "General"));
+                initial.add(new WasteBin("BIN-005", "Garden Area", 80, "Organic"));
+                initial.add(new WasteBin("BIN-006", "Reception", 60, "Recyclable"));
+            }
+            if (initial.size() > site.limits.maxBins) {
+                System.err.println(name + ": importing the first " + site.limits.maxBins + " of " + initial.size() + " bins (site.maxBins)");
+                initial = initial.subList(0, site.limits.maxBins);
+            }
+            for (WasteBin bin : initial) site.eventStore.binAdded(bin);
+            site.eventStore.sync();
         }
+        List<WasteBin> bins = site.bins();
+        ChangeTracker changes = site.eventStore.projection().changes();
+        site.changes = changes;
+        site.uiChanges = changes.register("ui");
+        site.statsChanges = changes.register("stats");
+        site.persistChanges = changes.register("persistence");
+        site.scheduleChanges = changes.register("schedule");
+        Zones zones = Zones.EMPTY;
+        try {
+            zones = Zones.load(site.file(ZONES_FILE));
+        } catch (IOException e) { e.printStackTrace(); }
+        site.index = new FleetIndex(bins, changes.register("index"), zones);
+        site.levels = new LevelHistory(bins, changes.register("sparklines"));
+        SiteMap map = SiteMap.EMPTY;
+        try {
+            map = SiteMap.load(site.file(LOCATIONS_FILE));
+        } catch (IOException | NumberFormatException e) { e.printStackTrace(); }
+        site.routes = new RoutePlanner(map, ROUTE_CACHE_SIZE, ROUTE_NEIGHBOURS, ROUTE_SEARCH_MS);
+        site.anomalies = new AnomalyDetector(site.limits.anomalyThreads, site.limits.anomalyBuffer);
+        if (DASHBOARD_PORT > 0 && name.equals(INITIAL_SITE)) {
+            // The dashboard streams the startup site, which therefore stays loaded
+            try {
+                new DashboardServer(DASHBOARD_PORT, bins, changes.register("dashboard"), site.index, site.anomalies,
+                        DASHBOARD_PERIOD_MS, DASHBOARD_CLIENT_QUEUE).start();
+                sites.pin(name, "dashboard");
+            } catch (IOException e) { e.printStackTrace(); }
+        }
+        if (REPLICATION_PORT > 0 && name.equals(INITIAL_SITE)) {
+            // Standbys follow the startup site's log, which therefore stays open
+            try {
+                site.replication = new Replication.Primary(site.eventStore, REPLICATION_PORT, REPLICATION_MODE);
+                site.replication.start();
+                sites.pin(name, "replication");
+            } catch (IOException | IllegalArgumentException e) { e.printStackTrace(); }
+        }
+        if (rulesLoaded.compareAndSet(false, true)) loadRules();
+        changes.markAll(bins.size());
+
+        // First full plan; afterwards the simulation tick re-plans the changed bins
+        site.scheduler = new CollectionScheduler(SCHEDULE_SHIFTS, SCHEDULE_SHIFT_TICKS * SIMULATION_PERIOD_MS,
+                SIMULATION_PERIOD_MS, SCHEDULE_TRUCK_STOPS, System.currentTimeMillis());
+        site.scheduler.update(site.scheduleChanges, bins);
+        site.index.update();
+        site.levels.update();
+        List<CollectionRoute> history = loadHistory(site);
+        try {
+            site.archive = HistoryArchive.open(site.file(ARCHIVE_DIR));
+            int archived = retain(site, history);
+            if (archived > 0) {
+                history = new ArrayList<>(history.subList(archived, history.size()));
+                saveHistory(site, history);
+            }
+            site.archive.restore(site.impact);
+        } catch (IOException e) { e.printStackTrace(); }
+        site.history.addAll(history);
+        site.history.forEach(site.impact::record);
+        return site;
+    }
+
+    // Retention pass, off the EDT: collections of the days before the hot window and event log
+    // segments older than theirs move to the archive, and detail past the archive window is
+    // dropped. Returns how many leading routes of history are no longer hot.
+    private int retain(Site site, List<CollectionRoute> history) throws IOException {
+        LocalDate today = LocalDate.now();
+        site.retainedOn = today;
+        int archived = site.archive.archive(history, today.minusDays(RETENTION_HOT_DAYS));
+        site.archive.archiveEvents(site.file(EVENT_DIR),
+                today.minusDays(RETENTION_EVENT_HOT_DAYS).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        if (RETENTION_ARCHIVE_MONTHS > 0) {
+            site.archive.expire(YearMonth.from(today).minusMonths(RETENTION_ARCHIVE_MONTHS), site.file(EVENT_DIR));
+        }
+        return archived;
+    }
+
+    // Daily pass for the simulated site; the routes it archives leave the in-memory history
+    private void retainDaily(Site site) {
+        if (site.archive == null) return;
+        List<CollectionRoute> history = new ArrayList<>(site.history);
+        BackgroundTasks.<Integer>submit(task -> retain(site, history)).onEdt(archived -> {
+            if (archived == 0) return;
+            site.history.subList(0, archived).clear();
+            List<CollectionRoute> hot = new ArrayList<>(site.history);
+            BackgroundTasks.submit(task -> {
+                saveHistory(site, hot);
+                return null;
+            });
+        }, Throwable::printStackTrace);
     }
 
-    private void saveBins() {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(DATA_FILE))) {
-            for (WasteBin bin : wasteBins) {
-                pw.println(String.join(",", bin.getId(), bin.getLocation(),
-                        String.valueOf(bin.getCapacity()), bin.getType(),
-                        String.valueOf(bin.getCurrentLevel())));
+    // Threshold rules are shared by all sites; hot-reload makes every consumer of every open
+    // site re-evaluate all bins on the next refresh
+    private void loadRules() {
+        try {
+            ThresholdRules.install(ThresholdRules.load(Paths.get(RULES_FILE)));
+        } catch (IOException | NumberFormatException e) { e.printStackTrace(); }
+        ThresholdRules.watch(Paths.get(RULES_FILE), () -> {
+            sites.forEachOpen(s -> s.changes.markAll(s.bins().size()));
+            SwingUtilities.invokeLater(this::refreshData);
+        });
+    }
+
+    private List<CollectionRoute> loadHistory(Site site) {
+        List<CollectionRoute> history = new ArrayList<>();
+        // Falls back to collection_history.csv.bak if the last save was interrupted
+        try {
+            for (String line : AtomicFile.readLines(site.file(HISTORY_FILE))) {
+                CollectionRoute route = CollectionRoute.parse(line);
+                if (route != null) history.add(route);
             }
         } catch (Exception e) { e.printStackTrace(); }
+        return history;
     }
 
-    private void saveHistory() {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(HISTORY_FILE))) {
-            for (CollectionRoute route : collectionHistory) {
-                pw.println(String.join(",", route.timestamp, route.bins, String.valueOf(route.efficiency)));
-            }
+    // Runs off the EDT while the simulation keeps writing; indexes up to the current size.
+    // Saves replace the file atomically, so a crash mid-save leaves the previous one intact.
+    private void saveBins(Site site) {
+        List<WasteBin> bins = site.bins();
+        try (AtomicFile.Output out = AtomicFile.create(site.file(DATA_FILE))) {
+            for (int i = 0, n = bins.size(); i < n; i++) out.line(BinCsv.format(bins.get(i)));
+            out.commit();
         } catch (Exception e) { e.printStackTrace(); }
     }
 
-    private void setupUI() {
+    private void saveHistory(Site site, List<CollectionRoute> routes) {
+        try (AtomicFile.Output out = AtomicFile.create(site.file(HISTORY_FILE))) {
+            for (CollectionRoute route : routes) out.line(route.format());
+            out.commit();
+        } catch (Exception e) { e.printStackTrace(); }
+    }
+
+    // The window shell (frame and header) is all that is built before the first frame; the
+    // rest follows right after it is painted, while the site loads in the background
+    private void setupShell() {
         setTitle("Smart Waste Management System");
         setSize(1400, 900);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLayout(new BorderLayout(0, 0));
 
         // Main container with padding
-        JPanel mainContainer = new JPanel(new BorderLayout(15, 15));
+        mainContainer = new ThemedPanel(new BorderLayout(15, 15), Theme.Role.BACKGROUND);
         mainContainer.setBorder(BorderFactory.createEmptyBorder(15, 15, 15, 15));
-        mainContainer.setBackground(bgLight);
 
         // Modern Header with gradient effect
         JPanel headerPanel = createModernHeader();
 
+        loadingLabel = new ThemedLabel("Loading...", Theme.Role.MUTED_TEXT);
+        loadingLabel.setFont(new Font("Segoe UI", Font.PLAIN, 18));
+        loadingLabel.setHorizontalAlignment(SwingConstants.CENTER);
+
+        mainContainer.add(headerPanel, BorderLayout.NORTH);
+        mainContainer.add(loadingLabel, BorderLayout.CENTER);
+        add(mainContainer);
+        setLocationRelativeTo(null);
+
+        // In case the window is not painted soon (e.g. started minimized)
+        javax.swing.Timer fallback = new javax.swing.Timer(1000, e -> buildContent());
+        fallback.setRepeats(false);
+        fallback.start();
+    }
+
+    @Override
+    public void paint(Graphics g) {
+        super.paint(g);
+        if (!firstFrame) {
+            firstFrame = true;
+            startupMark("first frame");
+            SwingUtilities.invokeLater(this::buildContent);
+        }
+    }
+
+    private void buildContent() {
+        if (contentBuilt) return;
+        contentBuilt = true;
+
         // Stats Panel (Top)
         statsPanel = createStatsPanel();
 
@@ -135,11 +391,26 @@ public class ModernWhiteWasteSystem extends JFrame {
         JPanel searchPanel = createSearchPanel();
 
         // Dashboard with cards
-        dashboardPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 15, 15));
-        dashboardPanel.setBackground(bgLight);
+        dashboardPanel = new ThemedPanel(new FlowLayout(FlowLayout.LEFT, 15, 15), Theme.Role.BACKGROUND) {
+            // FlowLayout asks for one long row; wrap at the viewport width so the cards scroll down
+            @Override
+            public Dimension getPreferredSize() {
+                int width = getParent() != null ? getParent().getWidth() : 0;
+                if (width <= 0) return super.getPreferredSize();
+                int columns = Math.max(1, (width - 15) / (BinCard.CARD_WIDTH + 15));
+                int rows = (getComponentCount() + columns - 1) / columns;
+                return new Dimension(width, 15 + rows * (BinCard.CARD_HEIGHT + 15));
+            }
+        };
         JScrollPane dashboardScroll = new JScrollPane(dashboardPanel,
                 JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED,
                 JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
+        dashboardScroll.getVerticalScrollBar().addAdjustmentListener(e -> {
+            BoundedRangeModel m = dashboardScroll.getVerticalScrollBar().getModel();
+            if (m.getValue() + m.getExtent() >= m.getMaximum() - BinCard.CARD_HEIGHT && cardsShown < filteredBins.size()) {
+                SwingUtilities.invokeLater(this::showMoreCards);
+            }
+        });
         dashboardScroll.setBorder(null);
         dashboardScroll.setPreferredSize(new Dimension(0, 280));
         styleScrollPane(dashboardScroll);
@@ -162,14 +433,22 @@ public class ModernWhiteWasteSystem extends JFrame {
         JPanel controlPanel = createControlPanel();
 
         // Add all panels
-        mainContainer.add(headerPanel, BorderLayout.NORTH);
+        mainContainer.remove(loadingLabel);
         mainContainer.add(statsPanel, BorderLayout.PAGE_START);
         mainContainer.add(centerPanel, BorderLayout.CENTER);
         mainContainer.add(controlPanel, BorderLayout.SOUTH);
+        mainContainer.revalidate();
+        mainContainer.repaint();
 
-        add(mainContainer);
-        setLocationRelativeTo(null);
-        refreshData();
+        fleetButtons.forEach(b -> b.setEnabled(false));
+        if (pendingSite != null) showSite(pendingSite);
+    }
+
+    private static void startupMark(String what) {
+        if (STARTUP_REPORT) {
+            System.err.println("startup: " + what + " at "
+                    + java.lang.management.ManagementFactory.getRuntimeMXBean().getUptime() + " ms");
+        }
     }
 
     private JPanel createModernHeader() {
@@ -220,6 +499,12 @@ public class ModernWhiteWasteSystem extends JFrame {
         JButton notifBtn = createIconButton("🔔", "Notifications");
         notifBtn.addActionListener(e -> showAlerts());
 
+        // One entry per directory under sites/, plus the working directory as "default"
+        siteCombo = new JComboBox<>();
+        siteCombo.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+        siteCombo.setToolTipText("Site");
+
+        rightPanel.add(siteCombo);
         rightPanel.add(notifBtn);
         rightPanel.add(themeToggle);
 
@@ -247,8 +532,8 @@ public class ModernWhiteWasteSystem extends JFrame {
         return panel;
     }
 
-    private JPanel createStatCard(String title, JLabel valueLabel, String icon, Color accentColor) {
-        JPanel card = new JPanel() {
+    static JPanel createStatCard(String title, JLabel valueLabel, String icon, Color accentColor) {
+        JPanel card = new ThemedPanel(Theme.Role.CARD) {
             @Override
             protected void paintComponent(Graphics g) {
                 super.paintComponent(g);
@@ -259,7 +544,6 @@ public class ModernWhiteWasteSystem extends JFrame {
             }
         };
         card.setLayout(new BorderLayout(10, 10));
-        card.setBackground(cardLight);
         card.setBorder(BorderFactory.createEmptyBorder(15, 20, 15, 20));
 
         JPanel topPanel = new JPanel(new BorderLayout());
@@ -268,9 +552,8 @@ public class ModernWhiteWasteSystem extends JFrame {
         JLabel iconLabel = new JLabel(icon);
         iconLabel.setFont(new Font("Segoe UI Emoji", Font.PLAIN, 32));
 
-        JLabel titleLbl = new JLabel(title);
+        JLabel titleLbl = new ThemedLabel(title, Theme.Role.MUTED_TEXT);
         titleLbl.setFont(new Font("Segoe UI", Font.PLAIN, 12));
-        titleLbl.setForeground(Color.GRAY);
 
         topPanel.add(titleLbl, BorderLayout.NORTH);
         topPanel.add(iconLabel, BorderLayout.EAST);
@@ -298,9 +581,13 @@ public class ModernWhiteWasteSystem extends JFrame {
         filterCombo = new JComboBox<>(new String[]{"All Types", "General", "Organic", "Recyclable"});
         filterCombo.setFont(new Font("Segoe UI", Font.PLAIN, 14));
 
-        JComboBox<String> statusCombo = new JComboBox<>(new String[]{"All Status", "NORMAL", "WARNING", "CRITICAL"});
+        statusCombo = new JComboBox<>(new String[]{"All Status", "NORMAL", "WARNING", "CRITICAL"});
         statusCombo.setFont(new Font("Segoe UI", Font.PLAIN, 14));
 
+        // Filled from the site's zones.properties each time a site is shown
+        zoneCombo = new JComboBox<>(new String[]{"All Zones"});
+        zoneCombo.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+
         searchField.getDocument().addDocumentListener(new DocumentListener() {
             public void changedUpdate(DocumentEvent e) { filterBins(); }
             public void removeUpdate(DocumentEvent e) { filterBins(); }
@@ -309,35 +596,48 @@ public class ModernWhiteWasteSystem extends JFrame {
 
         filterCombo.addActionListener(e -> filterBins());
         statusCombo.addActionListener(e -> filterBins());
+        zoneCombo.addActionListener(e -> filterBins());
 
         panel.add(new JLabel("🔍"));
         panel.add(searchField);
         panel.add(filterCombo);
         panel.add(statusCombo);
+        panel.add(zoneCombo);
 
         return panel;
     }
 
     private void createModernTable() {
-        String[] columns = {"Bin ID", "Location", "Type", "Capacity (L)", 
-                "Current (%)", "Status", "Last Updated"};
-        tableModel = new DefaultTableModel(columns, 0) {
-            public boolean isCellEditable(int row, int col) { return false; }
+        tableModel = new BinTableModel();
+        binTable = new JTable(tableModel) {
+            @Override
+            public Color getBackground() { return Theme.current().card; }
+            @Override
+            public Color getForeground() { return Theme.current().text; }
+            @Override
+            public Color getGridColor() { return Theme.current().grid; }
+            @Override
+            protected JTableHeader createDefaultTableHeader() {
+                return new JTableHeader(columnModel) {
+                    @Override
+                    public Color getBackground() { return Theme.current().card; }
+                    @Override
+                    public Color getForeground() { return Theme.current().headerText; }
+                };
+            }
         };
-        binTable = new JTable(tableModel);
         binTable.setRowHeight(40);
         binTable.setFont(new Font("Segoe UI", Font.PLAIN, 13));
-        binTable.setGridColor(new Color(240, 240, 240));
         binTable.setShowVerticalLines(false);
         binTable.setIntercellSpacing(new Dimension(0, 5));
 
         binTable.getTableHeader().setFont(new Font("Segoe UI", Font.BOLD, 13));
-        binTable.getTableHeader().setBackground(cardLight);
-        binTable.getTableHeader().setForeground(Color.DARK_GRAY);
         binTable.getTableHeader().setBorder(BorderFactory.createMatteBorder(0, 0, 2, 0, new Color(230, 230, 230)));
         binTable.getTableHeader().setPreferredSize(new Dimension(0, 45));
 
         binTable.setDefaultRenderer(Object.class, new ModernTableCellRenderer());
+        binTable.getColumnModel().getColumn(BinTableModel.TREND).setCellRenderer(trendRenderer);
+        binTable.getColumnModel().getColumn(BinTableModel.TREND).setPreferredWidth(140);
         binTable.setSelectionBackground(new Color(99, 102, 241, 30));
         binTable.setSelectionForeground(Color.BLACK);
     }
@@ -351,6 +651,7 @@ public class ModernWhiteWasteSystem extends JFrame {
         JButton reportBtn = createModernButton("Report", "📄", successColor);
         JButton addBinBtn = createModernButton("Add Bin", "➕", primaryColor);
         JButton routeBtn = createModernButton("Optimize Route", "🗺️", warningColor);
+        JButton scheduleBtn = createModernButton("Schedule", "🗓️", new Color(20, 184, 166));
         JButton analyticsBtn = createModernButton("Analytics", "📊", new Color(139, 92, 246));
         JButton historyBtn = createModernButton("History", "📜", new Color(59, 130, 246));
         JButton resetBtn = createModernButton("Reset", "↺", dangerColor);
@@ -360,15 +661,20 @@ public class ModernWhiteWasteSystem extends JFrame {
         reportBtn.addActionListener(e -> generateReport());
         addBinBtn.addActionListener(e -> addNewBin());
         routeBtn.addActionListener(e -> optimizeCollectionRoute());
+        scheduleBtn.addActionListener(e -> showSchedule());
         analyticsBtn.addActionListener(e -> showAnalytics());
         historyBtn.addActionListener(e -> showCollectionHistory());
         resetBtn.addActionListener(e -> resetAllBins());
 
+        fleetButtons.addAll(List.of(refreshBtn, alertBtn, reportBtn, addBinBtn, routeBtn,
+                scheduleBtn, analyticsBtn, historyBtn, resetBtn));
+
         panel.add(refreshBtn);
         panel.add(alertBtn);
         panel.add(reportBtn);
         panel.add(addBinBtn);
         panel.add(routeBtn);
+        panel.add(scheduleBtn);
         panel.add(analyticsBtn);
         panel.add(historyBtn);
         panel.add(resetBtn);
@@ -426,170 +732,151 @@ public class ModernWhiteWasteSystem extends JFrame {
     }
 
     private void toggleTheme(JButton toggleBtn) {
-        darkMode = !darkMode;
-        Color bg = darkMode ? bgDark : bgLight;
-        Color card = darkMode ? cardDark : cardLight;
-        
-        getContentPane().getComponent(0).setBackground(bg);
-        dashboardPanel.setBackground(bg);
-        binTable.setBackground(card);
-        binTable.setForeground(darkMode ? Color.WHITE : Color.BLACK);
-        binTable.getTableHeader().setBackground(card);
-        binTable.getTableHeader().setForeground(darkMode ? Color.WHITE : Color.DARK_GRAY);
-        
-        toggleBtn.setText(darkMode ? "☀️" : "🌙");
-        toggleBtn.setToolTipText(darkMode ? "Light Mode" : "Dark Mode");
-        
-        // Update stat cards
-        Component[] comps = statsPanel.getComponents();
-        for (Component c : comps) {
-            if (c instanceof JPanel) {
-                c.setBackground(card);
-            }
-        }
-        
-        refreshData();
+        boolean dark = Theme.toggle().dark;
+        toggleBtn.setText(dark ? "☀️" : "🌙");
+        toggleBtn.setToolTipText(dark ? "Light Mode" : "Dark Mode");
+
+        // Themed components read the palette while painting, so one repaint is enough
+        repaint();
     }
 
     private void filterBins() {
-        String search = searchField.getText().toLowerCase();
-        filteredBins.clear();
-        for (WasteBin b : wasteBins) {
-            boolean matches = b.getId().toLowerCase().contains(search) ||
-                            b.getLocation().toLowerCase().contains(search);
-            if (matches) filteredBins.add(b);
-        }
+        if (site == null) return; // still loading
+        FleetQuery query = FleetQuery.bins().matching(searchField.getText().trim());
+        if (filterCombo.getSelectedIndex() > 0) query.type((String) filterCombo.getSelectedItem());
+        if (statusCombo.getSelectedIndex() > 0) query.status(statusCombo.getSelectedIndex() - 1);
+        if (zoneCombo.getSelectedIndex() > 0) query.zone((String) zoneCombo.getSelectedItem());
+        filteredBins = query.run(site.index);
+        rebuildViews();
         refreshData();
     }
 
-    private void refreshData() {
-        tableModel.setRowCount(0);
-        for (WasteBin bin : filteredBins) {
-            Object[] row = {bin.getId(), bin.getLocation(), bin.getType(),
-                    bin.getCapacity(), bin.getCurrentLevel() + "%",
-                    bin.getStatus(), bin.getLastUpdated()};
-            tableModel.addRow(row);
+    // Only needed when the visible set changes. The table reads the bins as it paints, so this
+    // is O(visible set) with no per-row objects; cards start with one batch.
+    private void rebuildViews() {
+        rowOfBin = new int[site.bins().size()];
+        Arrays.fill(rowOfBin, -1);
+        for (int row = 0; row < filteredBins.size(); row++) rowOfBin[filteredBins.get(row).getIndex()] = row;
+        tableModel.setBins(filteredBins);
+        dashboardPanel.removeAll();
+        cardsShown = 0;
+        showMoreCards();
+        if (!fleetShown) {
+            fleetShown = true;
+            // Queued behind the repaint just requested
+            SwingUtilities.invokeLater(() -> {
+                startupMark("fleet shown");
+                if (STARTUP_EXIT) System.exit(0);
+            });
         }
-        updateDashboard();
-        updateStats();
-        saveBins();
     }
 
-    private void updateStats() {
-        int total = wasteBins.size();
-        long critical = wasteBins.stream().filter(b -> b.getCurrentLevel() >= 80).count();
-        double avg = wasteBins.stream().mapToInt(WasteBin::getCurrentLevel).average().orElse(0);
-
-        totalBinsLabel.setText(String.valueOf(total));
-        criticalBinsLabel.setText(String.valueOf(critical));
-        avgFillLabel.setText(String.format("%.1f%%", avg));
-        co2SavedLabel.setText(String.format("%.1f kg", co2Saved));
+    private void showMoreCards() {
+        int end = Math.min(filteredBins.size(), cardsShown + CARD_BATCH);
+        if (cardsShown >= end) return;
+        while (cardsShown < end) dashboardPanel.add(cardFor(filteredBins.get(cardsShown++)));
+        dashboardPanel.revalidate();
+        dashboardPanel.repaint();
     }
 
-    private void updateDashboard() {
-        dashboardPanel.removeAll();
-        for (WasteBin bin : filteredBins) {
-            dashboardPanel.add(createEnhancedBinCard(bin));
+    // Each consumer only processes the bins changed since its own last pass. Stats are
+    // O(changed bins); row/card updates are sliced to stay within a frame and saving runs
+    // in the background, at most one save in flight.
+    private void refreshData() {
+        Site site = this.site;
+        if (site == null) return; // still loading
+        site.uiChanges.drain(pendingViews::set);
+        site.stats.update(site.statsChanges, site.bins());
+        updateStats();
+        if (!viewsPosted) updatePendingViews();
+        if (!site.persistChanges.isEmpty() && site.saving.compareAndSet(false, true)) {
+            BackgroundTasks.submit(task -> {
+                while (site.persistChanges.drain(i -> {}) > 0) saveBins(site);
+                return null;
+            }).future.whenComplete((r, e) -> {
+                site.saving.set(false);
+                if (e != null) e.printStackTrace();
+            });
         }
-        dashboardPanel.revalidate();
-        dashboardPanel.repaint();
     }
 
-    private JPanel createEnhancedBinCard(WasteBin bin) {
-        JPanel card = new JPanel() {
-            @Override
-            protected void paintComponent(Graphics g) {
-                super.paintComponent(g);
-                Graphics2D g2d = (Graphics2D) g;
-                g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-                g2d.setColor(getBackground());
-                g2d.fillRoundRect(0, 0, getWidth(), getHeight(), 20, 20);
-                
-                // Shadow effect
-                g2d.setColor(new Color(0, 0, 0, 20));
-                g2d.fillRoundRect(2, 2, getWidth(), getHeight(), 20, 20);
+    private void updatePendingViews() {
+        viewsPosted = false;
+        long deadline = System.nanoTime() + VIEW_SLICE_NANOS;
+        int count = 0;
+        for (int i = pendingViews.nextSetBit(0); i >= 0; i = pendingViews.nextSetBit(i + 1)) {
+            pendingViews.clear(i);
+            updateBinView(i);
+            if ((++count & 63) == 0 && System.nanoTime() > deadline) {
+                // Let paint and input events through, then continue with the rest
+                if (!pendingViews.isEmpty()) {
+                    viewsPosted = true;
+                    SwingUtilities.invokeLater(this::updatePendingViews);
+                }
+                return;
             }
-        };
-        
-        card.setPreferredSize(new Dimension(200, 220));
-        card.setLayout(new BorderLayout(10, 10));
-        card.setBackground(darkMode ? cardDark : cardLight);
-        card.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
-
-        // Top section
-        JPanel topPanel = new JPanel(new BorderLayout());
-        topPanel.setOpaque(false);
-
-        String emoji = bin.getType().equals("Organic") ? "🍃" :
-                      bin.getType().equals("Recyclable") ? "♻️" : "🗑️";
-        JLabel iconLabel = new JLabel(emoji);
-        iconLabel.setFont(new Font("Segoe UI Emoji", Font.PLAIN, 32));
-
-        JPanel infoPanel = new JPanel();
-        infoPanel.setLayout(new BoxLayout(infoPanel, BoxLayout.Y_AXIS));
-        infoPanel.setOpaque(false);
-
-        JLabel idLabel = new JLabel(bin.getId());
-        idLabel.setFont(new Font("Segoe UI", Font.BOLD, 16));
-        idLabel.setForeground(darkMode ? Color.WHITE : Color.BLACK);
-
-        JLabel locLabel = new JLabel(bin.getLocation());
-        locLabel.setFont(new Font("Segoe UI", Font.PLAIN, 12));
-        locLabel.setForeground(Color.GRAY);
-
-        infoPanel.add(idLabel);
-        infoPanel.add(locLabel);
-
-        topPanel.add(infoPanel, BorderLayout.CENTER);
-        topPanel.add(iconLabel, BorderLayout.EAST);
-
-        // Progress section
-        JPanel progressPanel = new JPanel();
-        progressPanel.setLayout(new BoxLayout(progressPanel, BoxLayout.Y_AXIS));
-        progressPanel.setOpaque(false);
-
-        JLabel percentLabel = new JLabel(bin.getCurrentLevel() + "%");
-        percentLabel.setFont(new Font("Segoe UI", Font.BOLD, 24));
-        percentLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
-        Color levelColor = bin.getCurrentLevel() >= 80 ? dangerColor :
-                          bin.getCurrentLevel() >= 60 ? warningColor : successColor;
-        percentLabel.setForeground(levelColor);
-
-        JProgressBar levelBar = new JProgressBar(0, 100);
-        levelBar.setValue(bin.getCurrentLevel());
-        levelBar.setStringPainted(false);
-        levelBar.setPreferredSize(new Dimension(0, 12));
-        levelBar.setForeground(levelColor);
-        levelBar.setBackground(new Color(levelColor.getRed(), levelColor.getGreen(), 
-                                        levelColor.getBlue(), 30));
-        levelBar.setBorderPainted(false);
+        }
+    }
 
-        JLabel statusLabel = new JLabel(bin.getStatus());
-        statusLabel.setFont(new Font("Segoe UI", Font.BOLD, 11));
-        statusLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
-        statusLabel.setForeground(levelColor);
+    private void updateBinView(int index) {
+        if (index >= rowOfBin.length) return; // shown by the next rebuildViews()
+        WasteBin bin = site.bins().get(index);
+        int row = rowOfBin[index];
+        if (row >= 0) tableModel.fireTableRowsUpdated(row, row);
+        if (index < binCards.size() && binCards.get(index) != null) binCards.get(index).update();
+    }
 
-        progressPanel.add(percentLabel);
-        progressPanel.add(Box.createVerticalStrut(8));
-        progressPanel.add(levelBar);
-        progressPanel.add(Box.createVerticalStrut(8));
-        progressPanel.add(statusLabel);
+    private BinCard cardFor(WasteBin bin) {
+        int index = bin.getIndex();
+        while (binCards.size() <= index) binCards.add(null);
+        BinCard card = binCards.get(index);
+        if (card == null) {
+            card = new BinCard(bin, site.levels);
+            binCards.set(index, card);
+        }
+        return card;
+    }
 
-        card.add(topPanel, BorderLayout.NORTH);
-        card.add(progressPanel, BorderLayout.CENTER);
+    private void updateStats() {
+        totalBinsLabel.setText(String.valueOf(site.stats.total()));
+        criticalBinsLabel.setText(String.valueOf(site.stats.critical()));
+        avgFillLabel.setText(String.format("%.1f%%", site.stats.averageLevel()));
+        co2SavedLabel.setText(String.format("%.1f kg", site.impact.total().co2SavedKg()));
+    }
 
-        return card;
+    static BinCard createEnhancedBinCard(WasteBin bin) {
+        return new BinCard(bin, null);
     }
 
+    // Routes the selected zone (or the whole fleet); the planner repairs its last route for
+    // that zone, so repeated requests only pay for the bins that changed
     private void optimizeCollectionRoute() {
-        List<WasteBin> criticalBins = wasteBins.stream()
-                .filter(b -> b.getCurrentLevel() >= 70)
-                .sorted((a, b) -> Integer.compare(b.getCurrentLevel(), a.getCurrentLevel()))
-                .toList();
+        Site site = this.site;
+        String zone = zoneCombo.getSelectedIndex() > 0 ? (String) zoneCombo.getSelectedItem() : null;
+        BackgroundTasks.<RoutePlanner.Plan>submit(task -> {
+            FleetQuery query = FleetQuery.bins().needsCollection();
+            if (zone != null) query.zone(zone);
+            if (ROUTE_EXCLUDE_SUSPECT) query.exclude(suspectBins(site));
+            return site.routes.plan(zone == null ? "" : zone, query.run(site.index));
+        }).onEdt(plan -> {
+            // A route for a site that is no longer on screen is dropped
+            if (site == this.site) confirmRoute(plan, zone);
+        }, this::showError);
+    }
+
+    private BitSet suspectBins(Site site) {
+        BitSet suspects = new BitSet();
+        site.anomalies.suspects().keySet().forEach(suspects::set);
+        return suspects;
+    }
 
+    // zone is the one the plan was built for; the combo may have changed since
+    private void confirmRoute(RoutePlanner.Plan plan, String zone) {
+        Site site = this.site;
+        List<WasteBin> criticalBins = plan.stops;
         if (criticalBins.isEmpty()) {
             JOptionPane.showMessageDialog(this, 
-                "No bins require collection at this time.\nAll bins are below 70% capacity.",
+                "No bins require collection at this time.\nAll bins are below their collection thresholds.",
                 "Route Optimization", JOptionPane.INFORMATION_MESSAGE);
             return;
         }
@@ -599,7 +886,26 @@ public class ModernWhiteWasteSystem extends JFrame {
         route.append("<p><b>Bins to collect: ").append(criticalBins.size()).append("</b></p>");
         route.append("<p style='color: #10b981;'>Estimated time: ")
              .append(criticalBins.size() * 15).append(" minutes</p>");
-        route.append("<p style='color: #10b981;'>CO₂ saved: 2.5 kg</p>");
+        route.append("<p>Route length: ").append(String.format("%.1f km", plan.km))
+             .append(plan.warm ? String.format(" (updated +%d/-%d stops in %d ms)", plan.added, plan.removed, plan.nanos / 1_000_000) : "")
+             .append("</p>");
+        double kg = 0;
+        for (WasteBin bin : criticalBins) {
+            kg += bin.getCapacity() * bin.getCurrentLevel() / 100.0 * ImpactLedger.density(bin.getType());
+        }
+        route.append("<p>Waste to collect: ").append(String.format("about %.0f kg", kg)).append("</p>");
+        route.append("<p style='color: #10b981;'>CO₂ saved: ")
+             .append(String.format("%.1f kg (%.1f km less than out-and-back trips)",
+                     (plan.baselineKm - plan.km) * ImpactLedger.CO2_PER_KM, plan.baselineKm - plan.km))
+             .append("</p>");
+        int skipped = !ROUTE_EXCLUDE_SUSPECT ? 0
+                : FleetQuery.bins().needsCollection().where(b -> site.anomalies.isSuspect(b.getIndex()))
+                        .zone(zone)
+                        .count(site.index);
+        if (skipped > 0) {
+            route.append("<p style='color: #f59e0b;'>Skipped ").append(skipped)
+                 .append(" bin(s) with a suspected sensor fault, see Alerts</p>");
+        }
         route.append("<hr><ol>");
 
         for (int i = 0; i < criticalBins.size(); i++) {
@@ -615,55 +921,202 @@ public class ModernWhiteWasteSystem extends JFrame {
                 "Collection Route", JOptionPane.OK_CANCEL_OPTION, JOptionPane.INFORMATION_MESSAGE);
 
         if (result == JOptionPane.OK_OPTION) {
-            for (WasteBin bin : criticalBins) {
-                bin.setCurrentLevel(0);
-            }
-            totalCollections++;
-            co2Saved += 2.5;
-            
             String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
-            String binIds = criticalBins.stream().map(WasteBin::getId).reduce((a, b) -> a + ";" + b).orElse("");
-            collectionHistory.add(new CollectionRoute(timestamp, binIds, criticalBins.size()));
-            saveHistory();
-            
-            refreshData();
-            JOptionPane.showMessageDialog(this, 
-                "Collection completed successfully!\n" + criticalBins.size() + " bins emptied.",
-                "Success", JOptionPane.INFORMATION_MESSAGE);
+            BackgroundTasks.<CollectionRoute>submit(task -> {
+                long now = System.currentTimeMillis();
+                String binIds = criticalBins.stream().map(WasteBin::getId).reduce((a, b) -> a + ";" + b).orElse("");
+                CollectionRoute collected = new CollectionRoute(timestamp, binIds, criticalBins.size());
+                collected.km = plan.km;
+                collected.baselineKm = plan.baselineKm;
+                for (WasteBin bin : criticalBins) {
+                    // The detector hears of the collection before the drop to 0, or it would flag
+                    // the bin as emptied without one
+                    site.anomalies.collected(bin.getIndex(), now);
+                    // Weighed at the level actually emptied, which may have risen since the plan
+                    int level = site.eventStore.collection(bin);
+                    collected.byType.computeIfAbsent(bin.getType(), t -> new ImpactLedger.Totals()).weigh(bin, level);
+                }
+                site.eventStore.sync();
+                return collected;
+            }).onEdt(collected -> {
+                site.history.add(collected);
+                site.impact.record(collected);
+                List<CollectionRoute> history = new ArrayList<>(site.history);
+                BackgroundTasks.submit(task -> {
+                    saveHistory(site, history);
+                    return null;
+                });
+                refreshData();
+                ImpactLedger.Totals done = collected.totals();
+                JOptionPane.showMessageDialog(this, String.format(
+                    "Collection completed successfully!\n%d bins emptied, %.0f L (%.0f kg) collected.",
+                    criticalBins.size(), done.litres, done.kg),
+                    "Success", JOptionPane.INFORMATION_MESSAGE);
+            }, this::showError);
         }
     }
 
+    private void showError(Throwable e) {
+        e.printStackTrace();
+        JOptionPane.showMessageDialog(this, "Operation failed: " + e.getMessage(),
+                "Error", JOptionPane.ERROR_MESSAGE);
+    }
+
+    private void showSchedule() {
+        // A shift change re-plans the whole horizon, so bring the plan up to date off the EDT
+        Site site = this.site;
+        BackgroundTasks.<List<WasteBin>>submit(task -> {
+            site.scheduler.update(site.scheduleChanges, site.bins());
+            return site.scheduler.currentShiftStops(site.bins());
+        }).onEdt(current -> {
+            if (site == this.site) showSchedule(current);
+        }, this::showError);
+    }
+
+    private void showSchedule(List<WasteBin> current) {
+        int[] trips = site.scheduler.tripsPerShift();
+        int[] stops = site.scheduler.stopsPerShift();
+
+        String[] columns = {"Shift", "Starts", "Stops", "Trips"};
+        DefaultTableModel model = new DefaultTableModel(columns, 0) {
+            public boolean isCellEditable(int row, int col) { return false; }
+        };
+        DateTimeFormatter time = DateTimeFormatter.ofPattern("HH:mm:ss");
+        for (int s = 0; s < trips.length; s++) {
+            LocalDateTime start = LocalDateTime.ofInstant(java.time.Instant.ofEpochMilli(site.scheduler.shiftStart(s)),
+                    java.time.ZoneId.systemDefault());
+            model.addRow(new Object[]{s == 0 ? "Current" : "+" + s, start.format(time), stops[s], trips[s]});
+        }
+
+        JTable table = new JTable(model);
+        table.setRowHeight(30);
+        table.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        table.getTableHeader().setFont(new Font("Segoe UI", Font.BOLD, 12));
+
+        StringBuilder ids = new StringBuilder();
+        for (int i = 0; i < current.size() && i < 30; i++) {
+            if (i > 0) ids.append(", ");
+            ids.append(current.get(i).getId());
+        }
+        if (current.size() > 30) ids.append(" ... +").append(current.size() - 30);
+
+        JPanel panel = new JPanel(new BorderLayout(10, 10));
+        panel.add(createLabelPair("🚛 Planned trips (next " + trips.length + " shifts):",
+                String.valueOf(site.scheduler.totalTrips())), BorderLayout.NORTH);
+        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.setPreferredSize(new Dimension(450, 220));
+        panel.add(scrollPane, BorderLayout.CENTER);
+        JLabel currentLabel = new JLabel("<html><b>Current shift:</b> "
+                + (current.isEmpty() ? "no collections needed" : ids) + "</html>");
+        currentLabel.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        panel.add(currentLabel, BorderLayout.SOUTH);
+        JOptionPane.showMessageDialog(this, panel, "Collection Schedule", JOptionPane.PLAIN_MESSAGE);
+    }
+
+    // Fleet-wide figures for the analytics dialog, gathered off the EDT
+    private static final class Analytics {
+        Map<String, FleetQuery.Group> byType, byZone;
+        int overflowRisk;
+        // Running totals from the impact ledgers; nothing here rescans the history
+        ImpactLedger.Totals impact, allSites = new ImpactLedger.Totals();
+        Map<String, ImpactLedger.Totals> impactByType;
+        SortedMap<java.time.LocalDate, ImpactLedger.Totals> lastDays;
+        int unmeasured, openSites;
+    }
+
     private void showAnalytics() {
+        Site site = this.site;
+        BackgroundTasks.<Analytics>submit(task -> {
+            Analytics a = new Analytics();
+            a.byType = FleetQuery.bins().groupBy(site.index, FleetQuery.GroupBy.TYPE);
+            a.byZone = FleetQuery.bins().groupBy(site.index, FleetQuery.GroupBy.ZONE);
+            // Only CRITICAL bins carry an alert grade, so the index narrows this to those first
+            a.overflowRisk = FleetQuery.bins().status(WasteBin.CRITICAL)
+                    .where(b -> b.alertUrgency() >= ThresholdRules.HIGH_ALERT).count(site.index);
+            a.impact = site.impact.total();
+            a.impactByType = site.impact.byType();
+            a.lastDays = site.impact.lastDays(7);
+            a.unmeasured = site.impact.unmeasured();
+            sites.forEachOpen(s -> {
+                a.allSites.add(s.impact.total());
+                a.openSites++;
+            });
+            return a;
+        }).onEdt(a -> {
+            if (site == this.site) showAnalytics(a);
+        }, this::showError);
+    }
+
+    private void showAnalytics(Analytics analytics) {
         JPanel panel = new JPanel();
         panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
         panel.setBorder(BorderFactory.createEmptyBorder(15, 15, 15, 15));
 
-        Map<String, Integer> typeCount = new HashMap<>();
-        Map<String, Integer> typeFill = new HashMap<>();
-
-        for (WasteBin bin : wasteBins) {
-            typeCount.merge(bin.getType(), 1, Integer::sum);
-            typeFill.merge(bin.getType(), bin.getCurrentLevel(), Integer::sum);
-        }
-
-        panel.add(createLabelPair("📊 Total Collections:", totalCollections + " times"));
+        ImpactLedger.Totals impact = analytics.impact;
+        panel.add(createLabelPair("📊 Total Collections:", impact.collections + " times"
+                + (analytics.unmeasured > 0 ? " (" + analytics.unmeasured + " before impact tracking)" : "")));
         panel.add(Box.createVerticalStrut(10));
-        panel.add(createLabelPair("🌱 CO₂ Saved:", String.format("%.1f kg", co2Saved)));
+        panel.add(createLabelPair("🌱 CO₂ Saved:", String.format("%.1f kg (%.1f of %.1f km driven)",
+                impact.co2SavedKg(), impact.km, impact.baselineKm)));
         panel.add(Box.createVerticalStrut(10));
-        panel.add(createLabelPair("♻️ Waste Diverted:", String.format("%.1f kg", totalCollections * 45.0)));
+        panel.add(createLabelPair("♻️ Waste Diverted:", String.format("%.1f kg (%.0f L)", impact.kg, impact.litres)));
+        if (analytics.openSites > 1) {
+            panel.add(Box.createVerticalStrut(10));
+            panel.add(createLabelPair("🏢 All " + analytics.openSites + " open sites:", String.format("%.1f kg, %.1f kg CO₂ saved",
+                    analytics.allSites.kg, analytics.allSites.co2SavedKg())));
+        }
         panel.add(Box.createVerticalStrut(15));
 
+        if (!analytics.impactByType.isEmpty()) {
+            JLabel collectedHeader = new JLabel("Collected by Type:");
+            collectedHeader.setFont(new Font("Segoe UI", Font.BOLD, 14));
+            panel.add(collectedHeader);
+            panel.add(Box.createVerticalStrut(10));
+            for (Map.Entry<String, ImpactLedger.Totals> entry : analytics.impactByType.entrySet()) {
+                ImpactLedger.Totals t = entry.getValue();
+                panel.add(createLabelPair("  " + entry.getKey() + ":",
+                        String.format("%d bins, %.0f L, %.1f kg", t.bins, t.litres, t.kg)));
+                panel.add(Box.createVerticalStrut(5));
+            }
+            panel.add(Box.createVerticalStrut(15));
+        }
+
+        if (!analytics.lastDays.isEmpty()) {
+            JLabel dayHeader = new JLabel("Last Days:");
+            dayHeader.setFont(new Font("Segoe UI", Font.BOLD, 14));
+            panel.add(dayHeader);
+            panel.add(Box.createVerticalStrut(10));
+            for (Map.Entry<java.time.LocalDate, ImpactLedger.Totals> entry : analytics.lastDays.entrySet()) {
+                ImpactLedger.Totals t = entry.getValue();
+                panel.add(createLabelPair("  " + entry.getKey() + ":", String.format("%d collections, %.1f kg, %.1f kg CO₂ saved",
+                        t.collections, t.kg, t.co2SavedKg())));
+                panel.add(Box.createVerticalStrut(5));
+            }
+            panel.add(Box.createVerticalStrut(15));
+        }
+
         JLabel typeHeader = new JLabel("Bin Type Analysis:");
         typeHeader.setFont(new Font("Segoe UI", Font.BOLD, 14));
         panel.add(typeHeader);
         panel.add(Box.createVerticalStrut(10));
 
-        for (Map.Entry<String, Integer> entry : typeCount.entrySet()) {
-            String type = entry.getKey();
-            int count = entry.getValue();
-            double avgFill = typeFill.get(type) / (double) count;
-            panel.add(createLabelPair("  " + type + ":", 
-                count + " bins (avg " + String.format("%.1f%%", avgFill) + ")"));
+        for (Map.Entry<String, FleetQuery.Group> entry : analytics.byType.entrySet()) {
+            FleetQuery.Group g = entry.getValue();
+            panel.add(createLabelPair("  " + entry.getKey() + ":", 
+                g.count + " bins (avg " + String.format("%.1f%%", g.averageLevel()) + ")"));
+            panel.add(Box.createVerticalStrut(5));
+        }
+
+        panel.add(Box.createVerticalStrut(15));
+        JLabel zoneHeader = new JLabel("Zone Analysis:");
+        zoneHeader.setFont(new Font("Segoe UI", Font.BOLD, 14));
+        panel.add(zoneHeader);
+        panel.add(Box.createVerticalStrut(10));
+
+        for (Map.Entry<String, FleetQuery.Group> entry : analytics.byZone.entrySet()) {
+            FleetQuery.Group g = entry.getValue();
+            panel.add(createLabelPair("  " + entry.getKey() + ":", g.count + " bins, " + g.critical
+                + " critical (avg " + String.format("%.1f%%", g.averageLevel()) + ")"));
             panel.add(Box.createVerticalStrut(5));
         }
 
@@ -673,11 +1126,11 @@ public class ModernWhiteWasteSystem extends JFrame {
         panel.add(effHeader);
         panel.add(Box.createVerticalStrut(10));
 
-        long overflowRisk = wasteBins.stream().filter(b -> b.getCurrentLevel() >= 90).count();
+        int overflowRisk = analytics.overflowRisk;
         panel.add(createLabelPair("  Overflow Risk:", overflowRisk + " bins"));
         panel.add(Box.createVerticalStrut(5));
         
-        double efficiency = totalCollections > 0 ? (co2Saved / totalCollections) : 0;
+        double efficiency = impact.collections > 0 ? (impact.co2SavedKg() / impact.collections) : 0;
         panel.add(createLabelPair("  Route Efficiency:", String.format("%.1f kg CO₂/route", efficiency)));
 
         JScrollPane scrollPane = new JScrollPane(panel);
@@ -699,7 +1152,7 @@ public class ModernWhiteWasteSystem extends JFrame {
     }
 
     private void showCollectionHistory() {
-        if (collectionHistory.isEmpty()) {
+        if (site.history.isEmpty()) {
             JOptionPane.showMessageDialog(this, "No collection history available yet.",
                 "Collection History", JOptionPane.INFORMATION_MESSAGE);
             return;
@@ -710,7 +1163,7 @@ public class ModernWhiteWasteSystem extends JFrame {
             public boolean isCellEditable(int row, int col) { return false; }
         };
 
-        for (CollectionRoute route : collectionHistory) {
+        for (CollectionRoute route : site.history) {
             model.addRow(new Object[]{route.timestamp, route.bins.split(";").length, 
                 route.efficiency + " bins"});
         }
@@ -725,44 +1178,75 @@ public class ModernWhiteWasteSystem extends JFrame {
         JOptionPane.showMessageDialog(this, scrollPane, "Collection History", JOptionPane.PLAIN_MESSAGE);
     }
 
+    // Only the site on screen is simulated; its timer is cancelled when another site is shown
     private void startSimulation() {
+        Site site = this.site;
+        // -Dsim.seed=<n> replays the same scenario, -Dsim.periodMs=<n> speeds it up
+        LoadGenerator generator = LoadGenerator.forBins(SIMULATION_SEED, site.bins());
+        loadGenerator = generator;
+        // Simulated sensors go through the same ingestion stage as real ones would: one
+        // sequence number per tick, stamped with the sensor time
+        ingest = new SensorIngest(INGEST_LATENESS_MS, site.limits.ingestMaxPending, (i, time, level) -> {
+            WasteBin bin = site.bins().get(i);
+            // Collections and resets also move a bin's time forward, so older readings lose
+            if (time > bin.getUpdatedAtMillis()) {
+                site.eventStore.reading(bin, level, time);
+                site.anomalies.reading(i, time, level);
+            }
+        });
         simulationTimer = new Timer();
         simulationTimer.scheduleAtFixedRate(new java.util.TimerTask() {
+            private long tick;
+
+            // An exception would otherwise cancel the timer silently and stop the simulation
             public void run() {
-                Random rand = new Random();
-                for (WasteBin bin : wasteBins) {
-                    if (bin.getCurrentLevel() < 100) {
-                        int increase = bin.getType().equals("Organic") ? rand.nextInt(6) + 2 :
-                                      bin.getType().equals("General") ? rand.nextInt(5) + 1 :
-                                      rand.nextInt(3) + 1;
-                        bin.setCurrentLevel(Math.min(100, bin.getCurrentLevel() + increase));
+                try {
+                    long now = System.currentTimeMillis();
+                    tick++;
+                    for (int i = 0; i < site.bins().size(); i++) {
+                        WasteBin bin = site.bins().get(i);
+                        if (bin.getCurrentLevel() < 100) {
+                            ingest.offer(i, tick, now, generator.advance(i, bin.getCurrentLevel()));
+                        }
                     }
+                    ingest.poll(now);
+                    site.eventStore.flush();
+                    site.scheduler.update(site.scheduleChanges, site.bins());
+                    site.index.update();
+                    site.levels.update();
+                    if (!LocalDate.now().equals(site.retainedOn)) {
+                        site.retainedOn = LocalDate.now();
+                        SwingUtilities.invokeLater(() -> retainDaily(site));
+                    }
+                    SwingUtilities.invokeLater(() -> refreshData());
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
                 }
-                SwingUtilities.invokeLater(() -> refreshData());
             }
-        }, 5000, 5000);
+        }, SIMULATION_PERIOD_MS, SIMULATION_PERIOD_MS);
     }
 
     private void showAlerts() {
-        List<WasteBin> criticalBins = wasteBins.stream()
-                .filter(b -> b.getCurrentLevel() >= 80)
-                .sorted((a, b) -> Integer.compare(b.getCurrentLevel(), a.getCurrentLevel()))
-                .toList();
+        if (site == null) return; // still loading
+        List<WasteBin> criticalBins = FleetQuery.bins().status(WasteBin.CRITICAL)
+                .orderBy(FleetQuery.Order.LEVEL_DESC).run(site.index);
 
         StringBuilder alerts = new StringBuilder("<html><body style='width: 400px; font-family: Segoe UI;'>");
         alerts.append("<h2 style='color: #ef4444;'>⚠️ Active Alerts</h2>");
 
-        if (criticalBins.isEmpty()) {
+        Map<Integer, Integer> suspects = new TreeMap<>(site.anomalies.suspects());
+        if (criticalBins.isEmpty() && suspects.isEmpty()) {
             alerts.append("<p style='color: #10b981; font-size: 14px;'>✓ All bins are operating normally.<br>No critical alerts at this time.</p>");
-        } else {
+        } else if (!criticalBins.isEmpty()) {
             alerts.append("<p style='font-size: 13px;'><b>").append(criticalBins.size())
                   .append(" bin(s)</b> require immediate attention:</p><hr>");
             
             for (WasteBin bin : criticalBins) {
-                String urgency = bin.getCurrentLevel() >= 95 ? "URGENT" :
-                               bin.getCurrentLevel() >= 90 ? "HIGH" : "MEDIUM";
-                String color = bin.getCurrentLevel() >= 95 ? "#dc2626" :
-                              bin.getCurrentLevel() >= 90 ? "#ef4444" : "#f97316";
+                int grade = bin.alertUrgency();
+                String urgency = grade == ThresholdRules.URGENT_ALERT ? "URGENT" :
+                               grade == ThresholdRules.HIGH_ALERT ? "HIGH" : "MEDIUM";
+                String color = grade == ThresholdRules.URGENT_ALERT ? "#dc2626" :
+                              grade == ThresholdRules.HIGH_ALERT ? "#ef4444" : "#f97316";
                 
                 alerts.append("<div style='margin: 10px 0; padding: 10px; background: #fef2f2; border-left: 4px solid ")
                       .append(color).append(";'>")
@@ -774,6 +1258,22 @@ public class ModernWhiteWasteSystem extends JFrame {
                       .append("</div>");
             }
         }
+        if (!suspects.isEmpty()) {
+            // Flagged by the streaming detector; optimized routes skip these unless -Droute.excludeSuspect=false
+            alerts.append("<h3 style='color: #f59e0b;'>🛠️ Sensor Anomalies</h3><p style='font-size: 13px;'><b>")
+                  .append(suspects.size()).append(" sensor(s)</b> need checking:</p><hr>");
+            for (Map.Entry<Integer, Integer> entry : suspects.entrySet()) {
+                if (entry.getKey() >= site.bins().size()) continue;
+                WasteBin bin = site.bins().get(entry.getKey());
+                alerts.append("<div style='margin: 10px 0; padding: 10px; background: #fffbeb; border-left: 4px solid #f59e0b;'>")
+                      .append("<b>").append(bin.getId()).append("</b> - ")
+                      .append(AnomalyDetector.describe(entry.getValue())).append("<br>")
+                      .append("<span style='color: #666;'>📍 ").append(bin.getLocation())
+                      .append(" · last reading ").append(bin.getCurrentLevel()).append("% at ")
+                      .append(bin.getLastUpdated()).append("</span>")
+                      .append("</div>");
+            }
+        }
         alerts.append("</body></html>");
 
         JEditorPane editorPane = new JEditorPane("text/html", alerts.toString());
@@ -785,62 +1285,63 @@ public class ModernWhiteWasteSystem extends JFrame {
     }
 
     private void generateReport() {
-        StringBuilder report = new StringBuilder();
-        report.append("╔════════════════════════════════════════════════════════════╗\n");
-        report.append("║        SMART WASTE MANAGEMENT - SYSTEM REPORT            ║\n");
-        report.append("╚════════════════════════════════════════════════════════════╝\n\n");
-        
-        report.append("Generated: ").append(LocalDateTime.now()
-                .format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))).append("\n");
-        report.append("─────────────────────────────────────────────────────────────\n\n");
-
-        report.append("📊 OVERVIEW\n");
-        report.append("─────────────────────────────────────────────────────────────\n");
-        int total = wasteBins.size();
-        long critical = wasteBins.stream().filter(b -> b.getCurrentLevel() >= 80).count();
-        long warning = wasteBins.stream().filter(b -> b.getCurrentLevel() >= 60 && b.getCurrentLevel() < 80).count();
-        long normal = total - critical - warning;
-        double avg = wasteBins.stream().mapToInt(WasteBin::getCurrentLevel).average().orElse(0);
-
-        report.append(String.format("Total Bins:          %d\n", total));
-        report.append(String.format("Normal Status:       %d (%.1f%%)\n", normal, (normal*100.0/total)));
-        report.append(String.format("Warning Status:      %d (%.1f%%)\n", warning, (warning*100.0/total)));
-        report.append(String.format("Critical Status:     %d (%.1f%%)\n", critical, (critical*100.0/total)));
-        report.append(String.format("Average Fill Level:  %.1f%%\n\n", avg));
-
-        report.append("🌱 ENVIRONMENTAL IMPACT\n");
-        report.append("─────────────────────────────────────────────────────────────\n");
-        report.append(String.format("Total Collections:   %d\n", totalCollections));
-        report.append(String.format("CO₂ Saved:           %.1f kg\n", co2Saved));
-        report.append(String.format("Waste Diverted:      %.1f kg\n\n", totalCollections * 45.0));
-
-        report.append("📍 BIN DETAILS\n");
-        report.append("─────────────────────────────────────────────────────────────\n");
-        report.append(String.format("%-12s %-20s %-12s %6s %10s\n", 
-                "BIN ID", "LOCATION", "TYPE", "LEVEL", "STATUS"));
-        report.append("─────────────────────────────────────────────────────────────\n");
-
-        for (WasteBin b : wasteBins) {
-            report.append(String.format("%-12s %-20s %-12s %5d%% %10s\n",
-                    b.getId(), b.getLocation(), b.getType(), 
-                    b.getCurrentLevel(), b.getStatus()));
-        }
-
-        report.append("\n─────────────────────────────────────────────────────────────\n");
-        report.append("End of Report\n");
-        report.append("─────────────────────────────────────────────────────────────\n");
+        // Snapshot on the EDT, format off it; the preview only lists the first bins
+        List<WasteBin> bins = new ArrayList<>(site.bins());
+        site.stats.update(site.statsChanges, site.bins());
+        ReportWriter.Summary summary = ReportWriter.Summary.of(site.stats, site.impact);
+        summary.byZone = FleetQuery.bins().groupBy(site.index, FleetQuery.GroupBy.ZONE);
+        ProgressMonitor monitor = new ProgressMonitor(this, "Generating report...", null, 0, 100);
+        monitor.setMillisToDecideToPopup(200);
+
+        BackgroundTasks.<String>submit(task -> {
+            StringWriter preview = new StringWriter();
+            List<WasteBin> shown = bins.subList(0, Math.min(bins.size(), REPORT_PREVIEW_BINS));
+            new ReportWriter(ReportWriter.Format.TEXT, task::progress).write(shown, summary, preview);
+            if (shown.size() < bins.size()) {
+                preview.write("\n... " + (bins.size() - shown.size()) + " more bins, use Export for the full report\n");
+            }
+            return preview.toString();
+        }, monitor).onEdt(text -> showReport(text, bins, summary), e -> JOptionPane.showMessageDialog(this,
+                "Report failed: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE));
+    }
 
-        JTextArea ta = new JTextArea(report.toString());
+    private void showReport(String text, List<WasteBin> bins, ReportWriter.Summary summary) {
+        JTextArea ta = new JTextArea(text);
         ta.setFont(new Font("Monospaced", Font.PLAIN, 12));
         ta.setEditable(false);
         ta.setCaretPosition(0);
 
         JScrollPane scrollPane = new JScrollPane(ta);
         scrollPane.setPreferredSize(new Dimension(700, 500));
-        JOptionPane.showMessageDialog(this, scrollPane, "System Report", JOptionPane.PLAIN_MESSAGE);
+        Object[] options = {"Export...", "Close"};
+        int choice = JOptionPane.showOptionDialog(this, scrollPane, "System Report", JOptionPane.DEFAULT_OPTION,
+                JOptionPane.PLAIN_MESSAGE, null, options, options[1]);
+        if (choice == 0) exportReport(bins, summary);
+    }
+
+    private void exportReport(List<WasteBin> bins, ReportWriter.Summary summary) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Export Report (.txt, .csv or .json)");
+        chooser.setSelectedFile(new File("waste_report.txt"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        File target = chooser.getSelectedFile();
+        ProgressMonitor monitor = new ProgressMonitor(this, "Exporting " + target.getName(), null, 0, 100);
+
+        BackgroundTasks.submit(task -> {
+            new ReportWriter(ReportWriter.formatFor(target.getName()), task::progress).write(bins, summary, target.toPath());
+            return null;
+        }, monitor).onEdt(done -> JOptionPane.showMessageDialog(this, "Report exported to " + target.getPath(),
+                "Export Complete", JOptionPane.INFORMATION_MESSAGE), e -> JOptionPane.showMessageDialog(this,
+                "Export failed: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE));
     }
 
     private void addNewBin() {
+        Site site = this.site;
+        if (site.isFull()) {
+            JOptionPane.showMessageDialog(this, "Site " + site.name + " already has " + site.limits.maxBins
+                    + " bins (site.maxBins).", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
         JPanel panel = new JPanel(new GridLayout(5, 2, 10, 10));
         panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
 
@@ -881,18 +1382,31 @@ public class ModernWhiteWasteSystem extends JFrame {
                     return;
                 }
 
-                if (wasteBins.stream().anyMatch(b -> b.getId().equals(id))) {
+                if (site.bins().stream().anyMatch(b -> b.getId().equals(id))) {
                     JOptionPane.showMessageDialog(this, "Bin ID already exists!",
                             "Error", JOptionPane.ERROR_MESSAGE);
                     return;
                 }
 
-                WasteBin bin = new WasteBin(id, loc, cap, type, level);
-                wasteBins.add(bin);
-                filteredBins.add(bin);
-                refreshData();
-                JOptionPane.showMessageDialog(this, "Bin added successfully!",
-                        "Success", JOptionPane.INFORMATION_MESSAGE);
+                LoadGenerator generator = loadGenerator;
+                BackgroundTasks.<WasteBin>submit(task -> {
+                    WasteBin bin;
+                    // Checked again under the store's lock: two quick adds both pass the check above
+                    synchronized (site.eventStore) {
+                        if (site.eventStore.projection().get(id) != null) {
+                            throw new IllegalArgumentException("Bin ID " + id + " already exists");
+                        }
+                        bin = site.eventStore.binAdded(new WasteBin(id, loc, cap, type, level));
+                    }
+                    site.eventStore.sync();
+                    // Only a bin that made it into the fleet gets a simulated sensor
+                    generator.addBin(bin.getIndex(), FillProfile.of(type));
+                    return bin;
+                }).onEdt(bin -> {
+                    filterBins();
+                    JOptionPane.showMessageDialog(this, "Bin added successfully!",
+                            "Success", JOptionPane.INFORMATION_MESSAGE);
+                }, this::showError);
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(this, "Invalid capacity value!",
                         "Error", JOptionPane.ERROR_MESSAGE);
@@ -902,13 +1416,22 @@ public class ModernWhiteWasteSystem extends JFrame {
 
     private void resetAllBins() {
         int opt = JOptionPane.showConfirmDialog(this,
-                "Are you sure you want to reset all bins to 0%?\nThis action cannot be undone.",
+                "Are you sure you want to reset all bins to 0%?\nThe reset is recorded in the audit log.",
                 "Confirm Reset", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
         if (opt == JOptionPane.YES_OPTION) {
-            for (WasteBin b : wasteBins) b.setCurrentLevel(0);
-            refreshData();
-            JOptionPane.showMessageDialog(this, "All bins have been reset to 0%!",
-                    "Reset Complete", JOptionPane.INFORMATION_MESSAGE);
+            Site site = this.site;
+            BackgroundTasks.submit(task -> {
+                // Announced to the detector first, like a collection
+                long now = System.currentTimeMillis();
+                for (int i = 0; i < site.bins().size(); i++) site.anomalies.collected(i, now);
+                site.eventStore.reset();
+                site.eventStore.sync();
+                return null;
+            }).onEdt(done -> {
+                refreshData();
+                JOptionPane.showMessageDialog(this, "All bins have been reset to 0%!",
+                        "Reset Complete", JOptionPane.INFORMATION_MESSAGE);
+            }, this::showError);
         }
     }
 
@@ -929,11 +1452,17 @@ public class ModernWhiteWasteSystem extends JFrame {
     }
 
     public static void main(String[] args) {
+        // Without a display the frame can't be built, and the EDT watchdog would keep the JVM up
+        if (GraphicsEnvironment.isHeadless()) {
+            System.err.println("No display: set DISPLAY, or run under xvfb-run on a server");
+            System.exit(1);
+        }
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
         } catch (Exception e) {
             e.printStackTrace();
         }
+        BackgroundTasks.watchEdt();
         SwingUtilities.invokeLater(() -> {
             ModernWhiteWasteSystem sys = new ModernWhiteWasteSystem();
             sys.setVisible(true);
@@ -941,69 +1470,16 @@ public class ModernWhiteWasteSystem extends JFrame {
     }
 }
 
-// WasteBin Class
-class WasteBin {
-    private String id, location, type, lastUpdated;
-    private int capacity, currentLevel;
-
-    public WasteBin(String id, String location, int capacity, String type) {
-        this(id, location, capacity, type, 0);
-    }
-
-    public WasteBin(String id, String location, int capacity, String type, int currentLevel) {
-        this.id = id;
-        this.location = location;
-        this.capacity = capacity;
-        this.type = type;
-        this.currentLevel = currentLevel;
-        updateTimestamp();
-    }
-
-    public void setCurrentLevel(int level) {
-        this.currentLevel = level;
-        updateTimestamp();
-    }
-
-    private void updateTimestamp() {
-        this.lastUpdated = LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss"));
-    }
-
-    public String getStatus() {
-        if (currentLevel >= 80) return "CRITICAL";
-        if (currentLevel >= 60) return "WARNING";
-        return "NORMAL";
-    }
-
-    public String getId() { return id; }
-    public String getLocation() { return location; }
-    public String getType() { return type; }
-    public int getCapacity() { return capacity; }
-    public int getCurrentLevel() { return currentLevel; }
-    public String getLastUpdated() { return lastUpdated; }
-}
-
-// CollectionRoute Class
-class CollectionRoute {
-    String timestamp;
-    String bins;
-    int efficiency;
-
-    public CollectionRoute(String timestamp, String bins, int efficiency) {
-        this.timestamp = timestamp;
-        this.bins = bins;
-        this.efficiency = efficiency;
-    }
-}
-
 // Modern Table Cell Renderer
 class ModernTableCellRenderer extends DefaultTableCellRenderer {
+    private static final long serialVersionUID = 1L;
     @Override
     public Component getTableCellRendererComponent(JTable table, Object value,
             boolean isSelected, boolean hasFocus, int row, int column) {
         Component c = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
         
         if (!isSelected) {
-            c.setBackground(row % 2 == 0 ? table.getBackground() : new Color(249, 250, 251));
+            c.setBackground(row % 2 == 0 ? table.getBackground() : Theme.current().altRow);
         }
         
         setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
@@ -1077,6 +1553,155 @@ class ModernScrollBarUI extends BasicScrollBarUI {
     }
 }
 
+// Themed Panel - background resolved from the current Theme at paint time
+class ThemedPanel extends JPanel {
+    private static final long serialVersionUID = 1L;
+    private final Theme.Role role;
+
+    ThemedPanel(Theme.Role role) {
+        this.role = role;
+    }
+
+    ThemedPanel(LayoutManager layout, Theme.Role role) {
+        super(layout);
+        this.role = role;
+    }
+
+    @Override
+    public Color getBackground() {
+        return role == null ? super.getBackground() : role.color();
+    }
+}
+
+// Themed Label - foreground resolved from the current Theme at paint time
+class ThemedLabel extends JLabel {
+    private static final long serialVersionUID = 1L;
+    private final Theme.Role role;
+
+    ThemedLabel(String text, Theme.Role role) {
+        super(text);
+        this.role = role;
+    }
+
+    @Override
+    public Color getForeground() {
+        return role == null ? super.getForeground() : role.color();
+    }
+}
+
+// Bin Card - built once per bin; update() refreshes only the level widgets
+class BinCard extends ThemedPanel {
+    private static final long serialVersionUID = 1L;
+    static final int CARD_WIDTH = 200, CARD_HEIGHT = 220;
+    private static final Color SHADOW = new Color(0, 0, 0, 20);
+    private final WasteBin bin;
+    private final JLabel percentLabel;
+    private final JProgressBar levelBar;
+    private final JLabel statusLabel;
+    private final Sparkline trend;
+    private int shownLevel = -1, shownStatus = -1;
+
+    // history may be null (no sparkline data yet)
+    BinCard(WasteBin bin, LevelHistory history) {
+        super(Theme.Role.CARD);
+        this.bin = bin;
+        setPreferredSize(new Dimension(CARD_WIDTH, CARD_HEIGHT));
+        setLayout(new BorderLayout(10, 10));
+        setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
+
+        // Top section
+        JPanel topPanel = new JPanel(new BorderLayout());
+        topPanel.setOpaque(false);
+
+        String emoji = bin.getType().equals("Organic") ? "🍃" :
+                      bin.getType().equals("Recyclable") ? "♻️" : "🗑️";
+        JLabel iconLabel = new JLabel(emoji);
+        iconLabel.setFont(new Font("Segoe UI Emoji", Font.PLAIN, 32));
+
+        JPanel infoPanel = new JPanel();
+        infoPanel.setLayout(new BoxLayout(infoPanel, BoxLayout.Y_AXIS));
+        infoPanel.setOpaque(false);
+
+        JLabel idLabel = new ThemedLabel(bin.getId(), Theme.Role.TEXT);
+        idLabel.setFont(new Font("Segoe UI", Font.BOLD, 16));
+
+        JLabel locLabel = new ThemedLabel(bin.getLocation(), Theme.Role.MUTED_TEXT);
+        locLabel.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+
+        infoPanel.add(idLabel);
+        infoPanel.add(locLabel);
+
+        topPanel.add(infoPanel, BorderLayout.CENTER);
+        topPanel.add(iconLabel, BorderLayout.EAST);
+
+        // Progress section
+        JPanel progressPanel = new JPanel();
+        progressPanel.setLayout(new BoxLayout(progressPanel, BoxLayout.Y_AXIS));
+        progressPanel.setOpaque(false);
+
+        percentLabel = new JLabel();
+        percentLabel.setFont(new Font("Segoe UI", Font.BOLD, 24));
+        percentLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+
+        levelBar = new JProgressBar(0, 100);
+        levelBar.setStringPainted(false);
+        levelBar.setPreferredSize(new Dimension(0, 12));
+        levelBar.setBorderPainted(false);
+
+        statusLabel = new JLabel();
+        statusLabel.setFont(new Font("Segoe UI", Font.BOLD, 11));
+        statusLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+
+        trend = new Sparkline();
+        trend.show(history, bin);
+        trend.setPreferredSize(new Dimension(0, 22));
+
+        progressPanel.add(percentLabel);
+        progressPanel.add(Box.createVerticalStrut(4));
+        progressPanel.add(levelBar);
+        progressPanel.add(Box.createVerticalStrut(4));
+        progressPanel.add(trend);
+        progressPanel.add(Box.createVerticalStrut(4));
+        progressPanel.add(statusLabel);
+
+        add(topPanel, BorderLayout.NORTH);
+        add(progressPanel, BorderLayout.CENTER);
+        update();
+    }
+
+    void update() {
+        int level = bin.getCurrentLevel();
+        int status = bin.statusLevel();
+        if (level == shownLevel && status == shownStatus) return;
+        shownLevel = level;
+        shownStatus = status;
+        Color levelColor = status == WasteBin.CRITICAL ? Theme.DANGER :
+                          status == WasteBin.WARNING ? Theme.WARNING : Theme.SUCCESS;
+        percentLabel.setText(level + "%");
+        percentLabel.setForeground(levelColor);
+        levelBar.setValue(level);
+        levelBar.setForeground(levelColor);
+        levelBar.setBackground(new Color(levelColor.getRed(), levelColor.getGreen(),
+                                        levelColor.getBlue(), 30));
+        statusLabel.setText(bin.getStatus());
+        statusLabel.setForeground(levelColor);
+        trend.repaint();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        Graphics2D g2d = (Graphics2D) g;
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setColor(getBackground());
+        g2d.fillRoundRect(0, 0, getWidth(), getHeight(), 20, 20);
+
+        // Shadow effect
+        g2d.setColor(SHADOW);
+        g2d.fillRoundRect(2, 2, getWidth(), getHeight(), 20, 20);
+    }
+}
+
 // Rounded Border
 class RoundedBorder implements javax.swing.border.Border {
     private int radius;
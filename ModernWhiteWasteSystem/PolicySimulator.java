@@ -0,0 +1,347 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Offline what-if engine for fleet sizing and collection policy. Replays thousands of
+// simulated weeks of the per-type fill rates (FillProfile) under every combination of the
+// candidate thresholds, shifts per day, trucks and stops per truck, and reports how often bins
+// overflow, how many trips run and how far the trucks drive:
+//
+//   java PolicySimulator --bins 1000 --weeks 2000 --thresholds 60,70,80 --shifts 1,2,3
+//                        --trucks 2,4,8 --truck-stops 40 [--bins-file bins.csv]
+//                        [--locations locations.csv] [--tick-minutes 120] [--warmup-days 2]
+//                        [--target 0.001] [--seed 42] [--threads 8]
+//
+// One FillProfile step is taken every tick (default two hours). At each of its shifts, evenly
+// spread over the day, a policy empties the bins at or above its threshold, fullest first, up to
+// one trip per truck. A bin that reaches 100% counts as an overflow for that day. Each week
+// starts from random levels and a few unmeasured warm-up days.
+//
+// Every policy replays the same weeks: week r always draws from the same random stream, and
+// draws for every bin on every tick whether or not it is full, so differences between policies
+// come from the policy, not the noise. Weeks are spread over a thread pool; a worker reuses its
+// level arrays, so simulating a week allocates nothing.
+//
+// Trip distance is the Beardwood-Halton-Hammersley estimate a + beta * sqrt(k * area) for k
+// stops, fitted once against RoutePlanner tours of random samples of the fleet: routing every
+// simulated trip would cost far more than the rest of the simulation.
+public class PolicySimulator {
+    static final class Policy {
+        final int threshold, shiftsPerDay, trucks, truckStops;
+
+        Policy(int threshold, int shiftsPerDay, int trucks, int truckStops) {
+            this.threshold = threshold;
+            this.shiftsPerDay = shiftsPerDay;
+            this.trucks = trucks;
+            this.truckStops = truckStops;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("collect>=%d %d shift(s) %dx%d stops", threshold, shiftsPerDay, trucks, truckStops);
+        }
+    }
+
+    static final class Result {
+        final Policy policy;
+        long weeks, weeksWithOverflow, binDays, overflowBinDays, trips, stops;
+        double km;
+
+        Result(Policy policy) { this.policy = policy; }
+
+        void add(Result r) {
+            weeks += r.weeks;
+            weeksWithOverflow += r.weeksWithOverflow;
+            binDays += r.binDays;
+            overflowBinDays += r.overflowBinDays;
+            trips += r.trips;
+            stops += r.stops;
+            km += r.km;
+        }
+
+        double overflowRate() { return binDays == 0 ? 0 : overflowBinDays / (double) binDays; }
+        double perWeek(double total) { return weeks == 0 ? 0 : total / weeks; }
+    }
+
+    private static final int DAYS = 7;
+
+    private final int n;
+    // Per bin, the smallest step and the number of possible steps of its FillProfile
+    private final byte[] minStep, steps;
+    private final int ticksPerDay, warmupDays;
+    private final long seed;
+    private final double tripFixedKm, tripBeta, areaKm2;
+
+    PolicySimulator(List<WasteBin> fleet, SiteMap map, int ticksPerDay, int warmupDays, long seed) {
+        this.n = fleet.size();
+        this.ticksPerDay = ticksPerDay;
+        this.warmupDays = warmupDays;
+        this.seed = seed;
+        minStep = new byte[n];
+        steps = new byte[n];
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            WasteBin bin = fleet.get(i);
+            FillProfile p = FillProfile.of(bin.getType());
+            minStep[i] = (byte) p.minIncrease;
+            steps[i] = (byte) (p.maxIncrease - p.minIncrease + 1);
+            double x = map.x(bin), y = map.y(bin);
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+        }
+        areaKm2 = n == 0 ? 0 : Math.max(1e-6, (maxX - minX) * (maxY - minY));
+        double[] fit = fitTrips(fleet, map, areaKm2, seed);
+        tripFixedKm = fit[0];
+        tripBeta = fit[1];
+    }
+
+    // Two-point fit of a + beta * sqrt(k * area) to planned tours of k1 and k2 random stops
+    private static double[] fitTrips(List<WasteBin> fleet, SiteMap map, double area, long seed) {
+        int n = fleet.size();
+        if (n < 2) return new double[]{0, 0.7124};
+        int k1 = Math.max(1, Math.min(n, 10)), k2 = Math.min(n, 200);
+        if (k1 == k2) k1 = Math.max(1, k2 / 4);
+        SplittableRandom rand = new SplittableRandom(seed);
+        double l1 = 0, l2 = 0;
+        int samples = 3;
+        for (int s = 0; s < samples; s++) {
+            l1 += sampleTour(fleet, map, k1, rand);
+            l2 += sampleTour(fleet, map, k2, rand);
+        }
+        l1 /= samples;
+        l2 /= samples;
+        double beta = (l2 - l1) / (Math.sqrt(k2 * area) - Math.sqrt(k1 * area));
+        if (!(beta > 0)) beta = 0.7124;
+        double fixed = Math.max(0, l1 - beta * Math.sqrt(k1 * area));
+        return new double[]{fixed, beta};
+    }
+
+    private static double sampleTour(List<WasteBin> fleet, SiteMap map, int k, SplittableRandom rand) {
+        // Partial Fisher-Yates over indices; RoutePlanner needs the bins' fleet indices
+        int n = fleet.size();
+        int[] pick = new int[n];
+        for (int i = 0; i < n; i++) pick[i] = i;
+        List<WasteBin> stops = new ArrayList<>(k);
+        for (int i = 0; i < k; i++) {
+            int j = i + rand.nextInt(n - i);
+            int t = pick[i];
+            pick[i] = pick[j];
+            pick[j] = t;
+            stops.add(fleet.get(pick[i]));
+        }
+        return new RoutePlanner(map, 1, 8, 200).plan("", stops).km;
+    }
+
+    double tripKm(int stops) {
+        return stops == 0 ? 0 : tripFixedKm + tripBeta * Math.sqrt(stops * areaKm2);
+    }
+
+    // Runs every policy over the same weeks and returns the results in policy order
+    List<Result> run(List<Policy> policies, int weeks, int threads) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Result> results = new ArrayList<>();
+        try {
+            List<Future<Result>> parts = new ArrayList<>();
+            int chunk = Math.max(1, weeks / (threads * 4));
+            for (Policy p : policies) {
+                results.add(new Result(p));
+                for (int from = 0; from < weeks; from += chunk) {
+                    int start = from, end = Math.min(weeks, from + chunk);
+                    parts.add(pool.submit(() -> simulate(p, start, end)));
+                }
+            }
+            int next = 0;
+            for (Result r : results) {
+                for (int from = 0; from < weeks; from += chunk) r.add(parts.get(next++).get());
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return results;
+    }
+
+    // Weeks [from, to) under one policy
+    Result simulate(Policy p, int from, int to) {
+        Result r = new Result(p);
+        byte[] levels = new byte[n];
+        boolean[] overflowed = new boolean[n];
+        int[] histogram = new int[101];
+        boolean[] shiftAt = new boolean[ticksPerDay];
+        for (int s = 0; s < p.shiftsPerDay; s++) shiftAt[(int) ((s + 1L) * ticksPerDay / p.shiftsPerDay) - 1] = true;
+
+        for (int week = from; week < to; week++) {
+            SplittableRandom rand = new SplittableRandom(seed ^ (week + 1) * 0x9E3779B97F4A7C15L);
+            for (int i = 0; i < n; i++) levels[i] = (byte) rand.nextInt(60);
+            boolean weekOverflow = false;
+            for (int day = 0; day < warmupDays + DAYS; day++) {
+                boolean measured = day >= warmupDays;
+                Arrays.fill(overflowed, false);
+                int overflows = 0;
+                for (int tick = 0; tick < ticksPerDay; tick++) {
+                    overflows += fill(levels, overflowed, rand);
+                    if (shiftAt[tick]) collect(p, levels, histogram, measured ? r : null);
+                }
+                if (measured) {
+                    r.binDays += n;
+                    r.overflowBinDays += overflows;
+                    weekOverflow |= overflows > 0;
+                }
+            }
+            r.weeks++;
+            if (weekOverflow) r.weeksWithOverflow++;
+        }
+        return r;
+    }
+
+    // One FillProfile step for every bin; each 64-bit draw yields four 16-bit samples.
+    // Returns the bins that overflowed for the first time today.
+    private int fill(byte[] levels, boolean[] overflowed, SplittableRandom rand) {
+        int overflows = 0;
+        long bits = 0;
+        for (int i = 0; i < n; i++) {
+            if ((i & 3) == 0) bits = rand.nextLong();
+            int sample = (int) (((bits & 0xFFFF) * steps[i]) >>> 16);
+            bits >>>= 16;
+            int level = levels[i] + minStep[i] + sample;
+            if (level >= 100) {
+                level = 100;
+                if (!overflowed[i]) {
+                    overflowed[i] = true;
+                    overflows++;
+                }
+            }
+            levels[i] = (byte) level;
+        }
+        return overflows;
+    }
+
+    // Empties the fullest due bins, up to one trip per truck
+    private void collect(Policy p, byte[] levels, int[] histogram, Result r) {
+        Arrays.fill(histogram, 0);
+        int due = 0;
+        for (int i = 0; i < n; i++) {
+            int level = levels[i];
+            if (level >= p.threshold) {
+                histogram[level]++;
+                due++;
+            }
+        }
+        int take = Math.min(due, p.trucks * p.truckStops);
+        if (take == 0) return;
+        // Everything above the cut goes, and the first atCut bins at the cut level
+        int cut = 100, above = 0;
+        while (above + histogram[cut] < take) above += histogram[cut--];
+        int atCut = take - above;
+        for (int i = 0; i < n; i++) {
+            int level = levels[i];
+            if (level > cut || (level == cut && atCut-- > 0)) levels[i] = 0;
+        }
+        if (r == null) return;
+        int fullTrips = take / p.truckStops, rest = take % p.truckStops;
+        r.trips += fullTrips + (rest > 0 ? 1 : 0);
+        r.stops += take;
+        r.km += fullTrips * tripKm(p.truckStops) + tripKm(rest);
+    }
+
+    // Bad arguments end the run the way an unknown option does
+    private static void require(boolean ok, String message) {
+        if (ok) return;
+        System.err.println(message);
+        System.exit(2);
+    }
+
+    private static int[] ints(String csv) {
+        return Arrays.stream(csv.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int bins = 1000, weeks = 1000, tickMinutes = 120, warmupDays = 2;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int[] thresholds = {70, 80}, shifts = {1, 2}, trucks = {2, 4, 8}, truckStops = {40};
+        long seed = 42;
+        double target = 0.001;
+        Path binsFile = null, locations = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--bins": bins = Integer.parseInt(args[i + 1]); break;
+                case "--bins-file": binsFile = Paths.get(args[i + 1]); break;
+                case "--locations": locations = Paths.get(args[i + 1]); break;
+                case "--weeks": weeks = Integer.parseInt(args[i + 1]); break;
+                case "--thresholds": thresholds = ints(args[i + 1]); break;
+                case "--shifts": shifts = ints(args[i + 1]); break;
+                case "--trucks": trucks = ints(args[i + 1]); break;
+                case "--truck-stops": truckStops = ints(args[i + 1]); break;
+                case "--tick-minutes": tickMinutes = Integer.parseInt(args[i + 1]); break;
+                case "--warmup-days": warmupDays = Integer.parseInt(args[i + 1]); break;
+                case "--target": target = Double.parseDouble(args[i + 1]); break;
+                case "--seed": seed = Long.parseLong(args[i + 1]); break;
+                case "--threads": threads = Integer.parseInt(args[i + 1]); break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        require(tickMinutes >= 1 && tickMinutes <= 24 * 60, "--tick-minutes must be 1 to 1440");
+        int ticksPerDay = 24 * 60 / tickMinutes;
+        for (int s : shifts) require(s >= 1 && s <= ticksPerDay, "--shifts must be 1 to " + ticksPerDay + " (ticks per day)");
+        for (int t : thresholds) require(t >= 0 && t <= 100, "--thresholds must be 0 to 100");
+        for (int k : trucks) require(k >= 1, "--trucks must be at least 1");
+        for (int c : truckStops) require(c >= 1, "--truck-stops must be at least 1");
+        require(bins >= 1 && weeks >= 1 && threads >= 1 && warmupDays >= 0,
+                "--bins, --weeks and --threads must be at least 1, --warmup-days at least 0");
+
+        List<WasteBin> fleet;
+        if (binsFile != null) {
+            fleet = BinCsv.read(binsFile);
+        } else {
+            String[] types = {"General", "Organic", "Recyclable"};
+            fleet = new ArrayList<>(bins);
+            for (int i = 0; i < bins; i++) {
+                fleet.add(new WasteBin(String.format("BIN-%06d", i + 1), "Zone " + (i % 97), 100, types[i % 3]));
+            }
+        }
+        for (int i = 0; i < fleet.size(); i++) fleet.get(i).attach(null, i);
+        SiteMap map = locations != null ? SiteMap.load(locations) : SiteMap.EMPTY;
+
+        List<Policy> policies = new ArrayList<>();
+        for (int t : thresholds)
+            for (int s : shifts)
+                for (int k : trucks)
+                    for (int c : truckStops) policies.add(new Policy(t, s, k, c));
+
+        PolicySimulator sim = new PolicySimulator(fleet, map, ticksPerDay, warmupDays, seed);
+        System.err.printf("%d bins, trip km = %.2f + %.3f * sqrt(stops * %.2f km2)%n",
+                fleet.size(), sim.tripFixedKm, sim.tripBeta, sim.areaKm2);
+        long start = System.nanoTime();
+        List<Result> results = sim.run(policies, weeks, threads);
+        double secs = (System.nanoTime() - start) / 1e9;
+
+        // Cheapest policy (by distance) that keeps overflows within the target
+        Result best = null;
+        long measuredDays = 0, simulatedDays = 0;
+        for (Result r : results) {
+            measuredDays += r.binDays;
+            simulatedDays += r.weeks * (long) (DAYS + warmupDays) * fleet.size();
+            if (r.overflowRate() <= target && (best == null || r.km < best.km)) best = r;
+        }
+        System.out.printf("%-36s %12s %12s %10s %10s %10s%n",
+                "POLICY", "OVERFLOW/DAY", "WEEKS W/ OVF", "TRIPS/WK", "KM/WK", "STOPS/WK");
+        for (Result r : results) {
+            System.out.printf("%-36s %11.3f%% %11.1f%% %10.1f %10.1f %10.0f%s%n", r.policy,
+                    r.overflowRate() * 100, r.weeksWithOverflow * 100.0 / r.weeks,
+                    r.perWeek(r.trips), r.perWeek(r.km), r.perWeek(r.stops), r == best ? "  *" : "");
+        }
+        System.out.println(best != null ? String.format("* fewest km with overflow <= %.3f%% of bin-days", target * 100)
+                : String.format("no policy keeps overflow <= %.3f%% of bin-days", target * 100));
+        // Throughput counts the warm-up days too: they cost the same to simulate
+        System.out.printf("%d policies x %d weeks, %d measured bin-days (%d simulated with warm-up) in %.2f s"
+                        + " = %.1f M simulated bin-days/s (%d threads)%n",
+                policies.size(), weeks, measuredDays, simulatedDays, secs, simulatedDays / secs / 1e6, threads);
+    }
+}
@@ -0,0 +1,507 @@
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+// Hot standby by log shipping. The event log already is the change log: every level update,
+// collection and bin addition is a checksummed record in it. A standby connects over a loopback
+// socket and says how far its own log goes; the primary sends its newest snapshot if the
+// standby's position is not in the live segments, then streams the log from there by tailing
+// the segment files, so the ingest path does no extra work. The standby appends the records
+// to its own log unchanged (same sequence numbers), applies them to its fleet and acknowledges.
+//
+//   standby -> primary   int MAGIC, long lastSeq; then long appliedSeq after each batch
+//   primary -> standby   'S' long seq, long size, <snapshot file>
+//                        'L' int size, <records exactly as in the log>
+//                        'H' long lastSeq      heartbeat, when there was nothing to send
+//
+// Modes: async ships as fast as it can and never waits; ack makes sync() (collections, resets)
+// wait until a standby has the events; lag:<n> makes flush() and sync() wait while the
+// standby is more than n events behind. Nobody waits without a connected standby, and a wait
+// longer than ACK_TIMEOUT_MS is given up with a warning.
+//
+// Two JVMs on one machine (the standby takes over once the primary has been gone for
+// --takeover-ms: it runs the load on its own log and serves standbys on --listen):
+//   java Replication primary --dir a/events --port 7070 [--bins 100000] [--mode async|ack|lag:<n>]
+//   java Replication standby --dir b/events --port 7070 [--takeover-ms 2000] [--listen 7071]
+// The app ships its startup site with -Dreplication.port=7070 [-Dreplication.mode=ack].
+public class Replication {
+    private static final int MAGIC = 0x57535242;
+    static final long HEARTBEAT_MS = Long.getLong("replication.heartbeatMs", 200);
+    static final long ACK_TIMEOUT_MS = Long.getLong("replication.ackTimeoutMs", 2000);
+
+    static final class Primary implements Closeable {
+        private final EventStore store;
+        private final ServerSocket server;
+        private final boolean ackOnSync;
+        private final long maxLag;
+        // Shippers wait on it for new data, writers for acknowledgements
+        private final Object progress = new Object();
+        private final Set<Link> links = ConcurrentHashMap.newKeySet();
+        private volatile long flushedSeq;
+        private volatile boolean running = true;
+        private long lastWarning;
+
+        Primary(EventStore store, int port, String mode) throws IOException {
+            this.store = store;
+            ackOnSync = mode.equals("ack");
+            maxLag = mode.startsWith("lag:") ? Long.parseLong(mode.substring(4)) : Long.MAX_VALUE;
+            if (!ackOnSync && maxLag == Long.MAX_VALUE && !mode.equals("async")) {
+                throw new IllegalArgumentException("Unknown replication mode " + mode);
+            }
+            server = new ServerSocket(port, 8, InetAddress.getLoopbackAddress());
+        }
+
+        void start() {
+            store.replicateTo(this);
+            Thread acceptor = new Thread(this::accept, "replication-accept");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int port() { return server.getLocalPort(); }
+
+        // Events the most advanced standby is behind, or -1 without one
+        long lag() {
+            long acked = acked();
+            return acked < 0 ? -1 : store.lastSeq() - acked;
+        }
+
+        private long acked() {
+            long acked = -1;
+            for (Link l : links) acked = Math.max(acked, l.acked);
+            return acked;
+        }
+
+        // From EventStore.flush()/sync(), outside its lock, once events up to seq are in the file
+        void flushed(long seq) {
+            publish(seq);
+            if (maxLag != Long.MAX_VALUE) await(seq - maxLag);
+        }
+
+        void synced(long seq) {
+            publish(seq);
+            if (ackOnSync) await(seq);
+            else if (maxLag != Long.MAX_VALUE) await(seq - maxLag);
+        }
+
+        private void publish(long seq) {
+            synchronized (progress) {
+                if (seq > flushedSeq) flushedSeq = seq;
+                progress.notifyAll();
+            }
+        }
+
+        private void await(long seq) {
+            long deadline = System.currentTimeMillis() + ACK_TIMEOUT_MS;
+            synchronized (progress) {
+                try {
+                    while (!links.isEmpty() && acked() < seq) {
+                        long left = deadline - System.currentTimeMillis();
+                        if (left <= 0) {
+                            if (deadline - lastWarning > 60_000) {
+                                System.err.println("replication: no acknowledgement for #" + seq + " within "
+                                        + ACK_TIMEOUT_MS + " ms, going on without it");
+                                lastWarning = deadline;
+                            }
+                            return;
+                        }
+                        progress.wait(left);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private void accept() {
+            while (running) {
+                try {
+                    Socket socket = server.accept();
+                    socket.setTcpNoDelay(true);
+                    Thread shipper = new Thread(() -> new Link(socket).run(),
+                            "replication-ship-" + socket.getPort());
+                    shipper.setDaemon(true);
+                    shipper.start();
+                } catch (IOException e) {
+                    if (running) e.printStackTrace();
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            running = false;
+            store.replicateTo(null);
+            try {
+                server.close();
+            } catch (IOException e) { e.printStackTrace(); }
+            for (Link l : links) l.close();
+            synchronized (progress) {
+                progress.notifyAll();
+            }
+        }
+
+        // One standby: this thread ships, a second one reads the acknowledgements
+        private final class Link {
+            private final Socket socket;
+            volatile long acked;
+
+            Link(Socket socket) { this.socket = socket; }
+
+            void run() {
+                String who = "standby " + socket.getPort();
+                try {
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+                    if (in.readInt() != MAGIC) throw new IOException("not a standby");
+                    long from = in.readLong();
+                    long next = catchUp(from, out);
+                    acked = next - 1;
+                    links.add(this);
+                    Thread acks = new Thread(() -> readAcks(in), "replication-acks-" + socket.getPort());
+                    acks.setDaemon(true);
+                    acks.start();
+                    System.err.println("replication: " + who + " connected at #" + from + ", shipping from #" + next);
+                    tail(next, out);
+                } catch (IOException e) {
+                    if (running) System.err.println("replication: " + who + " left (" + e.getMessage() + ")");
+                } finally {
+                    links.remove(this);
+                    close();
+                    synchronized (progress) {
+                        progress.notifyAll();
+                    }
+                }
+            }
+
+            // The standby is served from the live segments when its position is in them, and
+            // from the newest snapshot otherwise (new, too far behind, or ahead of this log).
+            // Returns the first sequence number to ship.
+            private long catchUp(long from, DataOutputStream out) throws IOException {
+                Path dir = store.dir();
+                List<Path> segments = EventStore.segments(dir);
+                if (from <= store.lastSeq() && !segments.isEmpty() && EventStore.seqOf(segments.get(0)) <= from + 1) {
+                    return from + 1;
+                }
+                List<Path> snapshots = EventStore.snapshots(dir);
+                if (snapshots.isEmpty()) throw new IOException("standby at #" + from + " and no snapshot to send");
+                Path snapshot = snapshots.get(snapshots.size() - 1);
+                long seq = EventStore.seqOf(snapshot);
+                try (InputStream file = Files.newInputStream(snapshot)) {
+                    // Opened before its size is taken; a newer snapshot can't delete it from under us
+                    long size = Files.size(snapshot);
+                    out.writeByte('S');
+                    out.writeLong(seq);
+                    out.writeLong(size);
+                    byte[] buf = new byte[1 << 16];
+                    for (long left = size; left > 0; ) {
+                        int n = file.read(buf, 0, (int) Math.min(buf.length, left));
+                        if (n < 0) throw new EOFException(snapshot + " shrank");
+                        out.write(buf, 0, n);
+                        left -= n;
+                    }
+                    out.flush();
+                }
+                return seq + 1;
+            }
+
+            // Ships the complete records from the segment holding next on, following the log
+            // into each new segment the primary opens
+            private void tail(long next, DataOutputStream out) throws IOException {
+                Path dir = store.dir();
+                Path segment = null;
+                for (Path s : EventStore.segments(dir)) {
+                    if (EventStore.seqOf(s) <= next) segment = s;
+                }
+                if (segment == null) throw new IOException("no segment holds #" + next);
+                FileChannel ch = FileChannel.open(segment, StandardOpenOption.READ);
+                try {
+                    ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+                    long pos = 0, lastSent = System.currentTimeMillis();
+                    boolean rechecked = false;
+                    while (running) {
+                        buf.clear();
+                        int n = Math.max(0, ch.read(buf, pos));
+                        int p = 0, first = 0;
+                        while (n - p >= 4) {
+                            int len = buf.getInt(p);
+                            if (len <= 0 || len > 1 << 20) throw new IOException(segment.getFileName() + " is corrupt at " + (pos + p));
+                            if (n - p < 8 + len) {
+                                if (p == 0 && 8 + len > buf.capacity()) buf = ByteBuffer.allocate(8 + len);
+                                break;
+                            }
+                            // Records the standby already has: [int length][byte type][long seq]...
+                            long seq = buf.getLong(p + 5);
+                            p += 8 + len;
+                            if (seq < next) first = p;
+                            else next = seq + 1;
+                        }
+                        if (p > first) {
+                            out.writeByte('L');
+                            out.writeInt(p - first);
+                            out.write(buf.array(), first, p - first);
+                            out.flush();
+                            lastSent = System.currentTimeMillis();
+                        }
+                        pos += p;
+                        if (p > 0) {
+                            rechecked = false;
+                            continue;
+                        }
+
+                        // Caught up with this segment. If a snapshot has opened the next one, this
+                        // one was complete before that; read it once more, then move on.
+                        Path following = dir.resolve(EventStore.segmentName(next));
+                        if (Files.exists(following) && !following.equals(segment)) {
+                            if (!rechecked) {
+                                rechecked = true;
+                                continue;
+                            }
+                            ch.close();
+                            segment = following;
+                            ch = FileChannel.open(segment, StandardOpenOption.READ);
+                            pos = 0;
+                            rechecked = false;
+                            continue;
+                        }
+                        synchronized (progress) {
+                            if (running) progress.wait(flushedSeq < next ? HEARTBEAT_MS : 1);
+                        }
+                        if (System.currentTimeMillis() - lastSent >= HEARTBEAT_MS) {
+                            out.writeByte('H');
+                            out.writeLong(store.lastSeq());
+                            out.flush();
+                            lastSent = System.currentTimeMillis();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    ch.close();
+                }
+            }
+
+            private void readAcks(DataInputStream in) {
+                try {
+                    while (true) {
+                        long seq = in.readLong();
+                        synchronized (progress) {
+                            acked = seq;
+                            progress.notifyAll();
+                        }
+                    }
+                } catch (IOException e) {
+                    close();
+                }
+            }
+
+            void close() {
+                try {
+                    socket.close();
+                } catch (IOException e) { e.printStackTrace(); }
+            }
+        }
+    }
+
+    static final class Standby {
+        private final Path dir;
+        private final int port;
+        private final long takeoverMillis;
+        private volatile EventStore store;
+        private volatile long primarySeq;
+        // 0 until the primary has been reached once: a standby started first waits for it
+        private long lastHeard;
+
+        Standby(Path dir, int port, long takeoverMillis) {
+            this.dir = dir;
+            this.port = port;
+            this.takeoverMillis = takeoverMillis;
+        }
+
+        long applied() {
+            EventStore s = store;
+            return s == null ? 0 : s.lastSeq();
+        }
+
+        // The primary's position as of its last message
+        long primarySeq() { return primarySeq; }
+
+        // Follows the primary, reconnecting as needed, until it has been gone for takeoverMillis.
+        // Returns the log synced and snapshotted with everything received, open for writing by
+        // the new primary.
+        EventStore follow() throws IOException {
+            store = EventStore.open(dir);
+            while (true) {
+                try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                    socket.setTcpNoDelay(true);
+                    socket.setSoTimeout((int) takeoverMillis);
+                    receive(socket);
+                } catch (IOException e) {
+                    // Refused, closed or silent for takeoverMillis
+                }
+                if (lastHeard > 0 && System.currentTimeMillis() - lastHeard >= takeoverMillis) break;
+                try {
+                    Thread.sleep(Math.min(HEARTBEAT_MS, takeoverMillis / 4 + 1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            store.snapshot();
+            return store;
+        }
+
+        private void receive(Socket socket) throws IOException {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(MAGIC);
+            out.writeLong(store.lastSeq());
+            out.flush();
+            CRC32C crc = new CRC32C();
+            byte[] batch = new byte[1 << 16];
+            long ackedSeq = -1;
+            while (true) {
+                byte kind = in.readByte();
+                lastHeard = System.currentTimeMillis();
+                switch (kind) {
+                    case 'S': {
+                        long seq = in.readLong(), size = in.readLong();
+                        store.close();
+                        EventStore.install(dir, seq, in, size);
+                        store = EventStore.open(dir);
+                        System.err.println("standby: installed the primary's snapshot at #" + seq);
+                        break;
+                    }
+                    case 'L': {
+                        int size = in.readInt();
+                        if (batch.length < size) batch = new byte[size];
+                        in.readFully(batch, 0, size);
+                        ByteBuffer records = ByteBuffer.wrap(batch, 0, size);
+                        for (int p = 0; p < size; ) {
+                            int len = records.getInt(p);
+                            crc.reset();
+                            crc.update(batch, p + 4, len);
+                            if (records.getInt(p + 4 + len) != (int) crc.getValue()) throw new IOException("bad record from primary");
+                            FleetEvent e = FleetEvent.readFrom(new DataInputStream(new ByteArrayInputStream(batch, p + 4, len)));
+                            store.replicate(e, batch, p + 4, len);
+                            p += 8 + len;
+                        }
+                        if (store.lastSeq() > primarySeq) primarySeq = store.lastSeq();
+                        break;
+                    }
+                    case 'H':
+                        primarySeq = in.readLong();
+                        break;
+                    default:
+                        throw new IOException("unexpected message " + kind);
+                }
+                // Acknowledged once written to this log, one acknowledgement per burst
+                if (in.available() == 0 && store.lastSeq() != ackedSeq) {
+                    store.flush();
+                    ackedSeq = store.lastSeq();
+                    out.writeLong(ackedSeq);
+                    out.flush();
+                }
+            }
+        }
+    }
+
+    // Headless primary for the command line: sensor load on every bin as fast as the log takes
+    // it, one flush per round and a synced collection every 10 rounds, as the app's tick does
+    static void runPrimary(EventStore store, int port, String mode, int bins, long seconds) throws IOException {
+        if (store.isEmpty()) {
+            String[] types = {"General", "Organic", "Recyclable"};
+            for (int i = 0; i < bins; i++) {
+                store.binAdded(new WasteBin(String.format("BIN-%06d", i + 1), "Zone " + (i % 50), 100, types[i % 3], 0));
+            }
+            store.sync();
+        }
+        Primary primary = null;
+        if (port >= 0) {
+            primary = new Primary(store, port, mode);
+            primary.start();
+            System.err.println("primary: " + store.projection().bins().size() + " bins at #" + store.lastSeq()
+                    + ", " + mode + " replication on port " + primary.port());
+        }
+        List<WasteBin> fleet = store.projection().bins();
+        LoadGenerator load = LoadGenerator.forBins(store.lastSeq(), fleet);
+        long end = seconds > 0 ? System.currentTimeMillis() + seconds * 1000 : Long.MAX_VALUE;
+        long reportAt = System.currentTimeMillis() + 1000, readings = 0;
+        for (int round = 1; System.currentTimeMillis() < end; round++) {
+            for (int i = 0; i < fleet.size(); i++) {
+                WasteBin bin = fleet.get(i);
+                store.reading(bin, load.advance(i, bin.getCurrentLevel()));
+            }
+            readings += fleet.size();
+            store.flush();
+            if (round % 10 == 0) {
+                store.collection(fleet.get(round % fleet.size()));
+                store.sync();
+            }
+            long now = System.currentTimeMillis();
+            if (now >= reportAt) {
+                System.out.printf("primary: #%d, %d readings/s, standby lag %s%n", store.lastSeq(), readings,
+                        primary == null || primary.lag() < 0 ? "-" : primary.lag() + " events");
+                readings = 0;
+                reportAt = now + 1000;
+            }
+        }
+        if (primary != null) primary.close();
+        store.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0 || !(args[0].equals("primary") || args[0].equals("standby"))) {
+            System.err.println("Usage: java Replication primary|standby --dir <event dir> --port <n> [options]");
+            System.exit(2);
+        }
+        Path dir = Paths.get("events");
+        int port = 7070, listen = -1, bins = 100_000;
+        String mode = "async";
+        long takeover = 2000, seconds = 0;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--dir": dir = Paths.get(args[i + 1]); break;
+                case "--port": port = Integer.parseInt(args[i + 1]); break;
+                case "--mode": mode = args[i + 1]; break;
+                case "--bins": bins = Integer.parseInt(args[i + 1]); break;
+                case "--seconds": seconds = Long.parseLong(args[i + 1]); break;
+                case "--takeover-ms": takeover = Long.parseLong(args[i + 1]); break;
+                case "--listen": listen = Integer.parseInt(args[i + 1]); break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+        if (args[0].equals("primary")) {
+            runPrimary(EventStore.open(dir), port, mode, bins, seconds);
+            return;
+        }
+        Standby standby = new Standby(dir, port, takeover);
+        AtomicLong lastReport = new AtomicLong();
+        Thread reporter = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) { return; }
+                long applied = standby.applied();
+                if (applied == lastReport.getAndSet(applied)) continue;
+                System.out.printf("standby: applied #%d, primary at #%d, %d events behind%n",
+                        applied, standby.primarySeq(), Math.max(0, standby.primarySeq() - applied));
+            }
+        }, "standby-report");
+        reporter.setDaemon(true);
+        reporter.start();
+        EventStore store = standby.follow();
+        reporter.interrupt();
+        System.out.println("standby: primary gone for " + takeover + " ms, took over at #" + store.lastSeq());
+        System.out.flush();
+        runPrimary(store, listen, mode, bins, seconds);
+    }
+}
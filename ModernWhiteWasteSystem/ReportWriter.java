@@ -0,0 +1,338 @@
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+// Streaming report engine. Aggregates are computed once up front and each bin
+// is appended straight to the output, so memory stays flat regardless of fleet size.
+//
+// Command line (nightly batch):
+//   java ReportWriter --format csv|text|json [--bins bins.csv]
+//                     [--history collection_history.csv] [--archive archive] [--out report.csv]
+public class ReportWriter {
+    enum Format { TEXT, CSV, JSON }
+
+    interface Progress {
+        void update(int done, int total);
+    }
+
+    // Fleet-wide figures shown in the report header
+    static class Summary {
+        int total, normal, warning, critical;
+        long levelSum;
+        // Collections so far, from the impact ledger's running totals
+        ImpactLedger.Totals impact;
+        Map<String, ImpactLedger.Totals> impactByType;
+        // Optional per-zone breakdown from FleetQuery; omitted when null
+        Map<String, FleetQuery.Group> byZone;
+
+        static Summary of(Collection<WasteBin> bins, ImpactLedger ledger) {
+            Summary s = new Summary();
+            for (WasteBin b : bins) {
+                s.levelSum += b.getCurrentLevel();
+                int status = b.statusLevel();
+                if (status == WasteBin.CRITICAL) s.critical++;
+                else if (status == WasteBin.WARNING) s.warning++;
+            }
+            s.total = bins.size();
+            s.normal = s.total - s.critical - s.warning;
+            s.impact(ledger);
+            return s;
+        }
+
+        // Copies the incrementally maintained aggregates instead of rescanning the fleet
+        static Summary of(FleetStats stats, ImpactLedger ledger) {
+            Summary s = new Summary();
+            s.total = stats.total();
+            s.normal = stats.normal();
+            s.warning = stats.warning();
+            s.critical = stats.critical();
+            s.levelSum = Math.round(stats.averageLevel() * stats.total());
+            s.impact(ledger);
+            return s;
+        }
+
+        private void impact(ImpactLedger ledger) {
+            impact = ledger.total();
+            impactByType = ledger.byType();
+        }
+
+        double averageLevel() { return total == 0 ? 0 : levelSum / (double) total; }
+        double percent(int count) { return total == 0 ? 0 : count * 100.0 / total; }
+    }
+
+    private static final int PROGRESS_STEP = 4096;
+    private static final String RULE = "─────────────────────────────────────────────────────────────\n";
+
+    private final Format format;
+    private final Progress progress;
+    private final StringBuilder line = new StringBuilder(128);
+
+    ReportWriter(Format format, Progress progress) {
+        this.format = format;
+        this.progress = progress;
+    }
+
+    static Format formatFor(String fileName) {
+        String name = fileName.toLowerCase();
+        if (name.endsWith(".csv")) return Format.CSV;
+        if (name.endsWith(".json")) return Format.JSON;
+        return Format.TEXT;
+    }
+
+    void write(List<WasteBin> bins, Summary summary, Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(bins, summary, ch);
+        }
+    }
+
+    void write(List<WasteBin> bins, Summary summary, WritableByteChannel ch) throws IOException {
+        Writer out = new BufferedWriter(Channels.newWriter(ch, StandardCharsets.UTF_8), 1 << 16);
+        write(bins, summary, out);
+    }
+
+    // Interrupting the calling thread cancels the report
+    void write(List<WasteBin> bins, Summary summary, Writer out) throws IOException {
+        String generated = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        switch (format) {
+            case CSV: writeCsvHeader(out); break;
+            case JSON: writeJsonHeader(out, summary, generated); break;
+            default: writeTextHeader(out, summary, generated);
+        }
+        int total = bins.size();
+        for (int i = 0; i < total; i++) {
+            WasteBin b = bins.get(i);
+            line.setLength(0);
+            switch (format) {
+                case CSV: csvRow(b); break;
+                case JSON: jsonRow(b, i == 0); break;
+                default: textRow(b);
+            }
+            out.append(line);
+            if ((i + 1) % PROGRESS_STEP == 0) {
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Report cancelled");
+                if (progress != null) progress.update(i + 1, total);
+            }
+        }
+        switch (format) {
+            case CSV: break;
+            case JSON: out.write("\n]}\n"); break;
+            default:
+                out.write("\n" + RULE);
+                out.write("End of Report\n");
+                out.write(RULE);
+        }
+        out.flush();
+        if (progress != null) progress.update(total, total);
+    }
+
+    private void writeTextHeader(Writer out, Summary s, String generated) throws IOException {
+        out.write("╔════════════════════════════════════════════════════════════╗\n");
+        out.write("║        SMART WASTE MANAGEMENT - SYSTEM REPORT            ║\n");
+        out.write("╚════════════════════════════════════════════════════════════╝\n\n");
+        out.write("Generated: " + generated + "\n");
+        out.write(RULE + "\n");
+
+        out.write("📊 OVERVIEW\n");
+        out.write(RULE);
+        out.write(String.format("Total Bins:          %d\n", s.total));
+        out.write(String.format("Normal Status:       %d (%.1f%%)\n", s.normal, s.percent(s.normal)));
+        out.write(String.format("Warning Status:      %d (%.1f%%)\n", s.warning, s.percent(s.warning)));
+        out.write(String.format("Critical Status:     %d (%.1f%%)\n", s.critical, s.percent(s.critical)));
+        out.write(String.format("Average Fill Level:  %.1f%%\n\n", s.averageLevel()));
+
+        out.write("🌱 ENVIRONMENTAL IMPACT\n");
+        out.write(RULE);
+        ImpactLedger.Totals impact = s.impact;
+        out.write(String.format("Total Collections:   %d (%d bins)\n", impact.collections, impact.bins));
+        out.write(String.format("Distance Driven:     %.1f km (out-and-back: %.1f km)\n", impact.km, impact.baselineKm));
+        out.write(String.format("CO₂ Saved:           %.1f kg\n", impact.co2SavedKg()));
+        out.write(String.format("Waste Diverted:      %.1f kg (%.0f L)\n", impact.kg, impact.litres));
+        for (Map.Entry<String, ImpactLedger.Totals> e : s.impactByType.entrySet()) {
+            ImpactLedger.Totals t = e.getValue();
+            out.write(String.format("  %-18s %.1f kg (%.0f L, %d bins)\n", e.getKey() + ":", t.kg, t.litres, t.bins));
+        }
+        out.write("\n");
+
+        if (s.byZone != null && !s.byZone.isEmpty()) {
+            out.write("🗺️ BY ZONE\n");
+            out.write(RULE);
+            out.write(String.format("%-20s %8s %10s %10s\n", "ZONE", "BINS", "CRITICAL", "AVG FILL"));
+            for (Map.Entry<String, FleetQuery.Group> e : s.byZone.entrySet()) {
+                FleetQuery.Group g = e.getValue();
+                out.write(String.format("%-20s %8d %10d %9.1f%%\n", e.getKey(), g.count, g.critical, g.averageLevel()));
+            }
+            out.write("\n");
+        }
+
+        out.write("📍 BIN DETAILS\n");
+        out.write(RULE);
+        out.write(String.format("%-12s %-20s %-12s %6s %10s\n", "BIN ID", "LOCATION", "TYPE", "LEVEL", "STATUS"));
+        out.write(RULE);
+    }
+
+    // Same layout as "%-12s %-20s %-12s %5d%% %10s" without a Formatter per row
+    private void textRow(WasteBin b) {
+        padRight(b.getId(), 12).append(' ');
+        padRight(b.getLocation(), 20).append(' ');
+        padRight(b.getType(), 12).append(' ');
+        int level = b.getCurrentLevel();
+        for (int w = digits(level); w < 5; w++) line.append(' ');
+        line.append(level).append("% ");
+        String status = b.getStatus();
+        for (int w = status.length(); w < 10; w++) line.append(' ');
+        line.append(status).append('\n');
+    }
+
+    private void writeCsvHeader(Writer out) throws IOException {
+        out.write("id,location,type,capacity,level,status,last_updated\n");
+    }
+
+    private void csvRow(WasteBin b) {
+        csvField(b.getId()).append(',');
+        csvField(b.getLocation()).append(',');
+        csvField(b.getType()).append(',');
+        line.append(b.getCapacity()).append(',')
+            .append(b.getCurrentLevel()).append(',')
+            .append(b.getStatus()).append(',')
+            .append(b.getLastUpdated()).append('\n');
+    }
+
+    private void writeJsonHeader(Writer out, Summary s, String generated) throws IOException {
+        line.setLength(0);
+        line.append("{\"generated\":");
+        jsonString(generated);
+        line.append(",\"summary\":{\"total\":").append(s.total)
+            .append(",\"normal\":").append(s.normal)
+            .append(",\"warning\":").append(s.warning)
+            .append(",\"critical\":").append(s.critical)
+            .append(",\"averageLevel\":").append(round1(s.averageLevel()))
+            .append("},\"impact\":{\"totalCollections\":").append(s.impact.collections)
+            .append(",\"binsCollected\":").append(s.impact.bins)
+            .append(",\"routeKm\":").append(round1(s.impact.km))
+            .append(",\"baselineKm\":").append(round1(s.impact.baselineKm))
+            .append(",\"co2SavedKg\":").append(round1(s.impact.co2SavedKg()))
+            .append(",\"wasteDivertedKg\":").append(round1(s.impact.kg))
+            .append(",\"litres\":").append(round1(s.impact.litres))
+            .append(",\"byType\":{");
+        boolean firstType = true;
+        for (Map.Entry<String, ImpactLedger.Totals> e : s.impactByType.entrySet()) {
+            if (!firstType) line.append(',');
+            firstType = false;
+            jsonString(e.getKey());
+            line.append(":{\"bins\":").append(e.getValue().bins)
+                .append(",\"litres\":").append(round1(e.getValue().litres))
+                .append(",\"kg\":").append(round1(e.getValue().kg)).append('}');
+        }
+        line.append("}}");
+        if (s.byZone != null) {
+            line.append(",\"zones\":{");
+            boolean first = true;
+            for (Map.Entry<String, FleetQuery.Group> e : s.byZone.entrySet()) {
+                if (!first) line.append(',');
+                first = false;
+                jsonString(e.getKey());
+                FleetQuery.Group g = e.getValue();
+                line.append(":{\"bins\":").append(g.count)
+                    .append(",\"critical\":").append(g.critical)
+                    .append(",\"averageLevel\":").append(round1(g.averageLevel())).append('}');
+            }
+            line.append('}');
+        }
+        line.append(",\"bins\":[");
+        out.append(line);
+    }
+
+    private void jsonRow(WasteBin b, boolean first) {
+        line.append(first ? "\n{\"id\":" : ",\n{\"id\":");
+        jsonString(b.getId());
+        line.append(",\"location\":");
+        jsonString(b.getLocation());
+        line.append(",\"type\":");
+        jsonString(b.getType());
+        line.append(",\"capacity\":").append(b.getCapacity())
+            .append(",\"level\":").append(b.getCurrentLevel())
+            .append(",\"status\":\"").append(b.getStatus()).append("\"}");
+    }
+
+    private StringBuilder padRight(String s, int width) {
+        line.append(s);
+        for (int w = s.length(); w < width; w++) line.append(' ');
+        return line;
+    }
+
+    private StringBuilder csvField(String s) {
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0) return line.append(s);
+        line.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"') line.append('"');
+            line.append(c);
+        }
+        return line.append('"');
+    }
+
+    private void jsonString(String s) {
+        line.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') line.append('\\').append(c);
+            else if (c < 0x20) line.append(String.format("\\u%04x", (int) c));
+            else line.append(c);
+        }
+        line.append('"');
+    }
+
+    private static int digits(int n) {
+        return n < 10 ? 1 : n < 100 ? 2 : n < 1000 ? 3 : String.valueOf(n).length();
+    }
+
+    private static double round1(double v) {
+        return Math.round(v * 10) / 10.0;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path binsFile = Paths.get("bins.csv");
+        Path historyFile = Paths.get("collection_history.csv");
+        Path archiveDir = Paths.get("archive");
+        Path outFile = null;
+        Format format = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--format": format = Format.valueOf(args[i + 1].toUpperCase()); break;
+                case "--bins": binsFile = Paths.get(args[i + 1]); break;
+                case "--history": historyFile = Paths.get(args[i + 1]); break;
+                case "--archive": archiveDir = Paths.get(args[i + 1]); break;
+                case "--out": outFile = Paths.get(args[i + 1]); break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+        if (format == null) format = outFile != null ? formatFor(outFile.toString()) : Format.TEXT;
+
+        List<WasteBin> bins = BinCsv.read(binsFile);
+        // Archived months count through their rollups
+        ImpactLedger ledger = new ImpactLedger();
+        HistoryArchive archive = HistoryArchive.open(archiveDir);
+        archive.restore(ledger);
+        for (String line : AtomicFile.readLines(historyFile)) {
+            CollectionRoute route = CollectionRoute.parse(line);
+            if (route != null && !archive.isArchived(route)) ledger.record(route);
+        }
+        Summary summary = Summary.of(bins, ledger);
+        Progress progress = (done, total) -> System.err.printf("\r%d/%d bins", done, total);
+        ReportWriter writer = new ReportWriter(format, outFile != null ? progress : null);
+        if (outFile != null) {
+            writer.write(bins, summary, outFile);
+            System.err.println();
+        } else {
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+            writer.write(bins, summary, out);
+        }
+    }
+}
@@ -0,0 +1,480 @@
+import java.util.*;
+
+// Collection routes as closed tours from the depot, cached per scope (the whole fleet or one
+// zone) so that the next request repairs the last solution instead of starting over: stops
+// that no longer need collection are unlinked, new ones go in at their cheapest position, and
+// a bounded 2-opt / or-opt search runs only around the changes.
+//
+// Each cached route keeps its stops' coordinates and, per stop, its K nearest neighbours: the
+// candidate list every move is drawn from (a sparse distance matrix; a full one at 5k stops
+// would be 25M entries). Neighbour lists are recomputed only for stops near a change, using a
+// uniform grid. The least recently used scopes are evicted beyond the cache size.
+//
+// A cold start orders the stops along a Hilbert curve and improves that with the same search.
+public class RoutePlanner {
+    private static final int DEPOT = 0;
+    private static final double EPS = 1e-9;
+    private static final int OR_OPT_MAX = 3;
+
+    private final SiteMap sites;
+    private final int neighbours;
+    private final long searchNanos;
+    private final Map<String, Route> cache;
+
+    RoutePlanner(SiteMap sites, int cacheSize, int neighbours, long searchMillis) {
+        this.sites = sites;
+        this.neighbours = neighbours;
+        this.searchNanos = searchMillis * 1_000_000;
+        this.cache = new LinkedHashMap<String, Route>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Route> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    static final class Plan {
+        final List<WasteBin> stops;
+        final double km;
+        // Driving from the depot to every stop and back, one at a time; what the tour saves against
+        final double baselineKm;
+        final int added, removed;
+        final boolean warm;
+        final long nanos;
+
+        Plan(List<WasteBin> stops, double km, double baselineKm, int added, int removed, boolean warm, long nanos) {
+            this.stops = stops;
+            this.km = km;
+            this.baselineKm = baselineKm;
+            this.added = added;
+            this.removed = removed;
+            this.warm = warm;
+            this.nanos = nanos;
+        }
+    }
+
+    // Visits exactly the given bins, starting and ending at the depot
+    synchronized Plan plan(String scope, List<WasteBin> bins) {
+        long start = System.nanoTime();
+        Route route = cache.get(scope);
+        boolean warm = route != null;
+        if (route == null) {
+            route = new Route();
+            cache.put(scope, route);
+        }
+        int removed = route.retain(bins);
+        int added = route.add(bins, start + searchNanos);
+        double baseline = 0;
+        for (WasteBin bin : bins) {
+            double x = sites.x(bin), y = sites.y(bin);
+            baseline += 2 * Math.sqrt(x * x + y * y);
+        }
+        return new Plan(route.stops(), route.length(), baseline, added, removed, warm && route.n > 1, System.nanoTime() - start);
+    }
+
+    private final class Route {
+        // Per slot (slot 0 is the depot); freed slots are reused
+        private WasteBin[] bin = new WasteBin[16];
+        private double[] x = new double[16], y = new double[16];
+        private int[] pos = new int[16];
+        private int[][] near = new int[16][];
+        private int slots = 1;
+        private final ArrayDeque<Integer> free = new ArrayDeque<>();
+        private final Map<Integer, Integer> slotOf = new HashMap<>();
+
+        // The tour as a cycle of slots; pos[slot] is the index in tour, or -1 when not on it
+        private int[] tour = new int[16];
+        private int n = 1;
+
+        // Uniform grid over the used slots, rebuilt per request (counting sort, O(stops))
+        private int gridSize;
+        private double minX, minY, cell;
+        private int[] cellStart = new int[0], cellItems = new int[0];
+
+        private final ArrayDeque<Integer> queue = new ArrayDeque<>();
+        private boolean[] queued = new boolean[16];
+
+        Route() {
+            tour[0] = DEPOT;
+            pos[DEPOT] = 0;
+        }
+
+        // Drops stops that are no longer wanted; returns how many
+        int retain(List<WasteBin> bins) {
+            BitSet wanted = new BitSet();
+            for (WasteBin b : bins) wanted.set(b.getIndex());
+            BitSet gone = new BitSet();
+            for (Iterator<Map.Entry<Integer, Integer>> it = slotOf.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Integer, Integer> e = it.next();
+                if (wanted.get(e.getKey())) continue;
+                int s = e.getValue();
+                unlink(s);
+                bin[s] = null;
+                near[s] = null;
+                free.push(s);
+                gone.set(s);
+                it.remove();
+            }
+            // Neighbour lists that pointed at a removed stop are stale
+            if (!gone.isEmpty()) {
+                for (int s = 0; s < slots; s++) {
+                    if (near[s] == null) continue;
+                    for (int c : near[s]) {
+                        if (gone.get(c)) {
+                            near[s] = null;
+                            break;
+                        }
+                    }
+                }
+            }
+            return gone.cardinality();
+        }
+
+        int add(List<WasteBin> bins, long deadline) {
+            List<Integer> fresh = new ArrayList<>();
+            for (WasteBin b : bins) {
+                if (slotOf.containsKey(b.getIndex())) continue;
+                int s = free.isEmpty() ? slots++ : free.pop();
+                if (s >= bin.length) grow(s + 1);
+                bin[s] = b;
+                x[s] = sites.x(b);
+                y[s] = sites.y(b);
+                pos[s] = -1;
+                near[s] = null;
+                slotOf.put(b.getIndex(), s);
+                fresh.add(s);
+            }
+            rebuildGrid();
+            boolean cold = fresh.size() >= n;
+            if (cold) {
+                Arrays.fill(near, 0, slots, null);
+            } else {
+                // A new stop may be nearer than the farthest neighbour of stops around it
+                for (int f : fresh) {
+                    for (int s = 0; s < slots; s++) {
+                        int[] list = near[s];
+                        if (list != null && (list.length < neighbours || dist(s, f) < dist(s, list[list.length - 1]))) {
+                            near[s] = null;
+                        }
+                    }
+                }
+            }
+            for (int s = 0; s < slots; s++) {
+                if (near[s] == null && (s == DEPOT || bin[s] != null)) near[s] = nearest(s);
+            }
+
+            if (cold) {
+                hilbertTour();
+                for (int i = 0; i < n; i++) push(tour[i]);
+            } else {
+                for (int s : fresh) insertCheapest(s);
+            }
+            improve(deadline);
+            return fresh.size();
+        }
+
+        List<WasteBin> stops() {
+            List<WasteBin> stops = new ArrayList<>(n - 1);
+            int d = pos[DEPOT];
+            for (int k = 1; k < n; k++) stops.add(bin[tour[(d + k) % n]]);
+            return stops;
+        }
+
+        double length() {
+            double km = 0;
+            for (int i = 0; i < n; i++) km += dist(tour[i], tour[(i + 1) % n]);
+            return km;
+        }
+
+        private double dist(int a, int b) {
+            double dx = x[a] - x[b], dy = y[a] - y[b];
+            return Math.sqrt(dx * dx + dy * dy);
+        }
+
+        private int next(int s) { return tour[(pos[s] + 1) % n]; }
+        private int prev(int s) { return tour[(pos[s] - 1 + n) % n]; }
+
+        private void insertCheapest(int s) {
+            int bestU = -1;
+            double best = Double.MAX_VALUE;
+            for (int c : near[s]) {
+                if (pos[c] < 0) continue;
+                double after = insertCost(c, next(c), s), before = insertCost(prev(c), c, s);
+                if (after < best) { best = after; bestU = c; }
+                if (before < best) { best = before; bestU = prev(c); }
+            }
+            if (bestU < 0) {
+                // No neighbour on the tour yet: try every edge
+                for (int i = 0; i < n; i++) {
+                    double cost = insertCost(tour[i], tour[(i + 1) % n], s);
+                    if (cost < best) { best = cost; bestU = tour[i]; }
+                }
+            }
+            int i = pos[bestU] + 1;
+            if (n == tour.length) tour = Arrays.copyOf(tour, n * 2);
+            System.arraycopy(tour, i, tour, i + 1, n - i);
+            tour[i] = s;
+            n++;
+            for (int k = i; k < n; k++) pos[tour[k]] = k;
+            push(s);
+            push(prev(s));
+            push(next(s));
+        }
+
+        private double insertCost(int u, int v, int s) {
+            return dist(u, s) + dist(s, v) - dist(u, v);
+        }
+
+        private void unlink(int s) {
+            int i = pos[s];
+            if (i < 0) return;
+            System.arraycopy(tour, i + 1, tour, i, n - i - 1);
+            n--;
+            for (int k = i; k < n; k++) pos[tour[k]] = k;
+            pos[s] = -1;
+            if (n > 1) {
+                push(tour[(i - 1 + n) % n]);
+                push(tour[i % n]);
+            }
+        }
+
+        private void push(int s) {
+            if (!queued[s]) {
+                queued[s] = true;
+                queue.add(s);
+            }
+        }
+
+        // Local search from the queued stops until nothing improves or the time is up
+        private void improve(long deadline) {
+            int steps = 0;
+            while (!queue.isEmpty()) {
+                int a = queue.poll();
+                queued[a] = false;
+                if (pos[a] < 0 || n < 4) continue;
+                if (twoOpt(a) || orOpt(a)) push(a);
+                if ((++steps & 63) == 0 && System.nanoTime() > deadline) break;
+            }
+            while (!queue.isEmpty()) queued[queue.poll()] = false;
+        }
+
+        // Replaces edges (a,b) and (c,d) by (a,c) and (b,d), b and d on the same side of a and c
+        private boolean twoOpt(int a) {
+            for (int forward = 0; forward < 2; forward++) {
+                int b = forward == 1 ? next(a) : prev(a);
+                double ab = dist(a, b);
+                for (int c : near[a]) {
+                    if (pos[c] < 0 || c == b) continue;
+                    double g1 = ab - dist(a, c);
+                    if (g1 <= EPS) break; // neighbours are sorted by distance
+                    int d = forward == 1 ? next(c) : prev(c);
+                    if (d == a) continue;
+                    if (g1 + dist(c, d) - dist(b, d) > EPS) {
+                        if (forward == 1) reverse(b, c);
+                        else reverse(c, b);
+                        push(b);
+                        push(c);
+                        push(d);
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        // Moves a run of 1-3 stops starting at a, possibly flipped, next to one of a's neighbours
+        private boolean orOpt(int a) {
+            for (int len = 1; len <= OR_OPT_MAX && len < n - 2; len++) {
+                int first = a, last = a;
+                boolean depot = first == DEPOT;
+                for (int k = 1; k < len; k++) {
+                    last = next(last);
+                    depot |= last == DEPOT;
+                }
+                if (depot) return false;
+                int p = prev(first), q = next(last);
+                double removeGain = dist(p, first) + dist(last, q) - dist(p, q);
+                if (removeGain <= EPS) continue;
+                for (int c : near[a]) {
+                    if (pos[c] < 0 || inRun(c, first, len)) continue;
+                    for (int side = 0; side < 2; side++) {
+                        int u = side == 0 ? c : prev(c), v = side == 0 ? next(c) : c;
+                        if (inRun(u, first, len) || inRun(v, first, len)) continue;
+                        double keep = dist(u, first) + dist(last, v), flip = dist(u, last) + dist(first, v);
+                        double addCost = Math.min(keep, flip) - dist(u, v);
+                        if (removeGain - addCost > EPS) {
+                            moveRun(first, len, u, flip < keep);
+                            push(p);
+                            push(q);
+                            push(u);
+                            push(v);
+                            push(last);
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        private boolean inRun(int s, int first, int len) {
+            return (pos[s] - pos[first] + n) % n < len;
+        }
+
+        // Takes the run out and puts it back right after u, rebuilding the tour in one pass
+        private void moveRun(int first, int len, int u, boolean flip) {
+            int[] run = new int[len];
+            for (int k = 0; k < len; k++) run[k] = tour[(pos[first] + k) % n];
+            int[] rebuilt = new int[tour.length];
+            int m = 0;
+            for (int k = len; k < n; k++) {
+                int s = tour[(pos[first] + k) % n];
+                rebuilt[m++] = s;
+                if (s == u) {
+                    for (int r = 0; r < len; r++) rebuilt[m++] = run[flip ? len - 1 - r : r];
+                }
+            }
+            tour = rebuilt;
+            for (int k = 0; k < n; k++) pos[tour[k]] = k;
+        }
+
+        // Reverses the path from -> to (following the tour), or the rest of the cycle if shorter
+        private void reverse(int from, int to) {
+            int i = pos[from], j = pos[to];
+            int len = (j - i + n) % n + 1;
+            if (2 * len > n) {
+                i = (pos[to] + 1) % n;
+                j = (pos[from] - 1 + n) % n;
+                len = n - len;
+            }
+            for (int k = 0; k < len / 2; k++) {
+                int p = (i + k) % n, q = (j - k + n) % n;
+                int t = tour[p];
+                tour[p] = tour[q];
+                tour[q] = t;
+                pos[tour[p]] = p;
+                pos[tour[q]] = q;
+            }
+        }
+
+        private void rebuildGrid() {
+            int count = 0;
+            minX = Double.MAX_VALUE;
+            minY = Double.MAX_VALUE;
+            double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+            for (int s = 0; s < slots; s++) {
+                if (s != DEPOT && bin[s] == null) continue;
+                count++;
+                minX = Math.min(minX, x[s]);
+                minY = Math.min(minY, y[s]);
+                maxX = Math.max(maxX, x[s]);
+                maxY = Math.max(maxY, y[s]);
+            }
+            gridSize = Math.max(1, (int) Math.sqrt(count / 2.0));
+            cell = Math.max(maxX - minX, maxY - minY) / gridSize + 1e-9;
+            cellStart = new int[gridSize * gridSize + 1];
+            cellItems = new int[count];
+            for (int s = 0; s < slots; s++) {
+                if (s == DEPOT || bin[s] != null) cellStart[cellOf(s) + 1]++;
+            }
+            for (int c = 0; c < gridSize * gridSize; c++) cellStart[c + 1] += cellStart[c];
+            int[] fill = Arrays.copyOf(cellStart, cellStart.length - 1);
+            for (int s = 0; s < slots; s++) {
+                if (s == DEPOT || bin[s] != null) cellItems[fill[cellOf(s)]++] = s;
+            }
+        }
+
+        private int cellOf(int s) {
+            return cell(x[s], minX) * gridSize + cell(y[s], minY);
+        }
+
+        private int cell(double v, double min) {
+            return Math.min(gridSize - 1, (int) ((v - min) / cell));
+        }
+
+        // The K nearest used slots, closest first: rings of grid cells until the next ring
+        // can't hold anything closer than the current K-th
+        private int[] nearest(int s) {
+            int k = Math.min(neighbours, cellItems.length - 1);
+            int[] best = new int[k];
+            double[] bestDist = new double[k];
+            int found = 0;
+            int cx = cell(x[s], minX), cy = cell(y[s], minY);
+            for (int r = 0; r < gridSize; r++) {
+                for (int gx = cx - r; gx <= cx + r; gx++) {
+                    if (gx < 0 || gx >= gridSize) continue;
+                    for (int gy = cy - r; gy <= cy + r; gy++) {
+                        if (gy < 0 || gy >= gridSize || Math.max(Math.abs(gx - cx), Math.abs(gy - cy)) != r) continue;
+                        int c = gx * gridSize + gy;
+                        for (int p = cellStart[c]; p < cellStart[c + 1]; p++) {
+                            int o = cellItems[p];
+                            if (o == s) continue;
+                            double d = dist(s, o);
+                            if (found == k && (k == 0 || d >= bestDist[k - 1])) continue;
+                            int at = found < k ? found++ : k - 1;
+                            while (at > 0 && bestDist[at - 1] > d) {
+                                best[at] = best[at - 1];
+                                bestDist[at] = bestDist[at - 1];
+                                at--;
+                            }
+                            best[at] = o;
+                            bestDist[at] = d;
+                        }
+                    }
+                }
+                if (found == k && (k == 0 || bestDist[k - 1] <= r * cell)) break;
+            }
+            return found == k ? best : Arrays.copyOf(best, found);
+        }
+
+        // Cold start: all stops in Hilbert curve order, which keeps nearby stops together
+        private void hilbertTour() {
+            for (int s = 0; s < slots; s++) if (s != DEPOT && bin[s] != null) pos[s] = -1;
+            List<Integer> order = new ArrayList<>();
+            long[] keys = new long[slots];
+            double span = cell * gridSize;
+            for (int s = 0; s < slots; s++) {
+                if (s != DEPOT && bin[s] == null) continue;
+                order.add(s);
+                int hx = (int) ((x[s] - minX) / span * 65535), hy = (int) ((y[s] - minY) / span * 65535);
+                keys[s] = hilbert(hx, hy);
+            }
+            order.sort(Comparator.comparingLong(s -> keys[s]));
+            n = order.size();
+            if (tour.length < n) tour = new int[n];
+            for (int i = 0; i < n; i++) {
+                tour[i] = order.get(i);
+                pos[tour[i]] = i;
+            }
+        }
+
+        private void grow(int size) {
+            int c = Math.max(size, bin.length * 2);
+            bin = Arrays.copyOf(bin, c);
+            x = Arrays.copyOf(x, c);
+            y = Arrays.copyOf(y, c);
+            pos = Arrays.copyOf(pos, c);
+            near = Arrays.copyOf(near, c);
+            queued = Arrays.copyOf(queued, c);
+        }
+    }
+
+    // Position on a 2^16 x 2^16 Hilbert curve
+    private static long hilbert(int x, int y) {
+        long d = 0;
+        for (int s = 1 << 15; s > 0; s >>= 1) {
+            int rx = (x & s) > 0 ? 1 : 0, ry = (y & s) > 0 ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = 65535 - x;
+                    y = 65535 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+}
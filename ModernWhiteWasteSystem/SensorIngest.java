@@ -0,0 +1,160 @@
+import java.util.Arrays;
+
+// Ingestion stage between the sensors and the fleet. Drops duplicate and superseded readings
+// and re-orders the rest by sensor time within a bounded lateness window before handing them
+// to the sink with their sensor timestamps.
+//
+// Per bin it keeps the highest sequence number seen plus a 64-bit mask of the 64 before it
+// (duplicate filter) and the sensor time of the last applied reading (stale filter). Pending
+// readings sit in a binary min-heap of parallel primitive arrays keyed by sensor time, so
+// offer/poll allocate nothing once the arrays have grown. Not thread-safe: one ingest per feed.
+public class SensorIngest {
+    static final int ACCEPTED = 0, DUPLICATE = 1, STALE = 2;
+    private static final int SEQ_WINDOW = 64;
+
+    private final long latenessMillis;
+    private final int maxPending;
+    private final LoadGenerator.ReadingSink sink;
+
+    private long[] highSeq = new long[0];
+    private long[] seenMask = new long[0];
+    private long[] appliedTime = new long[0];
+
+    private long[] heapTime = new long[256];
+    private long[] heapSeq = new long[256];
+    private int[] heapBin = new int[256];
+    private int[] heapLevel = new int[256];
+    private int pending;
+    private long newestTime = Long.MIN_VALUE;
+
+    private long accepted, duplicates, stale, applied;
+
+    SensorIngest(long latenessMillis, int maxPending, LoadGenerator.ReadingSink sink) {
+        this.latenessMillis = latenessMillis;
+        this.maxPending = maxPending;
+        this.sink = sink;
+    }
+
+    // Returns ACCEPTED, DUPLICATE or STALE; accepted readings are applied once the watermark
+    // (newest sensor time seen minus the lateness window) passes them
+    int offer(int bin, long seq, long timeMillis, int level) {
+        if (bin >= highSeq.length) grow(bin + 1);
+        long back = highSeq[bin] - seq;
+        if (back < 0) {
+            seenMask[bin] = -back >= SEQ_WINDOW ? 1L : seenMask[bin] << -back | 1L;
+            highSeq[bin] = seq;
+        } else if (back < SEQ_WINDOW) {
+            long bit = 1L << back;
+            if ((seenMask[bin] & bit) != 0) {
+                duplicates++;
+                return DUPLICATE;
+            }
+            seenMask[bin] |= bit;
+        } else if (timeMillis > appliedTime[bin] + latenessMillis) {
+            // Far behind the window but newer than anything applied: the sensor restarted its counter
+            seenMask[bin] = 1L;
+            highSeq[bin] = seq;
+        } else {
+            stale++;
+            return STALE;
+        }
+        if (timeMillis <= appliedTime[bin]) {
+            stale++;
+            return STALE;
+        }
+        accepted++;
+        push(timeMillis, seq, bin, level);
+        if (timeMillis > newestTime) newestTime = timeMillis;
+        while (pending > maxPending) pop();
+        release(newestTime - latenessMillis);
+        return ACCEPTED;
+    }
+
+    // Releases readings older than the window by wall-clock time, for feeds that go quiet
+    void poll(long nowMillis) {
+        release(nowMillis - latenessMillis);
+    }
+
+    void flush() {
+        while (pending > 0) pop();
+    }
+
+    private void release(long watermark) {
+        while (pending > 0 && heapTime[0] <= watermark) pop();
+    }
+
+    private void grow(int size) {
+        int old = highSeq.length;
+        int n = Math.max(size, old * 2);
+        highSeq = Arrays.copyOf(highSeq, n);
+        seenMask = Arrays.copyOf(seenMask, n);
+        appliedTime = Arrays.copyOf(appliedTime, n);
+        Arrays.fill(highSeq, old, n, -1);
+        Arrays.fill(appliedTime, old, n, Long.MIN_VALUE);
+    }
+
+    private void push(long time, long seq, int bin, int level) {
+        if (pending == heapTime.length) {
+            int n = pending * 2;
+            heapTime = Arrays.copyOf(heapTime, n);
+            heapSeq = Arrays.copyOf(heapSeq, n);
+            heapBin = Arrays.copyOf(heapBin, n);
+            heapLevel = Arrays.copyOf(heapLevel, n);
+        }
+        int i = pending++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(time, seq, heapTime[parent], heapSeq[parent])) break;
+            move(parent, i);
+            i = parent;
+        }
+        set(i, time, seq, bin, level);
+    }
+
+    // Removes the oldest pending reading and applies it unless a newer one already was
+    private void pop() {
+        long time = heapTime[0];
+        int bin = heapBin[0], level = heapLevel[0];
+        int last = --pending;
+        long lt = heapTime[last], ls = heapSeq[last];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= last) break;
+            if (child + 1 < last && before(heapTime[child + 1], heapSeq[child + 1], heapTime[child], heapSeq[child])) child++;
+            if (!before(heapTime[child], heapSeq[child], lt, ls)) break;
+            move(child, i);
+            i = child;
+        }
+        if (last > 0) set(i, lt, ls, heapBin[last], heapLevel[last]);
+
+        if (time <= appliedTime[bin]) {
+            stale++;
+            return;
+        }
+        appliedTime[bin] = time;
+        applied++;
+        sink.accept(bin, time, level);
+    }
+
+    private static boolean before(long time, long seq, long otherTime, long otherSeq) {
+        return time < otherTime || time == otherTime && seq < otherSeq;
+    }
+
+    private void move(int from, int to) {
+        set(to, heapTime[from], heapSeq[from], heapBin[from], heapLevel[from]);
+    }
+
+    private void set(int i, long time, long seq, int bin, int level) {
+        heapTime[i] = time;
+        heapSeq[i] = seq;
+        heapBin[i] = bin;
+        heapLevel[i] = level;
+    }
+
+    int pending() { return pending; }
+    long accepted() { return accepted; }
+    long duplicates() { return duplicates; }
+    long stale() { return stale; }
+    long applied() { return applied; }
+}
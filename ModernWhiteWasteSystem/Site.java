@@ -0,0 +1,74 @@
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// One campus hosted by the process: its own event log and files under its directory, and every
+// consumer of its fleet (stats, indexes, sparklines, scheduler, route cache, anomaly detector)
+// with its own ChangeTracker cursors. Sites share nothing but the threshold rules and the
+// background pool. Built by the app's loader, opened and evicted by SiteRegistry.
+public class Site {
+    final String name;
+    final Path dir;
+    final Limits limits;
+
+    EventStore eventStore;
+    ChangeTracker changes;
+    ChangeTracker.Cursor uiChanges, statsChanges, persistChanges, scheduleChanges;
+    final FleetStats stats = new FleetStats();
+    FleetIndex index;
+    LevelHistory levels;
+    CollectionScheduler scheduler;
+    RoutePlanner routes;
+    AnomalyDetector anomalies;
+    // Set when standbys follow this site's log
+    Replication.Primary replication;
+    // Hot collections only; older ones are in the archive (null if it could not be opened)
+    final List<CollectionRoute> history = new ArrayList<>();
+    final ImpactLedger impact = new ImpactLedger();
+    HistoryArchive archive;
+    volatile LocalDate retainedOn;
+    // At most one background save of bins.csv in flight
+    final AtomicBoolean saving = new AtomicBoolean();
+
+    // Per-site caps, so one very large campus can't take the memory or threads of the others
+    static final class Limits {
+        final int maxBins, anomalyThreads, anomalyBuffer, ingestMaxPending;
+
+        Limits(int maxBins, int anomalyThreads, int anomalyBuffer, int ingestMaxPending) {
+            this.maxBins = maxBins;
+            this.anomalyThreads = anomalyThreads;
+            this.anomalyBuffer = anomalyBuffer;
+            this.ingestMaxPending = ingestMaxPending;
+        }
+    }
+
+    Site(String name, Path dir, Limits limits) {
+        this.name = name;
+        this.dir = dir;
+        this.limits = limits;
+    }
+
+    List<WasteBin> bins() { return eventStore.projection().bins(); }
+
+    Path file(String fileName) { return dir.resolve(fileName); }
+
+    boolean isFull() { return bins().size() >= limits.maxBins; }
+
+    // Lets standbys catch up and disconnects them, snapshots the log so the next open replays
+    // nothing, then lets go of files and threads
+    void close() {
+        if (replication != null) {
+            eventStore.sync();
+            replication.close();
+        }
+        if (eventStore != null) {
+            eventStore.snapshot();
+            eventStore.close();
+        }
+        if (anomalies != null) anomalies.close();
+    }
+
+    @Override
+    public String toString() { return name; }
+}
@@ -0,0 +1,71 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Where bins stand, in km on a flat local grid with the depot at (0,0). locations.csv lists
+// known sites as "location,x,y"; any other location gets a stable position from a hash of its
+// name (String.hashCode is fixed by the spec), so routes work without the file and stay the
+// same between runs. Bins at one site are spread a few metres apart by their id.
+public class SiteMap {
+    static final SiteMap EMPTY = new SiteMap(new HashMap<>());
+
+    // Unknown sites are placed within this distance of the depot
+    private static final double HASHED_EXTENT_KM = 5;
+    private static final double BIN_SPREAD_KM = 0.02;
+
+    private final Map<String, double[]> sites;
+
+    SiteMap(Map<String, double[]> sites) {
+        this.sites = sites;
+    }
+
+    static SiteMap load(Path file) throws IOException {
+        Map<String, double[]> sites = new HashMap<>();
+        if (Files.exists(file)) {
+            try (BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    if (line.isBlank() || line.startsWith("#")) continue;
+                    String[] parts = line.split(",");
+                    if (parts.length < 3) continue;
+                    sites.put(parts[0].trim(), new double[]{
+                            Double.parseDouble(parts[1].trim()), Double.parseDouble(parts[2].trim())});
+                }
+            }
+        }
+        return new SiteMap(sites);
+    }
+
+    double x(WasteBin bin) {
+        return site(bin.getLocation())[0] + spread(bin.getId().hashCode());
+    }
+
+    double y(WasteBin bin) {
+        return site(bin.getLocation())[1] + spread(Integer.reverse(bin.getId().hashCode()));
+    }
+
+    private double[] site(String location) {
+        double[] known = sites.get(location);
+        if (known != null) return known;
+        int h = mix(location.hashCode());
+        return new double[]{unit(h) * HASHED_EXTENT_KM, unit(mix(h)) * HASHED_EXTENT_KM};
+    }
+
+    private static double spread(int hash) {
+        return unit(mix(hash)) * BIN_SPREAD_KM;
+    }
+
+    // -1..1
+    private static double unit(int h) {
+        return h / (double) Integer.MAX_VALUE;
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ h >>> 16;
+    }
+}
@@ -0,0 +1,144 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+// The sites this process hosts, one directory each:
+//
+//   sites/<name>/events/  bins.csv  collection_history.csv  zones.properties  locations.csv
+//
+// The working directory itself is the site "default", so single-site installs keep their layout.
+// A site is opened by the loader on first use. Beyond maxOpen sites, or when the open sites hold
+// more than maxOpenBins bins together, the least recently used ones are closed again. A site
+// pinned by any owner (the screen showing it, the dashboard or replication) is never evicted,
+// nor is the one just opened. Sites load
+// outside the registry lock, so opening a large site doesn't hold up the others.
+public class SiteRegistry {
+    static final String DEFAULT = "default";
+
+    interface Loader {
+        Site load(String name, Path dir) throws IOException;
+    }
+
+    private final Path root;
+    private final Loader loader;
+    private final int maxOpen;
+    private final long maxOpenBins;
+    private final Map<String, CompletableFuture<Site>> open = new LinkedHashMap<>(16, 0.75f, true);
+    // site -> owners holding it open
+    private final Map<String, Set<String>> pins = new HashMap<>();
+
+    SiteRegistry(Path root, Loader loader, int maxOpen, long maxOpenBins) {
+        this.root = root;
+        this.loader = loader;
+        this.maxOpen = maxOpen;
+        this.maxOpenBins = maxOpenBins;
+    }
+
+    synchronized List<String> names() {
+        List<String> names = new ArrayList<>();
+        names.add(DEFAULT);
+        if (Files.isDirectory(root)) {
+            try (Stream<Path> dirs = Files.list(root)) {
+                dirs.filter(Files::isDirectory).map(d -> d.getFileName().toString())
+                        .filter(n -> !n.equals(DEFAULT)).sorted().forEach(names::add);
+            } catch (IOException e) { e.printStackTrace(); }
+        }
+        return names;
+    }
+
+    private Path dirOf(String name) {
+        return name.equals(DEFAULT) ? Paths.get("") : root.resolve(name);
+    }
+
+    // Opens the site if needed (blocking until loaded) and marks it most recently used
+    Site open(String name) throws IOException {
+        CompletableFuture<Site> site;
+        boolean load;
+        synchronized (this) {
+            site = open.get(name);
+            load = site == null;
+            if (load) {
+                site = new CompletableFuture<>();
+                open.put(name, site);
+            }
+        }
+        if (load) {
+            try {
+                site.complete(loader.load(name, dirOf(name)));
+            } catch (IOException | RuntimeException e) {
+                synchronized (this) {
+                    open.remove(name);
+                }
+                site.completeExceptionally(e);
+                throw e;
+            }
+            evict(name);
+        }
+        try {
+            return site.join();
+        } catch (CompletionException e) {
+            throw new IOException("Site " + name + " failed to load", e.getCause());
+        }
+    }
+
+    synchronized void pin(String name, String owner) {
+        pins.computeIfAbsent(name, k -> new HashSet<>()).add(owner);
+    }
+
+    // The site stays pinned while any other owner still holds it
+    synchronized void unpin(String name, String owner) {
+        Set<String> owners = pins.get(name);
+        if (owners != null && owners.remove(owner) && owners.isEmpty()) pins.remove(name);
+    }
+
+    // Visits the sites that are loaded right now
+    void forEachOpen(Consumer<Site> action) {
+        List<CompletableFuture<Site>> sites;
+        synchronized (this) {
+            sites = new ArrayList<>(open.values());
+        }
+        for (CompletableFuture<Site> f : sites) {
+            Site s = f.getNow(null);
+            if (s != null) action.accept(s);
+        }
+    }
+
+    // opened is the site whose load triggered this; its caller has not pinned it yet
+    private void evict(String opened) {
+        List<Site> closing = new ArrayList<>();
+        synchronized (this) {
+            long bins = 0;
+            for (CompletableFuture<Site> f : open.values()) {
+                Site s = f.getNow(null);
+                if (s != null) bins += s.bins().size();
+            }
+            // Oldest first; sites still loading, pinned or just opened stay
+            for (Iterator<Map.Entry<String, CompletableFuture<Site>>> it = open.entrySet().iterator(); it.hasNext()
+                    && (open.size() > maxOpen || bins > maxOpenBins); ) {
+                Map.Entry<String, CompletableFuture<Site>> e = it.next();
+                Site s = e.getValue().getNow(null);
+                if (s == null || pins.containsKey(e.getKey()) || e.getKey().equals(opened)) continue;
+                it.remove();
+                bins -= s.bins().size();
+                closing.add(s);
+            }
+        }
+        for (Site s : closing) s.close();
+    }
+
+    void closeAll() {
+        List<CompletableFuture<Site>> sites;
+        synchronized (this) {
+            sites = new ArrayList<>(open.values());
+            open.clear();
+        }
+        for (CompletableFuture<Site> f : sites) {
+            Site s = f.getNow(null);
+            if (s != null) s.close();
+        }
+    }
+}
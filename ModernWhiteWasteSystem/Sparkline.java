@@ -0,0 +1,53 @@
+import java.awt.*;
+import javax.swing.JComponent;
+import javax.swing.JTable;
+import javax.swing.table.TableCellRenderer;
+
+// Sparkline - the bin's recent levels from the shared LevelHistory, oldest on the left.
+// Paints from reused coordinate arrays (paint runs on the EDT only), so drawing a card or a
+// table row allocates nothing. One per card; the table shares one as its Trend renderer.
+public class Sparkline extends JComponent implements TableCellRenderer {
+    private static final long serialVersionUID = 1L;
+    private static final int[] LEVELS = new int[LevelHistory.SAMPLES];
+    private static final int[] XS = new int[LevelHistory.SAMPLES], YS = new int[LevelHistory.SAMPLES];
+    private LevelHistory history;
+    private WasteBin bin;
+    private Color background;
+
+    void show(LevelHistory history, WasteBin bin) {
+        this.history = history;
+        this.bin = bin;
+    }
+
+    void setHistory(LevelHistory history) { this.history = history; }
+
+    @Override
+    public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                                                   boolean hasFocus, int row, int column) {
+        bin = (WasteBin) value;
+        background = isSelected ? table.getSelectionBackground()
+                : row % 2 == 0 ? table.getBackground() : Theme.current().altRow;
+        return this;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        int w = getWidth(), h = getHeight();
+        if (background != null) {
+            g.setColor(background);
+            g.fillRect(0, 0, w, h);
+        }
+        if (history == null || bin == null) return;
+        int n = history.copy(bin.getIndex(), LEVELS);
+        if (n < 2) return;
+        int left = 4, top = 3, width = w - 8, height = h - 6;
+        for (int k = 0; k < n; k++) {
+            XS[k] = left + k * width / (LevelHistory.SAMPLES - 1);
+            YS[k] = top + height - LEVELS[k] * height / 100;
+        }
+        int status = bin.statusLevel();
+        g.setColor(status == WasteBin.CRITICAL ? Theme.DANGER : status == WasteBin.WARNING ? Theme.WARNING : Theme.SUCCESS);
+        // Not antialiased: the antialiasing pipeline builds a path per stroke, 30x slower
+        g.drawPolyline(XS, YS, n);
+    }
+}
@@ -0,0 +1,60 @@
+import java.awt.Color;
+
+// Shared palettes read by themed components at paint time, so switching
+// theme is a single swap plus a repaint (no rebuild or re-layout).
+public final class Theme {
+    // Accent colors are the same in both palettes
+    static final Color PRIMARY = new Color(99, 102, 241);
+    static final Color SUCCESS = new Color(16, 185, 129);
+    static final Color WARNING = new Color(245, 158, 11);
+    static final Color DANGER = new Color(239, 68, 68);
+
+    static final Theme LIGHT = new Theme(false,
+            new Color(249, 250, 251), Color.WHITE, Color.BLACK, Color.GRAY,
+            Color.DARK_GRAY, new Color(249, 250, 251), new Color(240, 240, 240));
+    static final Theme DARK = new Theme(true,
+            new Color(17, 24, 39), new Color(31, 41, 55), Color.WHITE, new Color(156, 163, 175),
+            Color.WHITE, new Color(38, 49, 66), new Color(55, 65, 81));
+
+    private static volatile Theme current = LIGHT;
+
+    final boolean dark;
+    final Color background, card, text, mutedText, headerText, altRow, grid;
+
+    private Theme(boolean dark, Color background, Color card, Color text, Color mutedText,
+                  Color headerText, Color altRow, Color grid) {
+        this.dark = dark;
+        this.background = background;
+        this.card = card;
+        this.text = text;
+        this.mutedText = mutedText;
+        this.headerText = headerText;
+        this.altRow = altRow;
+        this.grid = grid;
+    }
+
+    static Theme current() { return current; }
+
+    static void set(Theme theme) { current = theme; }
+
+    static Theme toggle() {
+        current = current.dark ? LIGHT : DARK;
+        return current;
+    }
+
+    // Themed components resolve their colors through a role instead of a stored value
+    enum Role {
+        BACKGROUND, CARD, TEXT, MUTED_TEXT, HEADER_TEXT;
+
+        Color color() {
+            Theme t = current;
+            switch (this) {
+                case BACKGROUND: return t.background;
+                case CARD: return t.card;
+                case TEXT: return t.text;
+                case MUTED_TEXT: return t.mutedText;
+                default: return t.headerText;
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Per-bin threshold rules loaded from thresholds.properties, e.g.
+//
+//   default.critical = 80
+//   type.Organic.critical = 70
+//   location.Hospital.warning = 40      (location prefix, longest match wins)
+//   bin.BIN-002.collect = 50
+//
+// Keys are <scope>.<field> with fields warning, critical, collect, high and urgent
+// (high/urgent grade alerts). Precedence is bin > location > type > default, per field.
+// Every distinct combination compiles to a Profile holding a 101-entry code table, so
+// evaluating a reading is one array lookup.
+public class ThresholdRules {
+    static final String[] FIELDS = {"warning", "critical", "collect", "high", "urgent"};
+    static final int WARNING = 0, CRITICAL = 1, COLLECT = 2, HIGH = 3, URGENT = 4;
+    static final int[] DEFAULTS = {60, 80, 70, 90, 95};
+
+    // Alert urgency for bins at or above their CRITICAL threshold
+    static final int NO_ALERT = 0, MEDIUM = 1, HIGH_ALERT = 2, URGENT_ALERT = 3;
+
+    private static volatile ThresholdRules current = new ThresholdRules(new Properties());
+
+    private final Map<String, int[]> byBin = new HashMap<>();
+    private final List<Map.Entry<String, int[]>> byLocation = new ArrayList<>();
+    private final Map<String, int[]> byType = new HashMap<>();
+    private final int[] defaults;
+    private final Map<String, Profile> profiles = new HashMap<>();
+
+    // Compiled thresholds: code = status | collect << 2 | urgency << 3
+    final class Profile {
+        final int[] thresholds;
+        final byte[] codes = new byte[101];
+        final ThresholdRules rules = ThresholdRules.this;
+
+        Profile(int[] thresholds) {
+            this.thresholds = thresholds;
+            for (int level = 0; level <= 100; level++) {
+                int status = level >= thresholds[CRITICAL] ? WasteBin.CRITICAL
+                        : level >= thresholds[WARNING] ? WasteBin.WARNING : WasteBin.NORMAL;
+                int collect = level >= thresholds[COLLECT] ? 1 : 0;
+                int urgency = status != WasteBin.CRITICAL ? NO_ALERT
+                        : level >= thresholds[URGENT] ? URGENT_ALERT
+                        : level >= thresholds[HIGH] ? HIGH_ALERT : MEDIUM;
+                codes[level] = (byte) (status | collect << 2 | urgency << 3);
+            }
+        }
+
+        int code(int level) { return codes[Math.max(0, Math.min(100, level))]; }
+        int status(int level) { return code(level) & 3; }
+        boolean collect(int level) { return (code(level) & 4) != 0; }
+        int urgency(int level) { return code(level) >> 3; }
+    }
+
+    ThresholdRules(Properties props) {
+        int[] base = DEFAULTS.clone();
+        Map<String, int[]> bins = new HashMap<>(), locations = new HashMap<>(), types = new HashMap<>();
+        for (String key : props.stringPropertyNames()) {
+            int dot = key.lastIndexOf('.');
+            if (dot < 0) continue;
+            int field = Arrays.asList(FIELDS).indexOf(key.substring(dot + 1));
+            if (field < 0) continue;
+            int value = Integer.parseInt(props.getProperty(key).trim());
+            String scope = key.substring(0, dot);
+            if (scope.equals("default")) base[field] = value;
+            else if (scope.startsWith("bin.")) override(bins, scope.substring(4))[field] = value;
+            else if (scope.startsWith("location.")) override(locations, scope.substring(9))[field] = value;
+            else if (scope.startsWith("type.")) override(types, scope.substring(5))[field] = value;
+        }
+        defaults = base;
+        byBin.putAll(bins);
+        byType.putAll(types);
+        byLocation.addAll(locations.entrySet());
+        byLocation.sort((a, b) -> b.getKey().length() - a.getKey().length());
+    }
+
+    // Unset fields are -1 and fall through to the next scope
+    private static int[] override(Map<String, int[]> scope, String name) {
+        return scope.computeIfAbsent(name, k -> new int[]{-1, -1, -1, -1, -1});
+    }
+
+    static ThresholdRules current() { return current; }
+
+    static ThresholdRules load(Path file) throws IOException {
+        Properties props = new Properties();
+        if (Files.exists(file)) {
+            try (Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                props.load(r);
+            }
+        }
+        return new ThresholdRules(props);
+    }
+
+    // Polls the rules file and swaps in a freshly compiled rule set when it changes
+    static Thread watch(Path file, Runnable onReload) {
+        Thread t = new Thread(() -> {
+            long seen = lastModified(file);
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long modified = lastModified(file);
+                if (modified == seen) continue;
+                seen = modified;
+                try {
+                    current = load(file);
+                    onReload.run();
+                } catch (IOException | NumberFormatException e) {
+                    // Keep the previous rules until the file is fixed
+                    e.printStackTrace();
+                }
+            }
+        }, "threshold-rules-watcher");
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    static void install(ThresholdRules rules) { current = rules; }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.exists(file) ? Files.getLastModifiedTime(file).toMillis() : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    synchronized Profile profileFor(WasteBin bin) {
+        int[] t = defaults.clone();
+        int[] type = byType.get(bin.getType());
+        int[] location = null;
+        for (Map.Entry<String, int[]> e : byLocation) {
+            if (bin.getLocation().startsWith(e.getKey())) {
+                location = e.getValue();
+                break;
+            }
+        }
+        int[] single = byBin.get(bin.getId());
+        for (int[] scope : new int[][]{type, location, single}) {
+            if (scope == null) continue;
+            for (int f = 0; f < t.length; f++) if (scope[f] >= 0) t[f] = scope[f];
+        }
+        return profiles.computeIfAbsent(Arrays.toString(t), k -> new Profile(t));
+    }
+}
@@ -1,43 +1,96 @@
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.Random;
-
-public class WasteBin {
-    private String id, location, type;
-    private int capacity, currentLevel;
-    private LocalDateTime lastUpdated;
-
-    public WasteBin(String id, String location, int capacity, String type) {
-        this(id, location, capacity, type, new Random().nextInt(50));
-    }
-
-    public WasteBin(String id, String location, int capacity, String type, int level) {
-        this.id = id;
-        this.location = location;
-        this.capacity = capacity;
-        this.type = type;
-        this.currentLevel = level;
-        this.lastUpdated = LocalDateTime.now();
-    }
-
-    public String getId() { return id; }
-    public String getLocation() { return location; }
-    public String getType() { return type; }
-    public int getCapacity() { return capacity; }
-    public int getCurrentLevel() { return currentLevel; }
-
-    public void setCurrentLevel(int level) { 
-        this.currentLevel = level; 
-        this.lastUpdated = LocalDateTime.now(); 
-    }
-
-    public String getStatus() {
-        if(currentLevel >= 80) return "CRITICAL";
-        if(currentLevel >= 60) return "WARNING";
-        return "NORMAL";
-    }
-
-    public String getLastUpdated() {
-        return lastUpdated.format(DateTimeFormatter.ofPattern("HH:mm:ss"));
-    }
-}
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+public class WasteBin {
+    static final int NORMAL = 0, WARNING = 1, CRITICAL = 2;
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private final String id, location, type;
+    private final int capacity;
+    private int currentLevel;
+    private long updatedAtMillis;
+    private long version;
+
+    // Compiled thresholds for this bin, re-resolved after the rules are reloaded
+    private volatile ThresholdRules.Profile thresholds;
+
+    // Formatted lazily and cached until the timestamp moves to another second
+    private String lastUpdatedText;
+    private long lastUpdatedTextSecond = -1;
+
+    // Set when the bin joins a fleet; level changes are published as this index
+    private ChangeTracker tracker;
+    private int index = -1;
+
+    public WasteBin(String id, String location, int capacity, String type) {
+        this(id, location, capacity, type, 0);
+    }
+
+    public WasteBin(String id, String location, int capacity, String type, int currentLevel) {
+        this.id = id;
+        this.location = location;
+        this.capacity = capacity;
+        this.type = type;
+        this.currentLevel = currentLevel;
+        this.updatedAtMillis = System.currentTimeMillis();
+    }
+
+    void attach(ChangeTracker tracker, int index) {
+        this.tracker = tracker;
+        this.index = index;
+        if (tracker != null) tracker.markDirty(index);
+    }
+
+    public boolean setCurrentLevel(int level) {
+        return setCurrentLevel(level, System.currentTimeMillis());
+    }
+
+    // Allocation-free; returns false and leaves the timestamp alone when nothing changed
+    public boolean setCurrentLevel(int level, long timeMillis) {
+        if (level == currentLevel) return false;
+        this.currentLevel = level;
+        this.updatedAtMillis = timeMillis;
+        this.version++;
+        if (tracker != null) tracker.markDirty(index);
+        return true;
+    }
+
+    ThresholdRules.Profile thresholds() {
+        ThresholdRules rules = ThresholdRules.current();
+        ThresholdRules.Profile p = thresholds;
+        if (p == null || p.rules != rules) thresholds = p = rules.profileFor(this);
+        return p;
+    }
+
+    public int statusLevel() { return thresholds().status(currentLevel); }
+    public boolean needsCollection() { return thresholds().collect(currentLevel); }
+    public int alertUrgency() { return thresholds().urgency(currentLevel); }
+
+    public String getStatus() {
+        switch (statusLevel()) {
+            case CRITICAL: return "CRITICAL";
+            case WARNING: return "WARNING";
+            default: return "NORMAL";
+        }
+    }
+
+    public String getId() { return id; }
+    public String getLocation() { return location; }
+    public String getType() { return type; }
+    public int getCapacity() { return capacity; }
+    public int getCurrentLevel() { return currentLevel; }
+    public long getUpdatedAtMillis() { return updatedAtMillis; }
+    public long getVersion() { return version; }
+    public int getIndex() { return index; }
+
+    public String getLastUpdated() {
+        long second = updatedAtMillis / 1000;
+        if (second != lastUpdatedTextSecond) {
+            lastUpdatedText = TIME_FORMAT.format(Instant.ofEpochMilli(updatedAtMillis));
+            lastUpdatedTextSecond = second;
+        }
+        return lastUpdatedText;
+    }
+}
@@ -0,0 +1,45 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Service zones from zones.properties, each a list of location prefixes:
+//
+//   zone.North = Main Gate, Parking
+//   zone.Campus = Office Block, Cafeteria, Reception
+//
+// A bin belongs to the zone with the longest matching prefix; everything else is UNZONED.
+public class Zones {
+    static final String UNZONED = "Unzoned";
+    static final Zones EMPTY = new Zones(new Properties());
+
+    private final List<Map.Entry<String, String>> prefixes = new ArrayList<>();
+
+    Zones(Properties props) {
+        for (String key : props.stringPropertyNames()) {
+            if (!key.startsWith("zone.")) continue;
+            String zone = key.substring(5);
+            for (String prefix : props.getProperty(key).split(",")) {
+                if (!prefix.isBlank()) prefixes.add(Map.entry(prefix.trim(), zone));
+            }
+        }
+        prefixes.sort((a, b) -> b.getKey().length() - a.getKey().length());
+    }
+
+    static Zones load(Path file) throws IOException {
+        Properties props = new Properties();
+        if (Files.exists(file)) {
+            try (Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                props.load(r);
+            }
+        }
+        return new Zones(props);
+    }
+
+    String zoneOf(String location) {
+        for (Map.Entry<String, String> e : prefixes) {
+            if (location.startsWith(e.getKey())) return e.getValue();
+        }
+        return UNZONED;
+    }
+}